@@ -0,0 +1,155 @@
+package com.example.coffeedms;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Delivers a repository's change events to its listeners on one daemon
+ * thread, so a mutation only pays for a queue insert. Whatever has
+ * queued up while listeners were busy is delivered as one batch (at most
+ * MAX_BATCH events), so a burst of changes costs one callback per
+ * listener instead of one per change.
+ * <p>
+ * With no listeners registered nothing is queued and no thread exists.
+ * {@link #close()} stops the thread, so a closed repository does not keep
+ * it, or its listeners, alive.
+ */
+final class BeanChangeDispatcher {
+    static final int MAX_BATCH = 1024;
+
+    private final List<BeanChangeListener> listeners = new CopyOnWriteArrayList<>();
+    private final BlockingQueue<BeanChangeEvent> queue = new LinkedBlockingQueue<>();
+    /** Beans added by the current thread's bulk load, while one runs. */
+    private final ThreadLocal<long[]> bulkAdds = new ThreadLocal<>();
+    private Thread worker;
+    private long published;
+    private long delivered;
+
+    void addListener(BeanChangeListener listener) {
+        listeners.add(Objects.requireNonNull(listener));
+        synchronized (this) {
+            if (worker == null) {
+                worker = new Thread(this::run, "bean-changes");
+                worker.setDaemon(true);
+                worker.start();
+            }
+        }
+    }
+
+    void removeListener(BeanChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @return true if events would be delivered; callers skip building
+     *         events otherwise
+     */
+    boolean isActive() {
+        return !listeners.isEmpty();
+    }
+
+    void publish(BeanChangeEvent event) {
+        if (!isActive()) return;
+        long[] adds = bulkAdds.get();
+        if (adds != null && event.getType() == BeanChangeEvent.Type.ADDED) {
+            adds[0]++;
+            return;
+        }
+        synchronized (this) {
+            published++;
+        }
+        queue.add(event);
+    }
+
+    /**
+     * Runs a bulk load, replacing the ADDED events of this thread with
+     * one BULK_LOADED event at the end. Nested calls join the outer one.
+     */
+    <T> T bulk(Loader<T> load) throws IOException {
+        if (bulkAdds.get() != null) return load.load();
+        long[] adds = new long[1];
+        bulkAdds.set(adds);
+        try {
+            return load.load();
+        } finally {
+            bulkAdds.remove();
+            if (adds[0] > 0 && isActive()) publish(BeanChangeEvent.bulkLoaded(adds[0]));
+        }
+    }
+
+    /**
+     * Drops the listeners and any undelivered events, and stops the
+     * worker thread. A later addListener starts a new one.
+     */
+    void close() {
+        listeners.clear();
+        Thread w;
+        synchronized (this) {
+            w = worker;
+            worker = null;
+            queue.clear();
+            delivered = published;
+            notifyAll();
+        }
+        if (w != null) w.interrupt();
+    }
+
+    /**
+     * Waits until every event published so far has been delivered.
+     *
+     * @param timeoutMillis longest time to wait
+     * @return true if delivered; false on timeout
+     * @throws InterruptedException if interrupted while waiting
+     */
+    synchronized boolean awaitDelivery(long timeoutMillis) throws InterruptedException {
+        long target = published;
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (delivered < target) {
+            long left = deadline - System.currentTimeMillis();
+            if (left <= 0) return false;
+            wait(left);
+        }
+        return true;
+    }
+
+    private void run() {
+        List<BeanChangeEvent> batch = new ArrayList<>();
+        while (true) {
+            synchronized (this) {
+                if (worker != Thread.currentThread()) return;
+            }
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException ex) {
+                return;
+            }
+            queue.drainTo(batch, MAX_BATCH - 1);
+            List<BeanChangeEvent> view = Collections.unmodifiableList(new ArrayList<>(batch));
+            for (BeanChangeListener l : listeners) {
+                try {
+                    l.beansChanged(view);
+                } catch (RuntimeException ex) {
+                    // one faulty listener must not stop delivery to the others
+                    System.err.println("Change listener failed: " + ex);
+                }
+            }
+            synchronized (this) {
+                if (worker != Thread.currentThread()) return;
+                delivered += batch.size();
+                notifyAll();
+            }
+            batch.clear();
+        }
+    }
+
+    /** A load that may fail with an IOException. */
+    interface Loader<T> {
+        T load() throws IOException;
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.coffeedms;
+
+/**
+ * One change made to a repository, delivered to
+ * {@link BeanChangeListener}s. A bulk import is reported as a single
+ * {@link Type#BULK_LOADED} event instead of one event per bean.
+ */
+public final class BeanChangeEvent {
+    /** Kind of change. */
+    public enum Type {
+        ADDED,
+        UPDATED,
+        REMOVED,
+        /** Many beans were loaded at once; consumers should re-read. */
+        BULK_LOADED
+    }
+
+    private final Type type;
+    private final String beanID;
+    private final CoffeeBean bean;
+    private final CoffeeBean previous;
+    private final long count;
+
+    private BeanChangeEvent(Type type, String beanID, CoffeeBean bean, CoffeeBean previous, long count) {
+        this.type = type;
+        this.beanID = beanID;
+        this.bean = bean;
+        this.previous = previous;
+        this.count = count;
+    }
+
+    static BeanChangeEvent added(CoffeeBean bean) {
+        return new BeanChangeEvent(Type.ADDED, bean.getBeanID(), bean, null, 1);
+    }
+
+    static BeanChangeEvent updated(CoffeeBean previous, CoffeeBean bean) {
+        return new BeanChangeEvent(Type.UPDATED, bean.getBeanID(), bean, previous, 1);
+    }
+
+    static BeanChangeEvent removed(String beanID, CoffeeBean bean) {
+        return new BeanChangeEvent(Type.REMOVED, beanID, bean, null, 1);
+    }
+
+    static BeanChangeEvent bulkLoaded(long count) {
+        return new BeanChangeEvent(Type.BULK_LOADED, null, null, null, count);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return ID of the changed bean; null for BULK_LOADED
+     */
+    public String getBeanID() {
+        return beanID;
+    }
+
+    /**
+     * @return the bean after an ADDED or UPDATED change, the removed bean
+     *         for REMOVED, or null if the repository does not know it
+     *         (DBBeanRepository removals, BULK_LOADED)
+     */
+    public CoffeeBean getBean() {
+        return bean;
+    }
+
+    /**
+     * @return the bean before an UPDATED change, if known; otherwise null
+     */
+    public CoffeeBean getPrevious() {
+        return previous;
+    }
+
+    /**
+     * @return beans affected: the number loaded for BULK_LOADED, otherwise 1
+     */
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return type == Type.BULK_LOADED ? type + "(" + count + ")" : type + "(" + beanID + ")";
+    }
+}
@@ -0,0 +1,17 @@
+package com.example.coffeedms;
+
+import java.util.List;
+
+/**
+ * Receives the changes made to a repository, in the order they were
+ * made (per bean). Called on the repository's dispatcher thread, never
+ * on the thread that made the change; Swing consumers should hand the
+ * batch to the event dispatch thread.
+ */
+@FunctionalInterface
+public interface BeanChangeListener {
+    /**
+     * @param batch one or more changes, oldest first; unmodifiable
+     */
+    void beansChanged(List<BeanChangeEvent> batch);
+}
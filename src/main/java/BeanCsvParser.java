@@ -0,0 +1,484 @@
+package com.example.coffeedms;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.function.Supplier;
+
+/**
+ * Parses bean lot CSV data (the format accepted by
+ * {@link BeanRepository#loadFromFile(String)}) directly from file bytes.
+ * Large ranges are read through a memory-mapped FileChannel; delimiters
+ * are scanned in place and numbers, dates and roast levels are decoded
+ * from the bytes, so the only objects created per line are the ones
+ * CoffeeBean stores.
+ *
+ * Input is read as UTF-8. Lines end with LF, CRLF or a lone CR.
+ * A parser keeps scratch state and must not be shared between threads.
+ */
+public class BeanCsvParser {
+    /** Ranges at least this big are memory-mapped; smaller ones are read into the heap. */
+    static final long MAP_THRESHOLD = 1 << 20;
+    /** Largest region mapped at once; lines must not be longer than this. */
+    static final long WINDOW_BYTES = 1 << 28;
+
+    private static final int FIELD_COUNT = 9;
+    private static final RoastLevel[] LEVELS = RoastLevel.values();
+    private static final byte[][] LEVEL_NAMES = new byte[LEVELS.length][];
+    private static final double[] POW10 = new double[23];
+    /** Slots in the per-parser cache in front of the string pool; a power of two. */
+    private static final int POOL_CACHE_SLOTS = 4096;
+    /** Longer origin/farm values bypass the per-parser cache. */
+    private static final int POOL_CACHE_MAX_LENGTH = 64;
+
+    static {
+        for (int i = 0; i < LEVELS.length; i++) {
+            LEVEL_NAMES[i] = LEVELS[i].name().getBytes(StandardCharsets.US_ASCII);
+        }
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++) {
+            POW10[i] = POW10[i - 1] * 10;
+        }
+    }
+
+    /**
+     * Receives the outcome of each line, in file order.
+     */
+    public interface LineHandler {
+        /**
+         * @param lineNo 1-based line number within the parsed range
+         * @param bean   the parsed bean
+         */
+        void bean(long lineNo, CoffeeBean bean);
+
+        /**
+         * @param lineNo 1-based line number within the parsed range
+         * @param reason why the line could not be parsed
+         * @param line   supplies the raw line text; only valid during this call
+         */
+        void malformed(long lineNo, RejectReason reason, Supplier<String> line);
+    }
+
+    private final int[] fieldStart = new int[FIELD_COUNT];
+    private final int[] fieldEnd = new int[FIELD_COUNT];
+    private byte[] scratch = new byte[128];
+    private final StringPool pool;
+    private final byte[][] poolKeys = new byte[POOL_CACHE_SLOTS][];
+    private final String[] poolValues = new String[POOL_CACHE_SLOTS];
+    private long lineNo;
+    private RejectReason failure;
+
+    // Line currently being reported to a handler
+    private ByteBuffer lineBuf;
+    private int lineStart;
+    private int lineEnd;
+    private final Supplier<String> currentLine = () -> decode(lineBuf, lineStart, lineEnd);
+
+    /**
+     * Creates a parser that canonicalizes origins and farms through
+     * {@link StringPool#SHARED}.
+     */
+    public BeanCsvParser() {
+        this(StringPool.SHARED);
+    }
+
+    /**
+     * @param pool canonicalizes origin and farm names
+     */
+    public BeanCsvParser(StringPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Streams every bean in a CSV file into a sink, one at a time, without
+     * keeping them; memory use does not grow with the file size.
+     *
+     * @param path    filesystem path to CSV
+     * @param sink    receives each parsed bean
+     * @param rejects collects skipped lines; flushed but not closed
+     * @return accepted count and the reject report
+     * @throws IOException if the file cannot be read or the sink fails
+     */
+    public static ImportResult importFile(String path, BeanSink sink, RejectReport rejects)
+            throws IOException {
+        long start = System.nanoTime();
+        try (FileChannel ch = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            SinkHandler handler = new SinkHandler(sink, rejects);
+            long lines;
+            try {
+                lines = new BeanCsvParser().parse(ch, handler);
+            } catch (UncheckedIOException ex) {
+                throw ex.getCause();
+            } finally {
+                rejects.flush();
+            }
+            return new ImportResult(lines, handler.accepted, rejects,
+                    ch.size(), System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Parses every line in the whole channel.
+     *
+     * @param ch      channel opened for reading
+     * @param handler receives each line's outcome
+     * @return number of lines parsed
+     * @throws IOException if the channel cannot be read
+     */
+    public long parse(FileChannel ch, LineHandler handler) throws IOException {
+        return parseRange(ch, 0, ch.size(), handler);
+    }
+
+    /**
+     * Parses the lines in the byte range [from, to). The range must start
+     * at the beginning of a line; line numbers restart at 1.
+     *
+     * @param ch      channel opened for reading
+     * @param from    first byte of the range
+     * @param to      end of the range (exclusive)
+     * @param handler receives each line's outcome
+     * @return number of lines parsed
+     * @throws IOException if the channel cannot be read or a line exceeds the mapping window
+     */
+    public long parseRange(FileChannel ch, long from, long to, LineHandler handler)
+            throws IOException {
+        lineNo = 0;
+        long pos = from;
+        while (pos < to) {
+            long len = Math.min(to - pos, WINDOW_BYTES);
+            boolean last = pos + len >= to;
+            int consumed = parseBuffer(load(ch, pos, len), last, handler);
+            if (consumed == 0 && !last) {
+                throw new IOException("Line longer than " + WINDOW_BYTES + " bytes at offset " + pos);
+            }
+            pos += consumed;
+        }
+        return lineNo;
+    }
+
+    /**
+     * Parses one line held in buf[start, end), without its terminator.
+     *
+     * @return the bean, or null if the line is malformed (see {@link #getFailure()})
+     */
+    public CoffeeBean parseLine(ByteBuffer buf, int start, int end) {
+        failure = RejectReason.PARSE_ERROR;
+        int field = 0;
+        int fs = start;
+        for (int i = start; i <= end && field < FIELD_COUNT; i++) {
+            if (i == end || buf.get(i) == ',') {
+                fieldStart[field] = fs;
+                fieldEnd[field] = i;
+                field++;
+                fs = i + 1;
+            }
+        }
+        if (field < FIELD_COUNT) return null;
+        for (int f = 0; f < FIELD_COUNT; f++) {
+            trim(buf, f);
+        }
+
+        try {
+            RoastLevel roast = parseRoastLevel(buf, fieldStart[3], fieldEnd[3]);
+            if (roast == null) {
+                failure = RejectReason.BAD_ROAST_LEVEL;
+                return null;
+            }
+            failure = RejectReason.BAD_DATE;
+            LocalDate date = parseDate(buf, fieldStart[4], fieldEnd[4]);
+            if (date == null) return null;
+            failure = RejectReason.PARSE_ERROR;
+            double qty = parseDouble(buf, fieldStart[5], fieldEnd[5]);
+            BigDecimal cost = parseDecimal(buf, fieldStart[6], fieldEnd[6]);
+            double caffeine = parseDouble(buf, fieldStart[8], fieldEnd[8]);
+            return new CoffeeBean(
+                    text(buf, 0),
+                    pooled(buf, 1),
+                    pooled(buf, 2),
+                    roast,
+                    date,
+                    qty,
+                    cost,
+                    text(buf, 7),
+                    caffeine
+            );
+        } catch (RuntimeException ex) {
+            // NumberFormatException or DateTimeException from the slow paths
+            return null;
+        }
+    }
+
+    /**
+     * @return why the last {@link #parseLine} call returned null
+     */
+    public RejectReason getFailure() {
+        return failure;
+    }
+
+    /**
+     * Walks the lines of buf. Returns the number of bytes consumed; when
+     * {@code eof} is false a trailing unterminated line is left unconsumed.
+     */
+    private int parseBuffer(ByteBuffer buf, boolean eof, LineHandler handler) {
+        int limit = buf.limit();
+        int lineStart = 0;
+        int i = 0;
+        while (i < limit) {
+            byte b = buf.get(i);
+            if (b != '\n' && b != '\r') {
+                i++;
+                continue;
+            }
+            if (b == '\r' && i + 1 >= limit && !eof) {
+                // CR at the window edge may be half of a CRLF
+                return lineStart;
+            }
+            emit(buf, lineStart, i, handler);
+            i += (b == '\r' && i + 1 < limit && buf.get(i + 1) == '\n') ? 2 : 1;
+            lineStart = i;
+        }
+        if (lineStart < limit && eof) {
+            emit(buf, lineStart, limit, handler);
+            return limit;
+        }
+        return lineStart;
+    }
+
+    private void emit(ByteBuffer buf, int start, int end, LineHandler handler) {
+        lineNo++;
+        CoffeeBean b = parseLine(buf, start, end);
+        if (b != null) {
+            handler.bean(lineNo, b);
+        } else {
+            lineBuf = buf;
+            lineStart = start;
+            lineEnd = end;
+            handler.malformed(lineNo, failure, currentLine);
+            lineBuf = null;
+        }
+    }
+
+    private static ByteBuffer load(FileChannel ch, long pos, long len) throws IOException {
+        if (len >= MAP_THRESHOLD) {
+            return ch.map(FileChannel.MapMode.READ_ONLY, pos, len);
+        }
+        ByteBuffer buf = ByteBuffer.allocate((int) len);
+        while (buf.hasRemaining()) {
+            if (ch.read(buf, pos + buf.position()) < 0) break;
+        }
+        buf.flip();
+        return buf;
+    }
+
+    /** Narrows field f to exclude leading/trailing bytes <= ' ', like String.trim. */
+    private void trim(ByteBuffer buf, int f) {
+        int s = fieldStart[f];
+        int e = fieldEnd[f];
+        while (s < e && (buf.get(s) & 0xFF) <= ' ') s++;
+        while (e > s && (buf.get(e - 1) & 0xFF) <= ' ') e--;
+        fieldStart[f] = s;
+        fieldEnd[f] = e;
+    }
+
+    private String text(ByteBuffer buf, int f) {
+        return decode(buf, fieldStart[f], fieldEnd[f]);
+    }
+
+    /**
+     * Like {@link #text} but returns the pooled instance. Values are first
+     * looked up by their bytes in a small direct-mapped cache, so repeated
+     * origins and farms do not even decode a new String.
+     */
+    private String pooled(ByteBuffer buf, int f) {
+        int start = fieldStart[f];
+        int len = fieldEnd[f] - start;
+        if (len > POOL_CACHE_MAX_LENGTH) {
+            return pool.canonical(text(buf, f));
+        }
+        int h = len;
+        for (int i = 0; i < len; i++) {
+            h = 31 * h + buf.get(start + i);
+        }
+        int slot = (h ^ (h >>> 16)) & (POOL_CACHE_SLOTS - 1);
+        byte[] key = poolKeys[slot];
+        if (key != null && key.length == len) {
+            int i = 0;
+            while (i < len && key[i] == buf.get(start + i)) i++;
+            if (i == len) {
+                pool.countHit(len);
+                return poolValues[slot];
+            }
+        }
+        String value = pool.canonical(text(buf, f));
+        key = new byte[len];
+        for (int i = 0; i < len; i++) {
+            key[i] = buf.get(start + i);
+        }
+        poolKeys[slot] = key;
+        poolValues[slot] = value;
+        return value;
+    }
+
+    private String decode(ByteBuffer buf, int start, int end) {
+        int len = end - start;
+        if (buf.hasArray()) {
+            return new String(buf.array(), buf.arrayOffset() + start, len, StandardCharsets.UTF_8);
+        }
+        if (scratch.length < len) {
+            scratch = new byte[Math.max(len, scratch.length * 2)];
+        }
+        for (int i = 0; i < len; i++) {
+            scratch[i] = buf.get(start + i);
+        }
+        return new String(scratch, 0, len, StandardCharsets.UTF_8);
+    }
+
+    /** Case-insensitive match against the RoastLevel names; null if none match. */
+    private static RoastLevel parseRoastLevel(ByteBuffer buf, int start, int end) {
+        int len = end - start;
+        for (int l = 0; l < LEVELS.length; l++) {
+            byte[] name = LEVEL_NAMES[l];
+            if (name.length != len) continue;
+            int i = 0;
+            while (i < len && (buf.get(start + i) & ~0x20) == name[i]) i++;
+            if (i == len) return LEVELS[l];
+        }
+        return null;
+    }
+
+    /** Parses yyyy-MM-dd; other ISO forms fall back to LocalDate.parse. Null if invalid. */
+    private LocalDate parseDate(ByteBuffer buf, int start, int end) {
+        if (end - start == 10 && buf.get(start + 4) == '-' && buf.get(start + 7) == '-') {
+            int y = digits(buf, start, 4);
+            int m = digits(buf, start + 5, 2);
+            int d = digits(buf, start + 8, 2);
+            if (y < 0 || m < 0 || d < 0) return null;
+            return LocalDate.of(y, m, d);
+        }
+        return LocalDate.parse(decode(buf, start, end));
+    }
+
+    private static int digits(ByteBuffer buf, int start, int count) {
+        int v = 0;
+        for (int i = start; i < start + count; i++) {
+            int c = buf.get(i) - '0';
+            if (c < 0 || c > 9) return -1;
+            v = v * 10 + c;
+        }
+        return v;
+    }
+
+    /**
+     * Parses plain decimals with at most 15 digits exactly (both operands of the
+     * final division are exact doubles, so the result is correctly rounded,
+     * same as Double.parseDouble). Anything else uses Double.parseDouble.
+     */
+    private double parseDouble(ByteBuffer buf, int start, int end) {
+        int i = start;
+        boolean neg = false;
+        if (i < end && (buf.get(i) == '-' || buf.get(i) == '+')) {
+            neg = buf.get(i) == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digitCount = 0;
+        int fraction = -1;
+        for (; i < end; i++) {
+            byte c = buf.get(i);
+            if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                digitCount++;
+                if (fraction >= 0) fraction++;
+            } else if (c == '.' && fraction < 0) {
+                fraction = 0;
+            } else {
+                break;
+            }
+        }
+        if (i == end && digitCount > 0 && digitCount <= 15) {
+            double v = fraction > 0 ? mantissa / POW10[fraction] : mantissa;
+            return neg ? -v : v;
+        }
+        return Double.parseDouble(decode(buf, start, end));
+    }
+
+    /**
+     * Parses plain decimals with at most 18 digits into the same unscaled
+     * value and scale new BigDecimal(String) would produce. Anything else
+     * uses the String constructor.
+     */
+    private BigDecimal parseDecimal(ByteBuffer buf, int start, int end) {
+        int i = start;
+        boolean neg = false;
+        if (i < end && (buf.get(i) == '-' || buf.get(i) == '+')) {
+            neg = buf.get(i) == '-';
+            i++;
+        }
+        long unscaled = 0;
+        int digitCount = 0;
+        int scale = -1;
+        for (; i < end; i++) {
+            byte c = buf.get(i);
+            if (c >= '0' && c <= '9') {
+                unscaled = unscaled * 10 + (c - '0');
+                digitCount++;
+                if (scale >= 0) scale++;
+            } else if (c == '.' && scale < 0) {
+                scale = 0;
+            } else {
+                break;
+            }
+        }
+        if (i == end && digitCount > 0 && digitCount <= 18) {
+            return BigDecimal.valueOf(neg ? -unscaled : unscaled, Math.max(scale, 0));
+        }
+        return new BigDecimal(decode(buf, start, end));
+    }
+
+    /** Feeds parsed beans to a BeanSink and reports skipped lines. */
+    private static final class SinkHandler implements LineHandler {
+        private final BeanSink sink;
+        private final RejectReport rejects;
+        long accepted;
+
+        SinkHandler(BeanSink sink, RejectReport rejects) {
+            this.sink = sink;
+            this.rejects = rejects;
+        }
+
+        @Override
+        public void bean(long lineNo, CoffeeBean bean) {
+            boolean stored;
+            try {
+                stored = sink.accept(bean);
+            } catch (Exception ex) {
+                throw new UncheckedIOException(new IOException(
+                        "Import stopped at line " + lineNo + ": " + ex.getMessage(), ex));
+            }
+            if (stored) {
+                accepted++;
+            } else {
+                reject(lineNo, RejectReason.DUPLICATE_ID, bean::getBeanID);
+            }
+        }
+
+        @Override
+        public void malformed(long lineNo, RejectReason reason, Supplier<String> line) {
+            reject(lineNo, reason, line);
+        }
+
+        private void reject(long lineNo, RejectReason reason, Supplier<String> text) {
+            try {
+                rejects.record(lineNo, reason, text);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.coffeedms;
+
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Secondary indexes from bean attributes to beanIDs: roast level, origin
+ * country, farm name, a sorted roast date index for range queries, and
+ * the sorted beanIDs themselves for paging. Kept in step with the primary
+ * map by BeanRepository.
+ */
+class BeanIndexes {
+    private final Map<RoastLevel, Set<String>> byRoast = new EnumMap<>(RoastLevel.class);
+    private final Map<String, Set<String>> byOrigin = new HashMap<>();
+    private final Map<String, Set<String>> byFarm = new HashMap<>();
+    private final NavigableMap<LocalDate, Set<String>> byRoastDate = new TreeMap<>();
+    private final NavigableSet<String> ids = new TreeSet<>();
+
+    void add(CoffeeBean b) {
+        put(byRoast, b.getRoastLevel(), b.getBeanID());
+        put(byOrigin, b.getOriginCountry(), b.getBeanID());
+        put(byFarm, b.getFarmName(), b.getBeanID());
+        put(byRoastDate, b.getRoastDate(), b.getBeanID());
+        ids.add(b.getBeanID());
+    }
+
+    void remove(CoffeeBean b) {
+        take(byRoast, b.getRoastLevel(), b.getBeanID());
+        take(byOrigin, b.getOriginCountry(), b.getBeanID());
+        take(byFarm, b.getFarmName(), b.getBeanID());
+        take(byRoastDate, b.getRoastDate(), b.getBeanID());
+        ids.remove(b.getBeanID());
+    }
+
+    /**
+     * Re-indexes only the attributes that changed between two versions
+     * of the same bean.
+     */
+    void update(CoffeeBean old, CoffeeBean now) {
+        String id = now.getBeanID();
+        if (old.getRoastLevel() != now.getRoastLevel()) {
+            take(byRoast, old.getRoastLevel(), id);
+            put(byRoast, now.getRoastLevel(), id);
+        }
+        if (!Objects.equals(old.getOriginCountry(), now.getOriginCountry())) {
+            take(byOrigin, old.getOriginCountry(), id);
+            put(byOrigin, now.getOriginCountry(), id);
+        }
+        if (!Objects.equals(old.getFarmName(), now.getFarmName())) {
+            take(byFarm, old.getFarmName(), id);
+            put(byFarm, now.getFarmName(), id);
+        }
+        if (!Objects.equals(old.getRoastDate(), now.getRoastDate())) {
+            take(byRoastDate, old.getRoastDate(), id);
+            put(byRoastDate, now.getRoastDate(), id);
+        }
+    }
+
+    /**
+     * @param afterID exclusive lower bound, or null for no bound
+     * @return beanIDs sorting after afterID, ascending; a live view
+     */
+    NavigableSet<String> idsAfter(String afterID) {
+        return afterID == null ? ids : ids.tailSet(afterID, false);
+    }
+
+    /**
+     * Picks the smallest set of candidate IDs among the indexed criteria
+     * of q. Every matching bean is in the returned set, but candidates
+     * still have to be checked against the other criteria.
+     *
+     * @return candidate IDs, or null if q sets no criterion
+     */
+    Iterable<String> candidates(BeanQuery q) {
+        Iterable<String> best = null;
+        long bestSize = Long.MAX_VALUE;
+        if (q.getRoastLevel() != null) {
+            Set<String> s = byRoast.getOrDefault(q.getRoastLevel(), Collections.emptySet());
+            best = s;
+            bestSize = s.size();
+        }
+        if (q.getOrigin() != null) {
+            Set<String> s = byOrigin.getOrDefault(q.getOrigin(), Collections.emptySet());
+            if (s.size() < bestSize) {
+                best = s;
+                bestSize = s.size();
+            }
+        }
+        if (q.getFarm() != null) {
+            Set<String> s = byFarm.getOrDefault(q.getFarm(), Collections.emptySet());
+            if (s.size() < bestSize) {
+                best = s;
+                bestSize = s.size();
+            }
+        }
+        if (q.hasDateRange() && bestSize > 0) {
+            NavigableMap<LocalDate, Set<String>> range = dateRange(q.getRoastedFrom(), q.getRoastedTo());
+            // count the range only as far as needed to beat the best so far
+            long size = 0;
+            for (Set<String> s : range.values()) {
+                size += s.size();
+                if (size >= bestSize) break;
+            }
+            if (size < bestSize) {
+                best = () -> range.values().stream().flatMap(Set::stream).iterator();
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return IDs keyed by roast date between from and to (inclusive, null = open)
+     */
+    NavigableMap<LocalDate, Set<String>> dateRange(LocalDate from, LocalDate to) {
+        if (from != null && to != null) {
+            return from.isAfter(to) ? Collections.emptyNavigableMap()
+                    : byRoastDate.subMap(from, true, to, true);
+        }
+        if (from != null) return byRoastDate.tailMap(from, true);
+        if (to != null) return byRoastDate.headMap(to, true);
+        return byRoastDate;
+    }
+
+    private static <K> void put(Map<K, Set<String>> index, K key, String id) {
+        index.computeIfAbsent(key, k -> new LinkedHashSet<>()).add(id);
+    }
+
+    private static <K> void take(Map<K, Set<String>> index, K key, String id) {
+        Set<String> ids = index.get(key);
+        if (ids != null && ids.remove(id) && ids.isEmpty()) {
+            index.remove(key);
+        }
+    }
+}
@@ -0,0 +1,326 @@
+package com.example.coffeedms;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead log of bean mutations.
+ * Each record is {@code [int length][int crc32][byte op][payload]}; a
+ * torn or corrupt tail left by a crash is detected by its length or CRC
+ * and cut off on open.
+ * Records are buffered and fsynced as a group: when {@code groupSize}
+ * records are pending, on {@link #sync()}, and at least every
+ * {@code syncIntervalMillis} by a background flusher. A crash can
+ * therefore lose at most the last group. Thread-safe.
+ */
+class BeanJournal implements Closeable {
+    static final byte ADD = 1;
+    static final byte UPDATE = 2;
+    static final byte REMOVE = 3;
+
+    /** Receives records read back from a journal. */
+    interface Replay {
+        /**
+         * @param op   ADD, UPDATE or REMOVE
+         * @param bean the bean for ADD and UPDATE, otherwise null
+         * @param id   the beanID of the record
+         */
+        void apply(byte op, CoffeeBean bean, String id);
+    }
+
+    private final FileChannel ch;
+    private final int groupSize;
+    private final ByteArrayOutputStream record = new ByteArrayOutputStream(256);
+    private final DataOutputStream recordOut = new DataOutputStream(record);
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream(1 << 16);
+    private final DataOutputStream pendingOut = new DataOutputStream(pending);
+    private final CRC32 crc = new CRC32();
+    private final ScheduledExecutorService flusher;
+    private int pendingRecords;
+    private long records;
+    /** Length of the file up to the end of the last record fully written. */
+    private long size;
+
+    /**
+     * Opens a journal for appending; the file must already have been
+     * replayed (see {@link #replay}) so any torn tail is gone.
+     *
+     * @param file               journal file, created if missing
+     * @param groupSize          records per fsync group (1 = fsync every record)
+     * @param syncIntervalMillis longest time a record waits for fsync; 0 disables the flusher
+     * @param existingRecords    records already in the file
+     * @throws IOException if the file cannot be opened
+     */
+    BeanJournal(Path file, int groupSize, long syncIntervalMillis, long existingRecords)
+            throws IOException {
+        if (groupSize < 1) {
+            throw new IllegalArgumentException("groupSize must be at least 1");
+        }
+        this.ch = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        this.groupSize = groupSize;
+        this.records = existingRecords;
+        this.size = ch.size();
+        if (syncIntervalMillis > 0) {
+            flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "bean-journal-flusher");
+                t.setDaemon(true);
+                return t;
+            });
+            flusher.scheduleWithFixedDelay(this::backgroundSync,
+                    syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            flusher = null;
+        }
+    }
+
+    /**
+     * Reads every intact record of a journal in order and truncates the
+     * file after the last one.
+     *
+     * @param file   journal file; a missing file has no records
+     * @param replay receives each record
+     * @return number of records replayed
+     * @throws IOException if the file cannot be read
+     */
+    static long replay(Path file, Replay replay) throws IOException {
+        if (!Files.exists(file)) return 0;
+        long count = 0;
+        long valid = 0;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = ch.size();
+            DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(Channels.newInputStream(ch), 1 << 16));
+            CRC32 check = new CRC32();
+            while (valid + 8 <= size) {
+                int len = in.readInt();
+                int sum = in.readInt();
+                if (len < 1 || valid + 8 + len > size) break;
+                byte[] payload = new byte[len];
+                in.readFully(payload);
+                check.reset();
+                check.update(payload);
+                if ((int) check.getValue() != sum) break;
+
+                DataInputStream p = new DataInputStream(new ByteArrayInputStream(payload));
+                byte op = p.readByte();
+                if (op == REMOVE) {
+                    replay.apply(op, null, readString(p));
+                } else if (op == ADD || op == UPDATE) {
+                    CoffeeBean b = readBean(p);
+                    replay.apply(op, b, b.getBeanID());
+                } else {
+                    break;
+                }
+                valid += 8 + len;
+                count++;
+            }
+            if (valid < size) {
+                ch.truncate(valid);
+            }
+        }
+        return count;
+    }
+
+    synchronized void append(byte op, CoffeeBean bean) {
+        try {
+            record.reset();
+            recordOut.writeByte(op);
+            writeBean(recordOut, bean);
+            enqueue();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    synchronized void appendRemove(String id) {
+        try {
+            record.reset();
+            recordOut.writeByte(REMOVE);
+            writeString(recordOut, id);
+            enqueue();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Adds the record to the pending group, syncing if the group is full.
+     * If that sync fails the record is taken out again, so a caller that
+     * sees the exception can treat the change as never logged.
+     */
+    private void enqueue() throws IOException {
+        byte[] payload = record.toByteArray();
+        int mark = pending.size();
+        crc.reset();
+        crc.update(payload);
+        pendingOut.writeInt(payload.length);
+        pendingOut.writeInt((int) crc.getValue());
+        pendingOut.write(payload);
+        pendingRecords++;
+        records++;
+        if (pendingRecords >= groupSize) {
+            try {
+                sync();
+            } catch (IOException ex) {
+                byte[] kept = pending.toByteArray();
+                pending.reset();
+                pending.write(kept, 0, mark);
+                pendingRecords--;
+                records--;
+                throw ex;
+            }
+        }
+    }
+
+    /**
+     * Writes and fsyncs every pending record. If the write or fsync
+     * fails, the file is cut back to its last complete record and the
+     * records stay pending, so a retry does not leave a torn record in
+     * front of them.
+     *
+     * @throws IOException if the write or fsync fails
+     */
+    synchronized void sync() throws IOException {
+        if (pendingRecords == 0) return;
+        // an earlier failed sync whose cleanup failed too may have left a torn tail
+        if (ch.size() > size) ch.truncate(size);
+        ByteBuffer buf = ByteBuffer.wrap(pending.toByteArray());
+        try {
+            while (buf.hasRemaining()) {
+                ch.write(buf);
+            }
+            ch.force(false);
+        } catch (IOException ex) {
+            try {
+                ch.truncate(size);
+            } catch (IOException t) {
+                ex.addSuppressed(t);
+            }
+            throw ex;
+        }
+        size += buf.limit();
+        pending.reset();
+        pendingRecords = 0;
+    }
+
+    private void backgroundSync() {
+        try {
+            sync();
+        } catch (IOException ex) {
+            System.err.println("Journal sync failed: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * @return records in the journal file, including pending ones
+     */
+    synchronized long records() {
+        return records;
+    }
+
+    /**
+     * Drops every record, after they have been folded into a snapshot.
+     *
+     * @throws IOException if the file cannot be truncated
+     */
+    synchronized void truncate() throws IOException {
+        pending.reset();
+        pendingRecords = 0;
+        ch.truncate(0);
+        ch.force(true);
+        records = 0;
+        size = 0;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (flusher != null) flusher.shutdownNow();
+        try {
+            sync();
+        } finally {
+            ch.close();
+        }
+    }
+
+    // Record payload encoding
+
+    static void writeBean(DataOutput out, CoffeeBean b) throws IOException {
+        writeString(out, b.getBeanID());
+        writeString(out, b.getOriginCountry());
+        writeString(out, b.getFarmName());
+        out.writeByte(b.getRoastLevel().ordinal());
+        out.writeLong(b.getRoastDate().toEpochDay());
+        out.writeDouble(b.getQuantityKg());
+        writeDecimal(out, b.getCostPerKg());
+        writeString(out, b.getFlavorNotes());
+        out.writeDouble(b.getCaffeineContentMgPerGram());
+    }
+
+    static CoffeeBean readBean(DataInput in) throws IOException {
+        return new CoffeeBean(
+                readString(in),
+                readString(in),
+                readString(in),
+                RoastLevel.values()[in.readByte()],
+                LocalDate.ofEpochDay(in.readLong()),
+                in.readDouble(),
+                readDecimal(in),
+                readString(in),
+                in.readDouble()
+        );
+    }
+
+    static void writeString(DataOutput out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInput in) throws IOException {
+        int len = in.readInt();
+        if (len < 0) throw new EOFException("Negative string length");
+        byte[] bytes = new byte[len];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static void writeDecimal(DataOutput out, BigDecimal d) throws IOException {
+        byte[] unscaled = d.unscaledValue().toByteArray();
+        out.writeInt(d.scale());
+        out.writeInt(unscaled.length);
+        out.write(unscaled);
+    }
+
+    static BigDecimal readDecimal(DataInput in) throws IOException {
+        int scale = in.readInt();
+        int len = in.readInt();
+        if (len < 1) throw new EOFException("Bad decimal length");
+        byte[] unscaled = new byte[len];
+        in.readFully(unscaled);
+        return new BigDecimal(new BigInteger(unscaled), scale);
+    }
+}
@@ -0,0 +1,186 @@
+package com.example.coffeedms;
+
+import javax.swing.table.DefaultTableModel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Vector;
+
+/**
+ * Table model for the GUIs that shows one page of lots at a time.
+ * Pages are read by keyset ({@link BeanRepository#findPage}), so rows
+ * are in beanID order rather than insertion order. Repository change
+ * events patch the visible page instead of re-reading it.
+ * <p>
+ * Listeners get a table event whenever the page or its rows change, and
+ * can read {@link #hasPreviousPage()}, {@link #hasNextPage()} and
+ * {@link #getPageNumber()} to update their paging controls. Use only on
+ * the event dispatch thread.
+ */
+class BeanPageModel extends DefaultTableModel {
+    private static final long serialVersionUID = 1L;
+
+    static final String[] COLUMNS = { "Bean ID","Origin","Farm","Roast Level",
+            "Roast Date","Qty (kg)","Cost/kg","Notes","Caffeine mg/g" };
+
+    /** Where pages come from, e.g. {@code repo::findPage}. */
+    interface PageSource {
+        /**
+         * @param afterBeanID exclusive lower bound, or null for the first page
+         * @param limit       most lots to return
+         * @return lots after afterBeanID in beanID order
+         */
+        List<CoffeeBean> findPage(String afterBeanID, int limit);
+    }
+
+    private final int pageSize;
+    private final transient PageSource source;
+    /** Cursors of the pages before this one, oldest first. */
+    private final List<String> earlierCursors = new ArrayList<>();
+    /** Last beanID of the previous page, or null on the first page. */
+    private String cursor;
+    private boolean hasNext;
+
+    BeanPageModel(int pageSize, PageSource source) {
+        super(COLUMNS, 0);
+        this.pageSize = pageSize;
+        this.source = source;
+    }
+
+    boolean hasPreviousPage() {
+        return !earlierCursors.isEmpty();
+    }
+
+    boolean hasNextPage() {
+        return hasNext;
+    }
+
+    /** @return the current page, from 1 */
+    int getPageNumber() {
+        return earlierCursors.size() + 1;
+    }
+
+    void nextPage() {
+        if (!hasNext) return;
+        List<String> earlier = new ArrayList<>(earlierCursors);
+        earlier.add(cursor);
+        load(earlier, (String) getValueAt(getRowCount() - 1, 0));
+    }
+
+    void previousPage() {
+        if (earlierCursors.isEmpty()) return;
+        List<String> earlier = new ArrayList<>(earlierCursors);
+        load(earlier, earlier.remove(earlier.size() - 1));
+    }
+
+    /** Re-reads the current page. */
+    void refresh() {
+        load(new ArrayList<>(earlierCursors), cursor);
+    }
+
+    /**
+     * Shows the page after from. One extra lot is fetched to tell whether
+     * a next page exists; a page emptied by removals falls back a page.
+     * If the source throws, the model is left as it was.
+     */
+    private void load(List<String> earlier, String from) {
+        List<CoffeeBean> page = source.findPage(from, pageSize + 1);
+        while (page.isEmpty() && !earlier.isEmpty()) {
+            from = earlier.remove(earlier.size() - 1);
+            page = source.findPage(from, pageSize + 1);
+        }
+        earlierCursors.clear();
+        earlierCursors.addAll(earlier);
+        cursor = from;
+        hasNext = page.size() > pageSize;
+        // one event for the whole page rather than one per row
+        dataVector.clear();
+        for (CoffeeBean b : page.subList(0, Math.min(pageSize, page.size()))) {
+            dataVector.add(new Vector<>(Arrays.asList(rowData(b))));
+        }
+        fireTableDataChanged();
+    }
+
+    /**
+     * Patches the visible page. Rows stay in beanID order; a new lot is
+     * shown if it falls inside the page, a page shortened by removals is
+     * topped up from the lots after it, and a bulk load re-reads the page.
+     */
+    void applyChanges(List<BeanChangeEvent> batch) {
+        for (BeanChangeEvent e : batch) {
+            if (e.getType() == BeanChangeEvent.Type.BULK_LOADED) {
+                refresh();
+                return;
+            }
+            int row = rowOf(e.getBeanID());
+            switch (e.getType()) {
+                case ADDED:
+                    int at = -row - 1;
+                    boolean afterCursor = cursor == null || e.getBeanID().compareTo(cursor) > 0;
+                    boolean inPage = at < getRowCount() || !hasNext;
+                    if (row < 0 && afterCursor && inPage) {
+                        insertRow(at, rowData(e.getBean()));
+                        if (getRowCount() > pageSize) {
+                            hasNext = true;
+                            removeRow(pageSize);
+                        }
+                    }
+                    break;
+                case UPDATED:
+                    if (row >= 0) {
+                        removeRow(row);
+                        insertRow(row, rowData(e.getBean()));
+                    }
+                    break;
+                case REMOVED:
+                    if (row >= 0) removeRow(row);
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (hasNext && getRowCount() < pageSize) topUp();
+        if (getRowCount() == 0 && !earlierCursors.isEmpty()) refresh();
+    }
+
+    /** Appends the lots that follow the last row until the page is full again. */
+    private void topUp() {
+        int first = getRowCount();
+        String last = first == 0 ? cursor : (String) getValueAt(first - 1, 0);
+        int missing = pageSize - first;
+        List<CoffeeBean> more = source.findPage(last, missing + 1);
+        hasNext = more.size() > missing;
+        for (CoffeeBean b : more.subList(0, Math.min(missing, more.size()))) {
+            dataVector.add(new Vector<>(Arrays.asList(rowData(b))));
+        }
+        if (getRowCount() > first) fireTableRowsInserted(first, getRowCount() - 1);
+    }
+
+    /** @return the row showing beanID, or -(insertion row) - 1 */
+    private int rowOf(String beanID) {
+        int lo = 0;
+        int hi = getRowCount() - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = ((String) getValueAt(mid, 0)).compareTo(beanID);
+            if (c < 0) lo = mid + 1;
+            else if (c > 0) hi = mid - 1;
+            else return mid;
+        }
+        return -(lo + 1);
+    }
+
+    private static Object[] rowData(CoffeeBean b) {
+        return new Object[]{
+                b.getBeanID(),
+                b.getOriginCountry(),
+                b.getFarmName(),
+                b.getRoastLevel(),
+                b.getRoastDate(),
+                b.getQuantityKg(),
+                b.getCostPerKg(),
+                b.getFlavorNotes(),
+                b.getCaffeineContentMgPerGram()
+        };
+    }
+}
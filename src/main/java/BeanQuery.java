@@ -0,0 +1,89 @@
+package com.example.coffeedms;
+
+import java.time.LocalDate;
+
+/**
+ * Criteria for {@link BeanRepository#query(BeanQuery)}. Every criterion
+ * left unset matches all beans; set criteria must all match.
+ * <pre>
+ * new BeanQuery().roastLevel(RoastLevel.DARK).origin("Colombia")
+ *         .roastedBetween(LocalDate.now().minusDays(7), LocalDate.now())
+ * </pre>
+ */
+public class BeanQuery {
+    private RoastLevel roastLevel;
+    private String origin;
+    private String farm;
+    private LocalDate roastedFrom;
+    private LocalDate roastedTo;
+
+    public BeanQuery roastLevel(RoastLevel roastLevel) {
+        this.roastLevel = roastLevel;
+        return this;
+    }
+
+    /**
+     * @param origin exact origin country
+     */
+    public BeanQuery origin(String origin) {
+        this.origin = origin;
+        return this;
+    }
+
+    /**
+     * @param farm exact farm name
+     */
+    public BeanQuery farm(String farm) {
+        this.farm = farm;
+        return this;
+    }
+
+    /**
+     * @param from first roast date to include, or null for no lower bound
+     * @param to   last roast date to include, or null for no upper bound
+     */
+    public BeanQuery roastedBetween(LocalDate from, LocalDate to) {
+        this.roastedFrom = from;
+        this.roastedTo = to;
+        return this;
+    }
+
+    public RoastLevel getRoastLevel() {
+        return roastLevel;
+    }
+
+    public String getOrigin() {
+        return origin;
+    }
+
+    public String getFarm() {
+        return farm;
+    }
+
+    public LocalDate getRoastedFrom() {
+        return roastedFrom;
+    }
+
+    public LocalDate getRoastedTo() {
+        return roastedTo;
+    }
+
+    /**
+     * @return true if a roast date bound is set
+     */
+    public boolean hasDateRange() {
+        return roastedFrom != null || roastedTo != null;
+    }
+
+    /**
+     * @param b bean to test
+     * @return true if the bean satisfies every set criterion
+     */
+    public boolean matches(CoffeeBean b) {
+        return (roastLevel == null || roastLevel == b.getRoastLevel())
+                && (origin == null || origin.equals(b.getOriginCountry()))
+                && (farm == null || farm.equals(b.getFarmName()))
+                && (roastedFrom == null || !b.getRoastDate().isBefore(roastedFrom))
+                && (roastedTo == null || !b.getRoastDate().isAfter(roastedTo));
+    }
+}
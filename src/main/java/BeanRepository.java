@@ -1,19 +1,59 @@
 package com.example.coffeedms;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.math.BigDecimal;
-import java.time.LocalDate;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 /**
- * Manages an in-memory list of CoffeeBean objects.
+ * Manages an in-memory collection of CoffeeBean objects.
  * Enforces unique beanID on both manual add and batch-load.
+ * Beans are indexed by beanID (O(1) lookup) while keeping insertion order.
  */
 public class BeanRepository {
-    private final List<CoffeeBean> beans = new ArrayList<>();
+    /** Smallest chunk handed to a parallel import worker. */
+    private static final long MIN_CHUNK_BYTES = 1 << 16;
+    /** Largest chunk; keeps each worker's read buffer well below array limits. */
+    private static final long MAX_CHUNK_BYTES = 1 << 26;
+
+    /** Highest value (quantity × cost) first, then by beanID. */
+    public static final Comparator<CoffeeBean> MOST_VALUABLE_FIRST =
+            Comparator.comparing(CoffeeBean::calculateValue).reversed()
+                    .thenComparing(CoffeeBean::getBeanID);
+    /** Earliest roast date first, then by beanID. */
+    public static final Comparator<CoffeeBean> OLDEST_ROAST_FIRST =
+            Comparator.comparing(CoffeeBean::getRoastDate)
+                    .thenComparing(CoffeeBean::getBeanID);
+    /** Highest caffeine content first, then by beanID. */
+    public static final Comparator<CoffeeBean> HIGHEST_CAFFEINE_FIRST =
+            Comparator.comparingDouble(CoffeeBean::getCaffeineContentMgPerGram).reversed()
+                    .thenComparing(CoffeeBean::getBeanID);
+
+    private final Map<String, CoffeeBean> beans = new LinkedHashMap<>();
+    private final InventoryTotals totals = new InventoryTotals();
+    private final BeanIndexes indexes = new BeanIndexes();
+    private final FlavorIndex flavors = new FlavorIndex();
+    private final BeanChangeDispatcher changes = new BeanChangeDispatcher();
 
     /**
      * Reads a CSV file of bean records, validates each line,
@@ -25,34 +65,244 @@ public class BeanRepository {
      */
     public List<CoffeeBean> loadFromFile(String path) throws IOException {
         List<CoffeeBean> loaded = new ArrayList<>();
-        try (BufferedReader reader = new BufferedReader(new FileReader(path))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                try {
-                    String[] p = line.split(",");
-                    CoffeeBean b = new CoffeeBean(
-                            p[0].trim(),
-                            p[1].trim(),
-                            p[2].trim(),
-                            RoastLevel.fromString(p[3]),
-                            LocalDate.parse(p[4].trim()),
-                            Double.parseDouble(p[5].trim()),
-                            new BigDecimal(p[6].trim()),
-                            p[7].trim(),
-                            Double.parseDouble(p[8].trim())
-                    );
-                    // Skip if ID already exists
-                    if (findByID(b.getBeanID()) == null) {
-                        beans.add(b);
-                        loaded.add(b);
+        ImportResult result = changes.bulk(() -> BeanCsvParser.importFile(path,
+                b -> add(b) && loaded.add(b), new RejectReport()));
+        if (result.getRejected() > 0) {
+            // one summary line instead of a console write per bad line
+            System.err.println("Skipped " + result.getRejected() + " line(s): "
+                    + result.getRejects().summary());
+        }
+        return loaded;
+    }
+
+    /**
+     * Streams a CSV file of bean records into this repository without
+     * building a list of the loaded beans. Only beans with a new beanID
+     * are added.
+     *
+     * @param path filesystem path to CSV
+     * @return accepted count and a report of skipped lines
+     * @throws IOException if the file cannot be read
+     */
+    public ImportResult importFile(String path) throws IOException {
+        return importFile(path, new RejectReport());
+    }
+
+    /**
+     * Same as {@link #importFile(String)}, collecting skipped lines into
+     * the given report.
+     *
+     * @param path    filesystem path to CSV
+     * @param rejects collects skipped lines; flushed but not closed
+     * @return accepted count and the reject report
+     * @throws IOException if the file or the reject file cannot be written
+     */
+    public ImportResult importFile(String path, RejectReport rejects) throws IOException {
+        return changes.bulk(() -> BeanCsvParser.importFile(path, this::add, rejects));
+    }
+
+    /**
+     * Parallel variant of {@link #loadFromFile(String)} using one worker
+     * per available processor.
+     *
+     * @param path filesystem path to CSV
+     * @return counts and throughput of the import
+     * @throws IOException if the file cannot be read
+     */
+    public ImportResult loadFromFileParallel(String path) throws IOException {
+        return loadFromFileParallel(path, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Parallel variant of {@link #loadFromFile(String)}.
+     * Splits the file into line-aligned chunks, parses them on a fork-join
+     * pool, then merges the chunks in file order so the first occurrence
+     * of a beanID still wins.
+     *
+     * @param path        filesystem path to CSV
+     * @param parallelism number of worker threads
+     * @return counts and throughput of the import
+     * @throws IOException if the file cannot be read
+     */
+    public ImportResult loadFromFileParallel(String path, int parallelism) throws IOException {
+        return loadFromFileParallel(path, parallelism, new RejectReport());
+    }
+
+    /**
+     * Same as {@link #loadFromFileParallel(String, int)}, collecting
+     * skipped lines into the given report in file order.
+     *
+     * @param path        filesystem path to CSV
+     * @param parallelism number of worker threads
+     * @param rejects     collects skipped lines; flushed but not closed
+     * @return counts and throughput of the import
+     * @throws IOException if the file cannot be read or the reject file written
+     */
+    public ImportResult loadFromFileParallel(String path, int parallelism, RejectReport rejects)
+            throws IOException {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        }
+        return changes.bulk(() -> parallelImport(path, parallelism, rejects));
+    }
+
+    private ImportResult parallelImport(String path, int parallelism, RejectReport rejects)
+            throws IOException {
+        long start = System.nanoTime();
+        try (FileChannel ch = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            long size = ch.size();
+            List<Long> bounds = chunkBounds(ch, size, parallelism);
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                List<Future<ParsedChunk>> chunks = new ArrayList<>();
+                for (int i = 0; i + 1 < bounds.size(); i++) {
+                    long from = bounds.get(i);
+                    long to = bounds.get(i + 1);
+                    chunks.add(pool.submit(() -> parseChunk(ch, from, to, rejects)));
+                }
+
+                long lines = 0, accepted = 0;
+                for (Future<ParsedChunk> f : chunks) {
+                    ParsedChunk chunk = await(f);
+                    // interleave beans and malformed lines back into line order
+                    int m = 0;
+                    for (int k = 0; k < chunk.beans.size(); k++) {
+                        CoffeeBean b = chunk.beans.get(k);
+                        long lineNo = chunk.beanLines[k];
+                        while (m < chunk.malformed.size() && chunk.malformed.get(m).getLineNo() < lineNo) {
+                            recordMalformed(rejects, lines, chunk.malformed.get(m++));
+                        }
+                        if (add(b)) {
+                            accepted++;
+                        } else {
+                            rejects.record(lines + lineNo, RejectReason.DUPLICATE_ID, b::getBeanID);
+                        }
                     }
-                } catch (Exception ex) {
-                    // invalid line or duplicate → skip quietly
-                    System.err.println("Skipping invalid/duplicate line: " + line);
+                    while (m < chunk.malformed.size()) {
+                        recordMalformed(rejects, lines, chunk.malformed.get(m++));
+                    }
+                    lines += chunk.lines;
                 }
+                return new ImportResult(lines, accepted, rejects, size, System.nanoTime() - start);
+            } finally {
+                pool.shutdownNow();
+                rejects.flush();
             }
         }
-        return loaded;
+    }
+
+    /**
+     * Computes chunk start offsets, each one just past a line break,
+     * ending with the file size. Line breaks are LF, CRLF or a lone CR,
+     * as in {@link BeanCsvParser}; a chunk never starts between the CR
+     * and LF of a CRLF. Package-private for tests.
+     */
+    static List<Long> chunkBounds(FileChannel ch, long size, int parallelism)
+            throws IOException {
+        long target = Math.min(MAX_CHUNK_BYTES,
+                Math.max(MIN_CHUNK_BYTES, size / (parallelism * 4L)));
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(0L);
+        ByteBuffer buf = ByteBuffer.allocate(8192);
+        long pos = target;
+        while (pos < size) {
+            long lineEnd = -1;
+            while (lineEnd < 0 && pos < size) {
+                buf.clear();
+                int n = ch.read(buf, pos);
+                if (n <= 0) break;
+                for (int i = 0; i < n; i++) {
+                    byte b = buf.get(i);
+                    if (b == '\n') {
+                        lineEnd = pos + i + 1;
+                        break;
+                    }
+                    if (b == '\r') {
+                        // the CR of a CRLF ends its line only after the LF
+                        boolean crlf = i + 1 < n ? buf.get(i + 1) == '\n' : nextIsLF(ch, pos + i + 1, size);
+                        lineEnd = pos + i + (crlf ? 2 : 1);
+                        break;
+                    }
+                }
+                if (lineEnd < 0) pos += n;
+            }
+            if (lineEnd < 0 || lineEnd >= size) break;
+            if (lineEnd - bounds.get(bounds.size() - 1) > Integer.MAX_VALUE - 8) {
+                throw new IOException("Line too long near offset " + lineEnd);
+            }
+            bounds.add(lineEnd);
+            pos = lineEnd + target;
+        }
+        if (size - bounds.get(bounds.size() - 1) > Integer.MAX_VALUE - 8) {
+            throw new IOException("Line too long near offset " + bounds.get(bounds.size() - 1));
+        }
+        bounds.add(size);
+        return bounds;
+    }
+
+    private static boolean nextIsLF(FileChannel ch, long at, long size) throws IOException {
+        if (at >= size) return false;
+        ByteBuffer one = ByteBuffer.allocate(1);
+        return ch.read(one, at) == 1 && one.get(0) == '\n';
+    }
+
+    /**
+     * Parses the lines in [from, to). Runs on a pool worker.
+     */
+    private static ParsedChunk parseChunk(FileChannel ch, long from, long to, RejectReport rejects)
+            throws IOException {
+        // texts beyond what the report could still keep are dropped here
+        int keepText = rejects.getRejectFile() != null ? Integer.MAX_VALUE : rejects.getSampleLimit();
+        ParsedChunk chunk = new ParsedChunk(keepText);
+        chunk.lines = new BeanCsvParser().parseRange(ch, from, to, chunk);
+        return chunk;
+    }
+
+    private static void recordMalformed(RejectReport rejects, long lineBase, RejectReport.Reject r)
+            throws IOException {
+        rejects.record(lineBase + r.getLineNo(), r.getReason(), r::getText);
+    }
+
+    private static <T> T await(Future<T> f) throws IOException {
+        try {
+            return f.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Import interrupted");
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IOException("Import failed", cause);
+        }
+    }
+
+    /** Beans and malformed lines parsed from one chunk, in file order. */
+    private static final class ParsedChunk implements BeanCsvParser.LineHandler {
+        final List<CoffeeBean> beans = new ArrayList<>();
+        int[] beanLines = new int[256];
+        final List<RejectReport.Reject> malformed = new ArrayList<>();
+        final int keepText;
+        long lines;
+
+        ParsedChunk(int keepText) {
+            this.keepText = keepText;
+        }
+
+        @Override
+        public void bean(long lineNo, CoffeeBean bean) {
+            if (beans.size() == beanLines.length) {
+                beanLines = Arrays.copyOf(beanLines, beanLines.length * 2);
+            }
+            beanLines[beans.size()] = (int) lineNo; // chunks are under 2 GB
+            beans.add(bean);
+        }
+
+        @Override
+        public void malformed(long lineNo, RejectReason reason, Supplier<String> line) {
+            String text = malformed.size() < keepText ? line.get() : null;
+            malformed.add(new RejectReport.Reject(lineNo, reason, text));
+        }
     }
 
     /**
@@ -62,45 +312,498 @@ public class BeanRepository {
      * @return true if added; false if a bean with same ID already exists
      */
     public boolean add(CoffeeBean bean) {
-        if (findByID(bean.getBeanID()) != null) {
+        if (beans.putIfAbsent(bean.getBeanID(), bean) != null) {
             return false;
         }
-        return beans.add(bean);
+        totals.add(bean);
+        indexes.add(bean);
+        flavors.add(bean);
+        fireAdded(bean);
+        return true;
     }
 
     public boolean removeByID(String beanID) {
-        return beans.removeIf(b -> b.getBeanID().equals(beanID));
+        CoffeeBean removed = beans.remove(beanID);
+        if (removed == null) {
+            return false;
+        }
+        totals.remove(removed);
+        indexes.remove(removed);
+        flavors.remove(removed);
+        fireRemoved(removed);
+        return true;
     }
 
+    /**
+     * Replaces the bean with the same beanID, keeping its position
+     * in insertion order.
+     *
+     * @param updatedBean the new version of the bean
+     * @return true if replaced; false if no bean with that ID exists
+     */
     public boolean update(CoffeeBean updatedBean) {
-        for (int i = 0; i < beans.size(); i++) {
-            if (beans.get(i).getBeanID().equals(updatedBean.getBeanID())) {
-                beans.set(i, updatedBean);
-                return true;
-            }
+        CoffeeBean previous = beans.replace(updatedBean.getBeanID(), updatedBean);
+        if (previous == null) {
+            return false;
         }
-        return false;
+        totals.remove(previous);
+        totals.add(updatedBean);
+        indexes.update(previous, updatedBean);
+        flavors.update(previous, updatedBean);
+        fireUpdated(previous, updatedBean);
+        return true;
     }
 
-    public CoffeeBean findByID(String beanID) {
-        for (CoffeeBean b : beans) {
-            if (b.getBeanID().equals(beanID)) return b;
+    /**
+     * Adds each bean whose beanID is not already present.
+     *
+     * @param toAdd beans to add
+     * @return one outcome per bean, in iteration order: true if added
+     */
+    public boolean[] addAll(Collection<CoffeeBean> toAdd) {
+        boolean[] added = new boolean[toAdd.size()];
+        int i = 0;
+        for (CoffeeBean b : toAdd) {
+            added[i++] = add(b);
+        }
+        return added;
+    }
+
+    /**
+     * Replaces each bean with the same beanID, as {@link #update(CoffeeBean)}
+     * does, e.g. to reprice many lots at once.
+     *
+     * @param updatedBeans new versions of existing beans
+     * @return one outcome per bean, in iteration order: true if replaced
+     */
+    public boolean[] updateAll(Collection<CoffeeBean> updatedBeans) {
+        boolean[] updated = new boolean[updatedBeans.size()];
+        int i = 0;
+        for (CoffeeBean b : updatedBeans) {
+            updated[i++] = update(b);
+        }
+        return updated;
+    }
+
+    /**
+     * @param beanIDs lots to remove
+     * @return one outcome per ID, in iteration order: true if removed
+     */
+    public boolean[] removeAll(Collection<String> beanIDs) {
+        boolean[] removed = new boolean[beanIDs.size()];
+        int i = 0;
+        for (String id : beanIDs) {
+            removed[i++] = removeByID(id);
         }
-        return null;
+        return removed;
+    }
+
+    /**
+     * Removes every bean matching filter, found in one pass over the
+     * inventory.
+     *
+     * @param filter selects the beans to remove
+     * @return the removed beans, in insertion order
+     */
+    public List<CoffeeBean> removeIf(Predicate<? super CoffeeBean> filter) {
+        List<CoffeeBean> matched = new ArrayList<>();
+        forEachBean(b -> {
+            if (filter.test(b)) matched.add(b);
+        });
+        List<CoffeeBean> removed = new ArrayList<>(matched.size());
+        for (CoffeeBean b : matched) {
+            if (removeByID(b.getBeanID())) removed.add(b);
+        }
+        return removed;
+    }
+
+    /**
+     * Adds deltaKg to a lot's quantity without replacing the rest of it.
+     * Only the aggregates are touched, so this is much cheaper than
+     * {@link #update(CoffeeBean)}. The sum is computed in decimal
+     * (0.1 + 0.2 gives 0.3), and a change that would leave the quantity
+     * negative is refused.
+     *
+     * @param beanID  lot to change
+     * @param deltaKg kilograms to add (negative to take away)
+     * @return true if the lot exists and the change was applied
+     */
+    public boolean adjustQuantity(String beanID, double deltaKg) {
+        CoffeeBean old = beans.get(beanID);
+        if (old == null) return false;
+        CoffeeBean now = adjusted(old, deltaKg);
+        if (now == null) return false;
+        beans.put(beanID, now);
+        totals.remove(old);
+        totals.add(now);
+        fireUpdated(old, now);
+        return true;
+    }
+
+    /**
+     * Adds received stock to a lot.
+     *
+     * @param beanID lot to change
+     * @param kg     kilograms received; must not be negative
+     * @return true if the lot exists
+     */
+    public boolean receive(String beanID, double kg) {
+        return adjustQuantity(beanID, checkAmount(kg));
+    }
+
+    /**
+     * Takes consumed stock from a lot.
+     *
+     * @param beanID lot to change
+     * @param kg     kilograms consumed; must not be negative
+     * @return true if the lot exists and held at least kg
+     */
+    public boolean consume(String beanID, double kg) {
+        return adjustQuantity(beanID, -checkAmount(kg));
+    }
+
+    /**
+     * @return old with deltaKg added to its quantity, or null if the result would be negative
+     */
+    static CoffeeBean adjusted(CoffeeBean old, double deltaKg) {
+        if (!Double.isFinite(deltaKg)) {
+            throw new IllegalArgumentException("deltaKg must be finite");
+        }
+        double qty = BigDecimal.valueOf(old.getQuantityKg())
+                .add(BigDecimal.valueOf(deltaKg)).doubleValue();
+        return qty < 0 ? null : old.withQuantityKg(qty);
+    }
+
+    static double checkAmount(double kg) {
+        if (!(kg >= 0)) {
+            throw new IllegalArgumentException("Amount must not be negative");
+        }
+        return kg;
+    }
+
+    public CoffeeBean findByID(String beanID) {
+        return beans.get(beanID);
     }
 
     public List<CoffeeBean> findAll() {
-        return new ArrayList<>(beans);
+        return new ArrayList<>(beans.values());
+    }
+
+    /**
+     * Writes every bean to a binary snapshot file (see {@link BeanSnapshot}),
+     * replacing it only once the new one is complete and on disk.
+     * Reloading a snapshot avoids all CSV text parsing.
+     *
+     * @param path snapshot file
+     * @throws IOException if the file cannot be written
+     */
+    public void saveSnapshot(Path path) throws IOException {
+        BeanSnapshot.write(path, beans.values());
+    }
+
+    /**
+     * Adds every bean in a snapshot written by {@link #saveSnapshot(Path)}.
+     * Beans whose beanID is already present are skipped.
+     *
+     * @param path snapshot file
+     * @return number of beans added
+     * @throws IOException if the file cannot be read or is not a snapshot
+     */
+    public int loadSnapshot(Path path) throws IOException {
+        int[] added = new int[1];
+        changes.bulk(() -> BeanSnapshot.read(path, b -> {
+            if (add(b)) added[0]++;
+            return true;
+        }));
+        return added[0];
+    }
+
+    /**
+     * @return number of beans in the repository
+     */
+    public int size() {
+        return beans.size();
+    }
+
+    /**
+     * Finds the beans matching every criterion of a query. The smallest
+     * candidate set among the roast level, origin, farm and roast date
+     * indexes drives the search; the other criteria are checked per
+     * candidate, so cost is proportional to that set, not the inventory.
+     *
+     * @param q criteria to match
+     * @return matching beans, in the order of the index that drove the search
+     */
+    public List<CoffeeBean> query(BeanQuery q) {
+        Iterable<String> candidates = indexes.candidates(q);
+        if (candidates == null) {
+            return findAll();
+        }
+        List<CoffeeBean> out = new ArrayList<>();
+        for (String id : candidates) {
+            CoffeeBean b = beans.get(id);
+            if (q.matches(b)) out.add(b);
+        }
+        return out;
+    }
+
+    /**
+     * Finds beans whose flavor notes contain every term, using the
+     * flavor-note index instead of scanning notes. Matching is by whole
+     * word and case-insensitive; a term ending in '*' matches any word
+     * with that prefix ("choc*" matches "chocolate").
+     *
+     * @param terms words to look for
+     * @return matching beans
+     */
+    public List<CoffeeBean> findByFlavorAll(String... terms) {
+        return lookup(flavors.matchAll(Arrays.asList(terms)));
+    }
+
+    /**
+     * Like {@link #findByFlavorAll(String...)} but matches beans whose
+     * notes contain at least one of the terms.
+     *
+     * @param terms words to look for
+     * @return matching beans
+     */
+    public List<CoffeeBean> findByFlavorAny(String... terms) {
+        return lookup(flavors.matchAny(Arrays.asList(terms)));
+    }
+
+    private List<CoffeeBean> lookup(Collection<String> ids) {
+        List<CoffeeBean> out = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            out.add(beans.get(id));
+        }
+        return out;
     }
 
     /**
      * Sums the value of each bean (quantity × cost).
+     * Maintained on every change, so this is O(1); the result is exactly
+     * what summing {@link CoffeeBean#calculateValue()} over all beans gives.
      */
     public BigDecimal calculateTotalInventoryValue() {
-        BigDecimal sum = BigDecimal.ZERO;
-        for (CoffeeBean b : beans) {
-            sum = sum.add(b.calculateValue());
+        return totals.getTotalValue();
+    }
+
+    /**
+     * @return sum of quantityKg over all beans, as an exact decimal
+     */
+    public BigDecimal getTotalQuantityKg() {
+        return totals.getTotalQuantityKg();
+    }
+
+    /**
+     * @return inventory value per roast level; levels with no beans are absent
+     */
+    public Map<RoastLevel, BigDecimal> getValueByRoastLevel() {
+        return totals.getValueByRoastLevel();
+    }
+
+    /**
+     * @return inventory value per origin country; origins with no beans are absent
+     */
+    public Map<String, BigDecimal> getValueByOrigin() {
+        return totals.getValueByOrigin();
+    }
+
+    /**
+     * Returns one page of beans in beanID order, keyed on the last beanID
+     * of the previous page instead of an offset: pass null for the first
+     * page, then the ID of the last bean returned. Beans added or removed
+     * between calls do not shift later pages, and each page costs
+     * O(limit × log size) whatever its position.
+     *
+     * @param afterBeanID last beanID of the previous page, or null
+     * @param limit       most beans to return; at least 1
+     * @return beans with IDs sorting after afterBeanID; fewer than limit
+     *         only on the last page
+     */
+    public List<CoffeeBean> findPage(String afterBeanID, int limit) {
+        checkLimit(limit);
+        List<CoffeeBean> out = new ArrayList<>(Math.min(limit, beans.size()));
+        for (String id : indexes.idsAfter(afterBeanID)) {
+            if (out.size() == limit) break;
+            out.add(beans.get(id));
+        }
+        return out;
+    }
+
+    /**
+     * Builds a page with one pass over {@link #forEachBean}, keeping only
+     * the first limit IDs after the cursor in a bounded heap. For storage
+     * engines with no sorted ID index.
+     */
+    List<CoffeeBean> scanPage(String afterBeanID, int limit) {
+        checkLimit(limit);
+        Comparator<CoffeeBean> byID = Comparator.comparing(CoffeeBean::getBeanID);
+        PriorityQueue<CoffeeBean> heap = new PriorityQueue<>(Math.min(limit, 1024) + 1,
+                byID.reversed());
+        forEachBean(b -> {
+            if (afterBeanID != null && b.getBeanID().compareTo(afterBeanID) <= 0) return;
+            if (heap.size() < limit) {
+                heap.add(b);
+            } else if (byID.compare(b, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(b);
+            }
+        });
+        List<CoffeeBean> out = new ArrayList<>(heap);
+        out.sort(byID);
+        return out;
+    }
+
+    static void checkLimit(int limit) {
+        if (limit < 1) throw new IllegalArgumentException("limit must be at least 1");
+    }
+
+    /**
+     * Returns the first n beans in the given order without sorting the
+     * whole inventory: one pass keeps the best n in a bounded heap, so
+     * the cost is O(size × log n) and only n beans are retained.
+     *
+     * @param n     most beans to return
+     * @param order ranking; should be total (break ties) for a stable result
+     * @return at most n beans, sorted by order
+     */
+    public List<CoffeeBean> topN(int n, Comparator<? super CoffeeBean> order) {
+        if (n < 0) throw new IllegalArgumentException("n must not be negative");
+        if (n == 0) return new ArrayList<>();
+        // head of the heap is the worst bean kept so far
+        PriorityQueue<CoffeeBean> heap = new PriorityQueue<>(Math.min(n, 1024) + 1,
+                Collections.reverseOrder(order));
+        forEachBean(b -> {
+            if (heap.size() < n) {
+                heap.add(b);
+            } else if (order.compare(b, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(b);
+            }
+        });
+        List<CoffeeBean> out = new ArrayList<>(heap);
+        out.sort(order);
+        return out;
+    }
+
+    /**
+     * Same ranking as {@link #MOST_VALUABLE_FIRST}. Each lot's value is
+     * worked out once, as a fixed-point term, and kept next to it in the
+     * heap, so comparisons build no BigDecimals.
+     *
+     * @param n most beans to return
+     * @return the n lots with the highest value
+     */
+    public List<CoffeeBean> mostValuable(int n) {
+        if (n < 0) throw new IllegalArgumentException("n must not be negative");
+        if (n == 0) return new ArrayList<>();
+        // head of the heap is the least valuable lot kept so far
+        PriorityQueue<ValuedBean> heap = new PriorityQueue<>(Math.min(n, 1024) + 1,
+                Collections.reverseOrder());
+        ValuedBean[] spare = {new ValuedBean()};
+        forEachBean(b -> {
+            ValuedBean v = spare[0].of(b);
+            if (heap.size() < n) {
+                heap.add(v);
+                spare[0] = new ValuedBean();
+            } else if (v.compareTo(heap.peek()) < 0) {
+                spare[0] = heap.poll();
+                heap.add(v);
+            }
+        });
+        List<ValuedBean> kept = new ArrayList<>(heap);
+        Collections.sort(kept);
+        List<CoffeeBean> out = new ArrayList<>(kept.size());
+        for (ValuedBean v : kept) {
+            out.add(v.bean);
+        }
+        return out;
+    }
+
+    /** A bean with its value, ordered like {@link #MOST_VALUABLE_FIRST}; reused by mostValuable. */
+    private static final class ValuedBean implements Comparable<ValuedBean> {
+        final ExactSum.Term value = new ExactSum.Term();
+        CoffeeBean bean;
+
+        ValuedBean of(CoffeeBean b) {
+            bean = b;
+            value.ofValue(b);
+            return this;
+        }
+
+        @Override
+        public int compareTo(ValuedBean o) {
+            int c = ExactSum.compare(o.value, value);
+            return c != 0 ? c : bean.getBeanID().compareTo(o.bean.getBeanID());
         }
-        return sum;
+    }
+
+    /**
+     * Walks the roast-date index from the oldest date, so the cost is
+     * proportional to n, not to the inventory.
+     *
+     * @param n most beans to return
+     * @return the n lots with the earliest roast dates, oldest first
+     */
+    public List<CoffeeBean> oldestRoasts(int n) {
+        if (n < 0) throw new IllegalArgumentException("n must not be negative");
+        List<CoffeeBean> out = new ArrayList<>(Math.min(n, beans.size()));
+        for (Set<String> ids : indexes.dateRange(null, null).values()) {
+            if (out.size() >= n) break;
+            List<String> sorted = new ArrayList<>(ids);
+            Collections.sort(sorted);
+            for (int i = 0; i < sorted.size() && out.size() < n; i++) {
+                out.add(beans.get(sorted.get(i)));
+            }
+        }
+        return out;
+    }
+
+    /**
+     * @param n most beans to return
+     * @return the n lots with the highest caffeine content
+     */
+    public List<CoffeeBean> highestCaffeine(int n) {
+        return topN(n, HIGHEST_CAFFEINE_FIRST);
+    }
+
+    /**
+     * Registers a listener for every later change. Listeners are called
+     * in batches on a dispatcher thread; a bulk import arrives as one
+     * BULK_LOADED event.
+     *
+     * @param listener receives change batches
+     */
+    public void addChangeListener(BeanChangeListener listener) {
+        changes.addListener(listener);
+    }
+
+    public void removeChangeListener(BeanChangeListener listener) {
+        changes.removeListener(listener);
+    }
+
+    /** Used by tests to wait for delivery. */
+    BeanChangeDispatcher changes() {
+        return changes;
+    }
+
+    // Storage engines call these after each change, while still holding
+    // whatever lock orders changes to the same bean.
+    void fireAdded(CoffeeBean bean) {
+        if (changes.isActive()) changes.publish(BeanChangeEvent.added(bean));
+    }
+
+    void fireUpdated(CoffeeBean previous, CoffeeBean bean) {
+        if (changes.isActive()) changes.publish(BeanChangeEvent.updated(previous, bean));
+    }
+
+    void fireRemoved(CoffeeBean removed) {
+        if (changes.isActive()) changes.publish(BeanChangeEvent.removed(removed.getBeanID(), removed));
+    }
+
+    /** Feeds every bean to action, in insertion order. Storage engines override it. */
+    void forEachBean(Consumer<CoffeeBean> action) {
+        beans.values().forEach(action);
     }
 }
@@ -0,0 +1,17 @@
+package com.example.coffeedms;
+
+/**
+ * Destination for beans streamed out of a batch import, e.g.
+ * {@code repo::add} for a BeanRepository.
+ */
+@FunctionalInterface
+public interface BeanSink {
+    /**
+     * Stores one parsed bean.
+     *
+     * @param bean the parsed bean
+     * @return true if stored; false if a bean with the same ID already exists
+     * @throws Exception if the bean could not be stored; stops the import
+     */
+    boolean accept(CoffeeBean bean) throws Exception;
+}
@@ -0,0 +1,403 @@
+package com.example.coffeedms;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Versioned binary format for a whole bean collection, written and read
+ * without any text parsing.
+ * <p>
+ * Layout (version 1, big-endian, "varint" = unsigned LEB128):
+ * <pre>
+ * int     magic "CBSS"
+ * int     version
+ * int     bean count
+ * varint  dictionary size, then each entry as a string
+ * per bean:
+ *   string  beanID
+ *   varint  origin (dictionary index)
+ *   varint  farm (dictionary index)
+ *   byte    roast level ordinal
+ *   varint  roast date as zigzag epoch day
+ *   double  quantity kg
+ *   byte    cost encoding: 0 = zigzag varint scale + long unscaled,
+ *                          1 = zigzag varint scale + BigInteger bytes
+ *   string  flavor notes
+ *   double  caffeine mg/g
+ * </pre>
+ * Strings are a varint byte length followed by UTF-8. Origins and farms
+ * repeat across lots, so they are stored once; beans read back share
+ * the same String instances.
+ */
+final class BeanSnapshot {
+    static final int MAGIC = 0x43425353; // "CBSS"
+    static final int VERSION = 1;
+
+    private static final int BUFFER_BYTES = 1 << 16;
+    private static final RoastLevel[] LEVELS = RoastLevel.values();
+    private static final byte COST_LONG = 0;
+    private static final byte COST_BIG = 1;
+
+    private BeanSnapshot() {
+    }
+
+    /**
+     * Writes beans to a file, replacing it. The snapshot is written to a
+     * temporary file beside it, forced, and moved over the target in one
+     * atomic rename, so a crash or error part way through leaves the
+     * previous snapshot intact.
+     *
+     * @param file  target file
+     * @param beans beans to write, in the order they should be read back
+     * @throws IOException if the file cannot be written
+     */
+    static void write(Path file, Collection<CoffeeBean> beans) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                write(ch, beans);
+                ch.force(true);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException ex) {
+            Files.deleteIfExists(tmp);
+            throw ex;
+        }
+        DirectorySync.force(file.toAbsolutePath().getParent());
+    }
+
+    /**
+     * Writes beans to a channel; the channel is not closed or forced.
+     *
+     * @param ch    target channel
+     * @param beans beans to write, in the order they should be read back
+     * @throws IOException if the channel cannot be written
+     */
+    static void write(WritableByteChannel ch, Collection<CoffeeBean> beans) throws IOException {
+        Map<String, Integer> ids = new HashMap<>();
+        List<String> dictionary = new ArrayList<>();
+        for (CoffeeBean b : beans) {
+            intern(ids, dictionary, b.getOriginCountry());
+            intern(ids, dictionary, b.getFarmName());
+        }
+
+        Writer out = new Writer(ch);
+        out.putInt(MAGIC);
+        out.putInt(VERSION);
+        out.putInt(beans.size());
+        out.putVarint(dictionary.size());
+        for (String s : dictionary) {
+            out.putString(s);
+        }
+        for (CoffeeBean b : beans) {
+            out.putString(b.getBeanID());
+            out.putVarint(ids.get(b.getOriginCountry()));
+            out.putVarint(ids.get(b.getFarmName()));
+            out.ensure(1);
+            out.buf.put((byte) b.getRoastLevel().ordinal());
+            out.putVarint(zigzag(b.getRoastDate().toEpochDay()));
+            out.putDouble(b.getQuantityKg());
+            putDecimal(out, b.getCostPerKg());
+            out.putString(b.getFlavorNotes());
+            out.putDouble(b.getCaffeineContentMgPerGram());
+        }
+        out.flush();
+    }
+
+    /**
+     * Reads every bean in a snapshot file into a sink, in the order written.
+     *
+     * @param file snapshot file
+     * @param sink receives each bean; its return value is ignored
+     * @return number of beans read
+     * @throws IOException if the file cannot be read, is not a snapshot,
+     *                     or the sink fails
+     */
+    static int read(Path file, BeanSink sink) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            return read(ch, sink);
+        }
+    }
+
+    /**
+     * Reads every bean in a snapshot from a channel into a sink.
+     *
+     * @param ch   source channel, positioned at the start of the snapshot
+     * @param sink receives each bean; its return value is ignored
+     * @return number of beans read
+     * @throws IOException if the channel cannot be read, does not hold a
+     *                     snapshot, or the sink fails
+     */
+    static int read(ReadableByteChannel ch, BeanSink sink) throws IOException {
+        Reader in = new Reader(ch);
+        if (in.getInt() != MAGIC) {
+            throw new IOException("Not a bean snapshot");
+        }
+        int version = in.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported bean snapshot version " + version);
+        }
+        int count = in.getInt();
+        String[] dictionary = new String[checkedLength(in.getVarint())];
+        for (int i = 0; i < dictionary.length; i++) {
+            dictionary[i] = StringPool.SHARED.canonical(in.getString());
+        }
+
+        for (int i = 0; i < count; i++) {
+            String id = in.getString();
+            String origin = dictionary[checkedIndex(in.getVarint(), dictionary.length)];
+            String farm = dictionary[checkedIndex(in.getVarint(), dictionary.length)];
+            in.ensure(1);
+            int level = in.buf.get();
+            if (level < 0 || level >= LEVELS.length) {
+                throw new IOException("Corrupt bean snapshot: roast level " + level);
+            }
+            RoastLevel roast = LEVELS[level];
+            LocalDate date = checkedDate(unzigzag(in.getVarlong()));
+            double qty = in.getDouble();
+            BigDecimal cost = getDecimal(in);
+            String notes = in.getString();
+            double caffeine = in.getDouble();
+            CoffeeBean b = new CoffeeBean(id, origin, farm, roast, date, qty, cost, notes, caffeine);
+            try {
+                sink.accept(b);
+            } catch (IOException | RuntimeException ex) {
+                throw ex;
+            } catch (Exception ex) {
+                throw new IOException("Snapshot load stopped at bean " + (i + 1) + ": "
+                        + ex.getMessage(), ex);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return true if file starts with the snapshot magic number
+     */
+    static boolean isSnapshot(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer head = ByteBuffer.allocate(4);
+            while (head.hasRemaining() && ch.read(head) >= 0) {
+                // keep reading
+            }
+            return !head.hasRemaining() && head.getInt(0) == MAGIC;
+        }
+    }
+
+    private static void intern(Map<String, Integer> ids, List<String> dictionary, String s) {
+        if (!ids.containsKey(s)) {
+            ids.put(s, dictionary.size());
+            dictionary.add(s);
+        }
+    }
+
+    private static void putDecimal(Writer out, BigDecimal d) throws IOException {
+        BigInteger unscaled = d.unscaledValue();
+        boolean small = unscaled.bitLength() < 64;
+        out.ensure(1);
+        out.buf.put(small ? COST_LONG : COST_BIG);
+        out.putVarint(zigzag(d.scale()));
+        if (small) {
+            out.putVarint(zigzag(unscaled.longValue()));
+        } else {
+            byte[] bytes = unscaled.toByteArray();
+            out.putVarint(bytes.length);
+            out.putBytes(bytes, 0, bytes.length);
+        }
+    }
+
+    private static BigDecimal getDecimal(Reader in) throws IOException {
+        in.ensure(1);
+        byte kind = in.buf.get();
+        int scale = (int) unzigzag(in.getVarlong());
+        if (kind == COST_LONG) {
+            return BigDecimal.valueOf(unzigzag(in.getVarlong()), scale);
+        }
+        if (kind != COST_BIG) {
+            throw new IOException("Corrupt bean snapshot: unknown cost encoding " + kind);
+        }
+        byte[] bytes = new byte[checkedLength(in.getVarint())];
+        in.getBytes(bytes, 0, bytes.length);
+        return new BigDecimal(new BigInteger(bytes), scale);
+    }
+
+    private static long zigzag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    private static long unzigzag(long v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    private static int checkedLength(int len) throws IOException {
+        if (len < 0) throw new IOException("Corrupt bean snapshot: negative length");
+        return len;
+    }
+
+    private static int checkedIndex(int index, int size) throws IOException {
+        if (index < 0 || index >= size) {
+            throw new IOException("Corrupt bean snapshot: dictionary index " + index);
+        }
+        return index;
+    }
+
+    private static LocalDate checkedDate(long epochDay) throws IOException {
+        try {
+            return LocalDate.ofEpochDay(epochDay);
+        } catch (DateTimeException ex) {
+            throw new IOException("Corrupt bean snapshot: roast date " + epochDay, ex);
+        }
+    }
+
+    /** Buffered big-endian writer over a channel. */
+    private static final class Writer {
+        final ByteBuffer buf = ByteBuffer.allocate(BUFFER_BYTES);
+        private final WritableByteChannel ch;
+
+        Writer(WritableByteChannel ch) {
+            this.ch = ch;
+        }
+
+        void ensure(int n) throws IOException {
+            if (buf.remaining() < n) flush();
+        }
+
+        void flush() throws IOException {
+            buf.flip();
+            while (buf.hasRemaining()) {
+                ch.write(buf);
+            }
+            buf.clear();
+        }
+
+        void putInt(int v) throws IOException {
+            ensure(4);
+            buf.putInt(v);
+        }
+
+        void putDouble(double v) throws IOException {
+            ensure(8);
+            buf.putDouble(v);
+        }
+
+        void putVarint(long v) throws IOException {
+            ensure(10);
+            while ((v & ~0x7FL) != 0) {
+                buf.put((byte) ((v & 0x7F) | 0x80));
+                v >>>= 7;
+            }
+            buf.put((byte) v);
+        }
+
+        void putString(String s) throws IOException {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            putVarint(bytes.length);
+            putBytes(bytes, 0, bytes.length);
+        }
+
+        void putBytes(byte[] bytes, int off, int len) throws IOException {
+            while (len > 0) {
+                ensure(1);
+                int n = Math.min(len, buf.remaining());
+                buf.put(bytes, off, n);
+                off += n;
+                len -= n;
+            }
+        }
+    }
+
+    /** Buffered big-endian reader over a channel. */
+    private static final class Reader {
+        final ByteBuffer buf = ByteBuffer.allocate(BUFFER_BYTES);
+        private final ReadableByteChannel ch;
+
+        Reader(ReadableByteChannel ch) {
+            this.ch = ch;
+            buf.flip();
+        }
+
+        /** Makes at least n (at most BUFFER_BYTES) bytes available. */
+        void ensure(int n) throws IOException {
+            if (buf.remaining() >= n) return;
+            buf.compact();
+            while (buf.position() < n) {
+                if (ch.read(buf) < 0) {
+                    buf.flip();
+                    throw new EOFException("Truncated bean snapshot");
+                }
+            }
+            buf.flip();
+        }
+
+        int getInt() throws IOException {
+            ensure(4);
+            return buf.getInt();
+        }
+
+        double getDouble() throws IOException {
+            ensure(8);
+            return buf.getDouble();
+        }
+
+        long getVarlong() throws IOException {
+            long v = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                ensure(1);
+                byte b = buf.get();
+                v |= (long) (b & 0x7F) << shift;
+                if (b >= 0) return v;
+            }
+            throw new IOException("Corrupt bean snapshot: varint too long");
+        }
+
+        int getVarint() throws IOException {
+            long v = getVarlong();
+            if (v > Integer.MAX_VALUE) {
+                throw new IOException("Corrupt bean snapshot: value out of range");
+            }
+            return (int) v;
+        }
+
+        String getString() throws IOException {
+            int len = checkedLength(getVarint());
+            if (len <= BUFFER_BYTES) {
+                ensure(len);
+                String s = new String(buf.array(), buf.position(), len, StandardCharsets.UTF_8);
+                buf.position(buf.position() + len);
+                return s;
+            }
+            byte[] bytes = new byte[len];
+            getBytes(bytes, 0, len);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        void getBytes(byte[] bytes, int off, int len) throws IOException {
+            while (len > 0) {
+                ensure(1);
+                int n = Math.min(len, buf.remaining());
+                buf.get(bytes, off, n);
+                off += n;
+                len -= n;
+            }
+        }
+    }
+}
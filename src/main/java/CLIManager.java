@@ -2,6 +2,7 @@ package com.example.coffeedms;
 
 import java.io.IOException;
 import java.math.BigDecimal;
+import java.nio.file.Paths;
 import java.time.LocalDate;
 import java.util.List;
 import java.util.Scanner;
@@ -37,10 +38,15 @@ public class CLIManager {
             System.out.println("3) Update bean lot");
             System.out.println("4) View all bean lots");
             System.out.println("5) Calculate inventory value");
+            System.out.println("s) Show memory statistics");
             System.out.println("6) Exit");
             System.out.print("Select an option: ");
 
             String choice = scanner.nextLine().trim();
+            if (choice.equalsIgnoreCase("s")) {
+                System.out.println(StringPool.SHARED.describe());
+                continue;
+            }
             switch (choice) {
                 case "1": handleAdd();    break;
                 case "2": handleRemove(); break;
@@ -68,9 +74,15 @@ public class CLIManager {
         if (opt.equals("1")) {
             System.out.print("Enter file path: ");
             String path = scanner.nextLine().trim();
-            try {
-                List<CoffeeBean> loaded = repo.loadFromFile(path);
-                System.out.printf("%d bean(s) imported.%n", loaded.size());
+            System.out.print("Reject file path (blank for none): ");
+            String rejectPath = scanner.nextLine().trim();
+            try (RejectReport rejects = new RejectReport(RejectReport.DEFAULT_SAMPLE_LIMIT,
+                    rejectPath.isEmpty() ? null : Paths.get(rejectPath))) {
+                ImportResult result = repo.importFile(path, rejects);
+                System.out.printf("%d bean(s) imported.%n", result.getAccepted());
+                if (result.getRejected() > 0) {
+                    System.out.println(rejects.describe(5));
+                }
             } catch (IOException ex) {
                 System.out.println("Error loading file: " + ex.getMessage());
             }
@@ -169,7 +181,8 @@ public class CLIManager {
         String notes = promptNonEmpty("Flavor notes");
         double caffeine = promptDouble("Caffeine mg per gram", 0, Double.MAX_VALUE);
 
-        return new CoffeeBean(beanID, origin, farm, roast, date, qty, cost, notes, caffeine);
+        return new CoffeeBean(beanID, StringPool.SHARED.canonical(origin), StringPool.SHARED.canonical(farm),
+                roast, date, qty, cost, notes, caffeine);
     }
 
     /**
@@ -0,0 +1,329 @@
+package com.example.coffeedms;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * DBBeanRepository that keeps recently looked-up lots in memory, so
+ * repeated {@link #findByID(String)} calls for the same hot lots skip the
+ * round trip to MySQL. IDs that were not found are remembered too.
+ * <p>
+ * The cache holds at most maxEntries lots, dropping the least recently
+ * used one when full, and an entry is reloaded once it is older than the
+ * TTL. Writes made through this repository invalidate the lots they
+ * touch; writes made by other clients show up once the TTL has passed.
+ * Cached beans are shared between callers, which is safe because
+ * CoffeeBean is immutable.
+ */
+public class CachingBeanRepository extends DBBeanRepository {
+    public static final int DEFAULT_MAX_ENTRIES = 10_000;
+    public static final long DEFAULT_TTL_MILLIS = 30_000;
+
+    /** A cached lookup; bean is null if the ID was not found. */
+    private static final class Entry {
+        final CoffeeBean bean;
+        final long loadedAt;
+
+        Entry(CoffeeBean bean, long loadedAt) {
+            this.bean = bean;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final LongSupplier clock;
+    /** Access-ordered, so iteration starts at the least recently used entry. */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * IDs being read from the database → token of the latest read. A
+     * write removes its ID, so a lookup that raced with a write to the
+     * same lot does not cache what it read before the write; writes to
+     * other lots leave it alone.
+     */
+    private final Map<String, Object> loading = new HashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder negativeHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    /**
+     * Connects like {@link DBBeanRepository#DBBeanRepository(String, String, String)},
+     * with a cache of {@value #DEFAULT_MAX_ENTRIES} lots kept for
+     * {@value #DEFAULT_TTL_MILLIS} ms.
+     *
+     * @param url  JDBC URL
+     * @param user MySQL username
+     * @param pass MySQL password
+     * @throws SQLException if driver missing or connection fails
+     */
+    public CachingBeanRepository(String url, String user, String pass) throws SQLException {
+        this(url, user, pass, DEFAULT_MAX_ENTRIES, DEFAULT_TTL_MILLIS);
+    }
+
+    /**
+     * Connects like {@link DBBeanRepository#DBBeanRepository(String, String, String)}.
+     *
+     * @param url        JDBC URL
+     * @param user       MySQL username
+     * @param pass       MySQL password
+     * @param maxEntries most lots kept; 0 disables the cache
+     * @param ttlMillis  how long a lookup is trusted
+     * @throws SQLException if driver missing or connection fails
+     */
+    public CachingBeanRepository(String url, String user, String pass, int maxEntries, long ttlMillis)
+            throws SQLException {
+        super(url, user, pass);
+        this.maxEntries = checkMaxEntries(maxEntries);
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(checkTtl(ttlMillis));
+        this.clock = System::nanoTime;
+    }
+
+    /**
+     * @param pool       pool to run queries on; closed with this repository
+     * @param maxEntries most lots kept; 0 disables the cache
+     * @param ttlMillis  how long a lookup is trusted
+     */
+    public CachingBeanRepository(ConnectionPool pool, int maxEntries, long ttlMillis) {
+        this(pool, maxEntries, ttlMillis, System::nanoTime);
+    }
+
+    /** As above, reading time in nanoseconds from clock. */
+    CachingBeanRepository(ConnectionPool pool, int maxEntries, long ttlMillis, LongSupplier clock) {
+        super(pool);
+        this.maxEntries = checkMaxEntries(maxEntries);
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(checkTtl(ttlMillis));
+        this.clock = clock;
+    }
+
+    private static int checkMaxEntries(int maxEntries) {
+        if (maxEntries < 0) throw new IllegalArgumentException("maxEntries must not be negative");
+        return maxEntries;
+    }
+
+    private static long checkTtl(long ttlMillis) {
+        if (ttlMillis < 0) throw new IllegalArgumentException("ttlMillis must not be negative");
+        return ttlMillis;
+    }
+
+    /**
+     * Returns the cached lookup for id if it is within the TTL, otherwise
+     * reads the lot from the database and caches the result, including a
+     * miss.
+     */
+    @Override
+    public CoffeeBean findByID(String id) throws SQLException {
+        Object token = maxEntries > 0 ? new Object() : null;
+        synchronized (entries) {
+            Entry e = entries.get(id);
+            if (e != null) {
+                if (clock.getAsLong() - e.loadedAt < ttlNanos) {
+                    (e.bean != null ? hits : negativeHits).increment();
+                    return e.bean;
+                }
+                entries.remove(id);
+                expirations.increment();
+            }
+            if (token != null) loading.put(id, token);
+        }
+        misses.increment();
+        CoffeeBean bean;
+        try {
+            bean = super.findByID(id);
+        } catch (SQLException | RuntimeException ex) {
+            if (token != null) {
+                synchronized (entries) {
+                    loading.remove(id, token);
+                }
+            }
+            throw ex;
+        }
+        if (token != null) {
+            synchronized (entries) {
+                // not if a write to id, or a newer lookup of it, came in meanwhile
+                if (loading.remove(id, token)) {
+                    entries.put(id, new Entry(bean, clock.getAsLong()));
+                    trim();
+                }
+            }
+        }
+        return bean;
+    }
+
+    @Override
+    public boolean add(CoffeeBean b) throws SQLException {
+        invalidate(b.getBeanID());
+        try {
+            return super.add(b);
+        } finally {
+            invalidate(b.getBeanID());
+        }
+    }
+
+    @Override
+    public boolean update(CoffeeBean b) throws SQLException {
+        invalidate(b.getBeanID());
+        try {
+            return super.update(b);
+        } finally {
+            invalidate(b.getBeanID());
+        }
+    }
+
+    /** Also covers receive and consume, which call this. */
+    @Override
+    public boolean adjustQuantity(String id, double deltaKg) throws SQLException {
+        invalidate(id);
+        try {
+            return super.adjustQuantity(id, deltaKg);
+        } finally {
+            invalidate(id);
+        }
+    }
+
+    @Override
+    public boolean removeByID(String id) throws SQLException {
+        invalidate(id);
+        try {
+            return super.removeByID(id);
+        } finally {
+            invalidate(id);
+        }
+    }
+
+    @Override
+    public boolean[] addAll(Collection<CoffeeBean> beans) throws SQLException {
+        try {
+            return super.addAll(beans);
+        } finally {
+            beans.forEach(b -> invalidate(b.getBeanID()));
+        }
+    }
+
+    @Override
+    public boolean[] updateAll(Collection<CoffeeBean> beans) throws SQLException {
+        try {
+            return super.updateAll(beans);
+        } finally {
+            beans.forEach(b -> invalidate(b.getBeanID()));
+        }
+    }
+
+    @Override
+    public boolean[] removeAll(Collection<String> ids) throws SQLException {
+        try {
+            return super.removeAll(ids);
+        } finally {
+            ids.forEach(this::invalidate);
+        }
+    }
+
+    /**
+     * An import only inserts new lots, so it drops the cached misses,
+     * and any lookup in flight, and keeps the cached lots.
+     */
+    @Override
+    public ImportResult importFile(String path, RejectReport rejects, int batchSize, int commitRows)
+            throws IOException {
+        try {
+            return super.importFile(path, rejects, batchSize, commitRows);
+        } finally {
+            synchronized (entries) {
+                loading.clear();
+                entries.values().removeIf(e -> e.bean == null);
+            }
+        }
+    }
+
+    /**
+     * Drops the cached lookup for id, if any.
+     *
+     * @param id lot to forget
+     */
+    public void invalidate(String id) {
+        synchronized (entries) {
+            loading.remove(id);
+            entries.remove(id);
+        }
+    }
+
+    /**
+     * Drops every cached lookup, e.g. after the table was changed by
+     * another client.
+     */
+    public void invalidateAll() {
+        synchronized (entries) {
+            loading.clear();
+            entries.clear();
+        }
+    }
+
+    /** Evicts least recently used entries until the cache fits. */
+    private void trim() {
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (entries.size() > maxEntries) {
+            eldest.next();
+            eldest.remove();
+            evictions.increment();
+        }
+    }
+
+    /** @return lookups currently cached, found or not */
+    public int getCacheSize() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /** @return lookups answered with a cached lot */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /** @return lookups answered with a cached "not found" */
+    public long getNegativeHits() {
+        return negativeHits.sum();
+    }
+
+    /** @return lookups that went to the database */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /** @return entries dropped to make room */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /** @return entries found older than the TTL */
+    public long getExpirations() {
+        return expirations.sum();
+    }
+
+    /** @return fraction of lookups answered from the cache, 0 if none yet */
+    public double getHitRatio() {
+        long cached = getHits() + getNegativeHits();
+        long total = cached + getMisses();
+        return total == 0 ? 0 : (double) cached / total;
+    }
+
+    /**
+     * @return one line with the cache statistics
+     */
+    public String describe() {
+        return String.format("Bean cache: %d of %d cached; %d hits, %d negative hits, %d misses"
+                        + " (%.1f%% hit ratio), %d evicted, %d expired",
+                getCacheSize(), maxEntries, getHits(), getNegativeHits(), getMisses(),
+                getHitRatio() * 100, getEvictions(), getExpirations());
+    }
+}
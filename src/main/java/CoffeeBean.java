@@ -19,6 +19,12 @@ public class CoffeeBean {
     private final String flavorNotes;
     private final double caffeineContentMgPerGram;
 
+    // costPerKg as unscaled × 10^-scale, unpacked once for the valuation
+    // hot path; costFixed is false when the digits do not fit a long.
+    private final long costUnits;
+    private final int costScale;
+    private final boolean costFixed;
+
     /**
      * Constructs a CoffeeBean with all fields initialized.
      *
@@ -50,6 +56,26 @@ public class CoffeeBean {
         this.costPerKg = costPerKg;
         this.flavorNotes = flavorNotes;
         this.caffeineContentMgPerGram = caffeineContentMgPerGram;
+
+        this.costFixed = costPerKg != null && costPerKg.precision() < 19;
+        this.costUnits = costFixed ? costPerKg.unscaledValue().longValue() : 0;
+        this.costScale = costPerKg == null ? 0 : costPerKg.scale();
+    }
+
+    /** Copies other with a new quantity, keeping its unpacked cost. */
+    private CoffeeBean(CoffeeBean other, double quantityKg) {
+        this.beanID = other.beanID;
+        this.originCountry = other.originCountry;
+        this.farmName = other.farmName;
+        this.roastLevel = other.roastLevel;
+        this.roastDate = other.roastDate;
+        this.quantityKg = quantityKg;
+        this.costPerKg = other.costPerKg;
+        this.flavorNotes = other.flavorNotes;
+        this.caffeineContentMgPerGram = other.caffeineContentMgPerGram;
+        this.costUnits = other.costUnits;
+        this.costScale = other.costScale;
+        this.costFixed = other.costFixed;
     }
 
     // Getters
@@ -90,16 +116,43 @@ public class CoffeeBean {
         return caffeineContentMgPerGram;
     }
 
+    /**
+     * withQuantityKg
+     *
+     * Returns a copy of this lot with a different quantity; every other
+     * field is shared with this one.
+     *
+     * @param quantityKg new weight of the lot in kilograms
+     * @return the copy
+     */
+    public CoffeeBean withQuantityKg(double quantityKg) {
+        return new CoffeeBean(this, quantityKg);
+    }
+
     /**
      * calculateValue
      *
      * Computes the total monetary value of this bean lot
      * by multiplying cost per kilogram by the quantity.
+     * Worked out in fixed point when both fit a long, with the same
+     * digits and scale as multiplying by BigDecimal.valueOf(quantityKg).
      *
      * @return BigDecimal representing quantityKg × costPerKg
      */
     public BigDecimal calculateValue() {
-        return costPerKg.multiply(BigDecimal.valueOf(quantityKg));
+        return ExactSum.value(this);
+    }
+
+    long costUnits() {
+        return costUnits;
+    }
+
+    int costScale() {
+        return costScale;
+    }
+
+    boolean isCostFixed() {
+        return costFixed;
     }
 
     /**
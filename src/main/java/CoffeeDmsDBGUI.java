@@ -2,13 +2,12 @@ package com.example.coffeedms;
 
 import javax.swing.*;
 import javax.swing.border.TitledBorder;
-import javax.swing.table.DefaultTableModel;
 import javax.swing.table.JTableHeader;
 import java.awt.*;
 import java.math.BigDecimal;
+import java.sql.SQLException;
 import java.time.LocalDate;
 import java.time.format.DateTimeParseException;
-import java.util.List;
 
 /**
  * Swing GUI that connects to MySQL for the Coffee Bean DMS.
@@ -23,13 +22,17 @@ public class CoffeeDmsDBGUI extends JFrame {
     private static final Color DARK_BROWN   = new Color(0x43,0x2A,0x18);
     private static final Color COCOA        = new Color(0x2B,0x1A,0x0E);
 
-    private DBBeanRepository repo;
+    private CachingBeanRepository repo;
 
-    private final DefaultTableModel tableModel = new DefaultTableModel(
-            new String[]{ "Bean ID","Origin","Farm","Roast Level",
-                    "Roast Date","Qty (kg)","Cost/kg","Notes","Caffeine mg/g" },
-            0
-    );
+    // Table paging: PAGE_SIZE lots at a time, keyed on the last beanID shown
+    private static final int PAGE_SIZE = 500;
+    private final BeanPageModel tableModel = new BeanPageModel(PAGE_SIZE, (after, limit) -> {
+        try {
+            return repo.findPage(after, limit);
+        } catch (SQLException ex) {
+            throw new UncheckedSQLException(ex.getMessage(), ex);
+        }
+    });
     private final JTable table = new JTable(tableModel) {
         @Override public boolean isCellEditable(int r, int c) { return false; }
     };
@@ -63,6 +66,10 @@ public class CoffeeDmsDBGUI extends JFrame {
     private final JTextField tfRemoveID   = new JTextField(8);
     private final JLabel     lblTotalValue= new JLabel("Total: $0.00");
 
+    private final JButton    btnPrevPage  = new JButton("< Prev");
+    private final JButton    btnNextPage  = new JButton("Next >");
+    private final JLabel     lblPage      = new JLabel("Page 1");
+
     public CoffeeDmsDBGUI() {
         super("Coffee Bean DMS (MySQL)");
         setDefaultCloseOperation(EXIT_ON_CLOSE);
@@ -88,23 +95,55 @@ public class CoffeeDmsDBGUI extends JFrame {
         JTextField tfUrl  = new JTextField("jdbc:mysql://localhost:3306/coffee_dms", 30);
         JTextField tfUser = new JTextField(10);
         JPasswordField pf = new JPasswordField(10);
+        JTextField tfCacheSize = new JTextField(
+                String.valueOf(CachingBeanRepository.DEFAULT_MAX_ENTRIES), 6);
+        JTextField tfCacheTtl  = new JTextField(
+                String.valueOf(CachingBeanRepository.DEFAULT_TTL_MILLIS / 1000), 4);
         JButton btn      = new JButton("Connect");
+        JButton btnImport = new JButton("Import File");
+        JButton btnStats  = new JButton("Stats");
         styleButton(btn);
+        styleButton(btnImport);
+        styleButton(btnStats);
 
         p.add(label("URL:"));      p.add(tfUrl);
         p.add(label("User:"));     p.add(tfUser);
         p.add(label("Password:")); p.add(pf);
+        p.add(label("Cache:"));    p.add(tfCacheSize);
+        p.add(label("TTL (s):"));  p.add(tfCacheTtl);
         p.add(btn);
+        p.add(btnImport);
+        p.add(btnStats);
         add(p, BorderLayout.NORTH);
 
+        btnImport.addActionListener(e -> handleImport());
+        btnStats.addActionListener(e -> handleStats());
+
         btn.addActionListener(e -> {
+            int cacheSize;
+            long cacheTtl;
+            try {
+                cacheSize = Integer.parseInt(tfCacheSize.getText().trim());
+                cacheTtl = Long.parseLong(tfCacheTtl.getText().trim()) * 1000;
+            } catch (NumberFormatException ex) {
+                showError("Cache size and TTL must be whole numbers.");
+                return;
+            }
             try {
-                repo = new DBBeanRepository(
+                // connect first, so a failed attempt keeps the current connection
+                CachingBeanRepository connected = new CachingBeanRepository(
                         tfUrl.getText().trim(),
                         tfUser.getText().trim(),
-                        new String(pf.getPassword())
+                        new String(pf.getPassword()),
+                        cacheSize,
+                        cacheTtl
                 );
-                refreshTable();
+                connected.addChangeListener(batch -> SwingUtilities.invokeLater(
+                        () -> updateTable(() -> tableModel.applyChanges(batch))));
+                CachingBeanRepository previous = repo;
+                repo = connected;
+                if (previous != null) previous.close();
+                updateTable(tableModel::refresh);
                 JOptionPane.showMessageDialog(this, "Connected successfully!",
                         "Success", JOptionPane.INFORMATION_MESSAGE);
             } catch (Exception ex) {
@@ -140,7 +179,24 @@ public class CoffeeDmsDBGUI extends JFrame {
         scroll.setBackground(CREAM);
         scroll.setBorder(new TitledBorder(null, "Bean Lots Inventory",
                 TitledBorder.LEFT, TitledBorder.TOP, null, DARK_BROWN));
-        add(scroll, BorderLayout.CENTER);
+
+        JPanel pager = new JPanel(new FlowLayout(FlowLayout.RIGHT, 8, 2));
+        pager.setBackground(CREAM);
+        lblPage.setForeground(DARK_BROWN);
+        styleButton(btnPrevPage);
+        styleButton(btnNextPage);
+        btnPrevPage.addActionListener(e -> updateTable(tableModel::previousPage));
+        btnNextPage.addActionListener(e -> updateTable(tableModel::nextPage));
+        tableModel.addTableModelListener(e -> updatePager());
+        pager.add(btnPrevPage);
+        pager.add(lblPage);
+        pager.add(btnNextPage);
+        updatePager();
+
+        JPanel center = new JPanel(new BorderLayout());
+        center.add(scroll, BorderLayout.CENTER);
+        center.add(pager, BorderLayout.SOUTH);
+        add(center, BorderLayout.CENTER);
     }
 
     /** SOUTH: Operations tabs */
@@ -269,12 +325,37 @@ public class CoffeeDmsDBGUI extends JFrame {
     }
 
     // Handler methods (unchanged functionality)
+    private void handleStats() {
+        if (repo == null) { showError("Not connected."); return; }
+        JOptionPane.showMessageDialog(this,
+                repo.describe() + "\n" + repo.getPool().describe()
+                        + "\n" + StringPool.SHARED.describe(),
+                "Statistics", JOptionPane.INFORMATION_MESSAGE);
+    }
+
+    private void handleImport() {
+        if (repo == null) { showError("Connect to the database first."); return; }
+        JFileChooser chooser = new JFileChooser();
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) return;
+        try {
+            ImportResult result = repo.importFile(chooser.getSelectedFile().getAbsolutePath());
+            String msg = result.getAccepted() + " bean(s) imported.";
+            if (result.getRejected() > 0) {
+                msg += "\n" + result.getRejects().describe(5);
+            }
+            JOptionPane.showMessageDialog(this, msg,
+                    "Import Complete", JOptionPane.INFORMATION_MESSAGE);
+        } catch (Exception ex) {
+            showError("Import failed: " + ex.getMessage());
+        }
+    }
+
     private void handleAdd() {
         try {
             CoffeeBean b = new CoffeeBean(
                     addBeanID.getText().trim(),
-                    addOrigin.getText().trim(),
-                    addFarm.getText().trim(),
+                    StringPool.SHARED.canonical(addOrigin.getText().trim()),
+                    StringPool.SHARED.canonical(addFarm.getText().trim()),
                     (RoastLevel)addRoastLevel.getSelectedItem(),
                     LocalDate.parse(addRoastDate.getText().trim()),
                     Double.parseDouble(addQuantity.getText().trim()),
@@ -282,8 +363,7 @@ public class CoffeeDmsDBGUI extends JFrame {
                     addNotes.getText().trim(),
                     Double.parseDouble(addCaffeine.getText().trim())
             );
-            if (!repo.add(b)) { showError("Bean ID already exists!"); return; }
-            refreshTable();
+            if (!repo.add(b)) showError("Bean ID already exists!");
         } catch (DateTimeParseException ex) {
             showError("Invalid date format.");
         } catch (NumberFormatException ex) {
@@ -315,8 +395,8 @@ public class CoffeeDmsDBGUI extends JFrame {
         try {
             CoffeeBean b = new CoffeeBean(
                     updBeanID.getText().trim(),
-                    updOrigin.getText().trim(),
-                    updFarm.getText().trim(),
+                    StringPool.SHARED.canonical(updOrigin.getText().trim()),
+                    StringPool.SHARED.canonical(updFarm.getText().trim()),
                     (RoastLevel)updRoastLevel.getSelectedItem(),
                     LocalDate.parse(updRoastDate.getText().trim()),
                     Double.parseDouble(updQuantity.getText().trim()),
@@ -324,8 +404,7 @@ public class CoffeeDmsDBGUI extends JFrame {
                     updNotes.getText().trim(),
                     Double.parseDouble(updCaffeine.getText().trim())
             );
-            if (!repo.update(b)) { showError("Update failed: ID not found"); return; }
-            refreshTable();
+            if (!repo.update(b)) showError("Update failed: ID not found");
         } catch (Exception ex) {
             showError("Update failed: " + ex.getMessage());
         }
@@ -335,8 +414,6 @@ public class CoffeeDmsDBGUI extends JFrame {
         try {
             if (!repo.removeByID(tfRemoveID.getText().trim())) {
                 showError("Remove failed: ID not found");
-            } else {
-                refreshTable();
             }
         } catch (Exception ex) {
             showError("Remove failed: " + ex.getMessage());
@@ -352,28 +429,21 @@ public class CoffeeDmsDBGUI extends JFrame {
         }
     }
 
-    private void refreshTable() {
-        tableModel.setRowCount(0);
+    /** Runs a table change, reporting a database error instead of throwing it. */
+    private void updateTable(Runnable change) {
         try {
-            List<CoffeeBean> list = repo.findAll();
-            for (CoffeeBean b : list) {
-                tableModel.addRow(new Object[]{
-                        b.getBeanID(),
-                        b.getOriginCountry(),
-                        b.getFarmName(),
-                        b.getRoastLevel(),
-                        b.getRoastDate(),
-                        b.getQuantityKg(),
-                        b.getCostPerKg(),
-                        b.getFlavorNotes(),
-                        b.getCaffeineContentMgPerGram()
-                });
-            }
-        } catch (Exception ex) {
+            change.run();
+        } catch (UncheckedSQLException ex) {
             showError("Refresh failed: " + ex.getMessage());
         }
     }
 
+    private void updatePager() {
+        btnPrevPage.setEnabled(tableModel.hasPreviousPage());
+        btnNextPage.setEnabled(tableModel.hasNextPage());
+        lblPage.setText("Page " + tableModel.getPageNumber());
+    }
+
     private void styleButton(JButton b) {
         b.setBackground(MEDIUM_BROWN);
         b.setForeground(CREAM);
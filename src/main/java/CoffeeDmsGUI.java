@@ -2,7 +2,6 @@ package com.example.coffeedms;
 
 import javax.swing.*;
 import javax.swing.border.TitledBorder;
-import javax.swing.table.DefaultTableModel;
 import javax.swing.table.JTableHeader;
 import java.awt.*;
 import java.awt.event.ActionEvent;
@@ -11,7 +10,6 @@ import java.io.IOException;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.format.DateTimeParseException;
-import java.util.List;
 
 public class CoffeeDmsGUI extends JFrame {
     private static final Color CREAM        = new Color(0xEF,0xE1,0xD5);
@@ -22,11 +20,9 @@ public class CoffeeDmsGUI extends JFrame {
 
     private final BeanRepository repo = new BeanRepository();
 
-    private final DefaultTableModel tableModel = new DefaultTableModel(
-            new String[]{ "Bean ID","Origin","Farm","Roast Level",
-                    "Roast Date","Qty (kg)","Cost/kg","Notes","Caffeine mg/g" },
-            0
-    );
+    // Table paging: PAGE_SIZE lots at a time, keyed on the last beanID shown
+    private static final int PAGE_SIZE = 500;
+    private final BeanPageModel tableModel = new BeanPageModel(PAGE_SIZE, repo::findPage);
     private final JTable table = new JTable(tableModel) {
         @Override public boolean isCellEditable(int r, int c) { return false; }
     };
@@ -60,6 +56,10 @@ public class CoffeeDmsGUI extends JFrame {
     private final JTextField tfRemoveID   = new JTextField(8);
     private final JLabel     lblTotalValue= new JLabel("Total: $0.00");
 
+    private final JButton    btnPrevPage  = new JButton("< Prev");
+    private final JButton    btnNextPage  = new JButton("Next >");
+    private final JLabel     lblPage      = new JLabel("Page 1");
+
     public CoffeeDmsGUI() {
         super("Coffee Bean DMS");
         setDefaultCloseOperation(EXIT_ON_CLOSE);
@@ -71,15 +71,16 @@ public class CoffeeDmsGUI extends JFrame {
         initImportPanel();
         initTablePanel();
         initOperationsPanel();
+        repo.addChangeListener(batch -> SwingUtilities.invokeLater(() -> tableModel.applyChanges(batch)));
 
         setVisible(true);
     }
 
-    /** Top panel: batch‐import button */
+    /** Top panel: batch‐import and snapshot buttons */
     private void initImportPanel() {
         JPanel p = new JPanel(new FlowLayout(FlowLayout.LEFT));
         p.setBackground(TAN);
-        p.setBorder(new TitledBorder(null, "Import Beans from File",
+        p.setBorder(new TitledBorder(null, "Import Beans from File or Snapshot",
                 TitledBorder.LEFT, TitledBorder.TOP, null, DARK_BROWN));
         JButton btn = new JButton("Choose File & Import");
         styleButton(btn);
@@ -88,11 +89,19 @@ public class CoffeeDmsGUI extends JFrame {
             if (chooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
                 File f = chooser.getSelectedFile();
                 try {
-                    List<CoffeeBean> loaded = repo.loadFromFile(f.getAbsolutePath());
-                    refreshTable();
-                    String msg = loaded.isEmpty()
+                    if (BeanSnapshot.isSnapshot(f.toPath())) {
+                        int added = repo.loadSnapshot(f.toPath());
+                        JOptionPane.showMessageDialog(this, added + " bean(s) loaded from snapshot.",
+                                "Import Complete", JOptionPane.INFORMATION_MESSAGE);
+                        return;
+                    }
+                    ImportResult result = repo.importFile(f.getAbsolutePath());
+                    String msg = result.getAccepted() == 0
                             ? "No new beans imported (duplicates/invalid)."
-                            : loaded.size() + " bean(s) imported.";
+                            : result.getAccepted() + " bean(s) imported.";
+                    if (result.getRejected() > 0) {
+                        msg += "\n" + result.getRejects().describe(5);
+                    }
                     JOptionPane.showMessageDialog(this, msg,
                             "Import Complete", JOptionPane.INFORMATION_MESSAGE);
                 } catch (IOException ex) {
@@ -101,6 +110,28 @@ public class CoffeeDmsGUI extends JFrame {
             }
         });
         p.add(btn);
+
+        JButton btnSave = new JButton("Save Snapshot");
+        styleButton(btnSave);
+        btnSave.addActionListener((ActionEvent e) -> {
+            JFileChooser chooser = new JFileChooser();
+            if (chooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
+                try {
+                    repo.saveSnapshot(chooser.getSelectedFile().toPath());
+                    JOptionPane.showMessageDialog(this, "Snapshot saved.",
+                            "Save Complete", JOptionPane.INFORMATION_MESSAGE);
+                } catch (IOException ex) {
+                    showError("Save failed: " + ex.getMessage());
+                }
+            }
+        });
+        p.add(btnSave);
+
+        JButton btnStats = new JButton("Stats");
+        styleButton(btnStats);
+        btnStats.addActionListener((ActionEvent e) -> JOptionPane.showMessageDialog(this,
+                StringPool.SHARED.describe(), "Statistics", JOptionPane.INFORMATION_MESSAGE));
+        p.add(btnStats);
         add(p, BorderLayout.NORTH);
     }
 
@@ -130,7 +161,24 @@ public class CoffeeDmsGUI extends JFrame {
         scroll.setBorder(new TitledBorder(null, "Bean Lots Inventory",
                 TitledBorder.LEFT, TitledBorder.TOP, null, DARK_BROWN));
         scroll.getViewport().setBackground(CREAM);
-        add(scroll, BorderLayout.CENTER);
+
+        JPanel pager = new JPanel(new FlowLayout(FlowLayout.RIGHT, 8, 2));
+        pager.setBackground(CREAM);
+        lblPage.setForeground(DARK_BROWN);
+        styleButton(btnPrevPage);
+        styleButton(btnNextPage);
+        btnPrevPage.addActionListener(e -> tableModel.previousPage());
+        btnNextPage.addActionListener(e -> tableModel.nextPage());
+        tableModel.addTableModelListener(e -> updatePager());
+        pager.add(btnPrevPage);
+        pager.add(lblPage);
+        pager.add(btnNextPage);
+        updatePager();
+
+        JPanel center = new JPanel(new BorderLayout());
+        center.add(scroll, BorderLayout.CENTER);
+        center.add(pager, BorderLayout.SOUTH);
+        add(center, BorderLayout.CENTER);
     }
 
     /** Bottom: scrollable tabbed operations with full‐height borders */
@@ -289,8 +337,8 @@ public class CoffeeDmsGUI extends JFrame {
         try {
             CoffeeBean b = new CoffeeBean(
                     addBeanID.getText().trim(),
-                    addOrigin.getText().trim(),
-                    addFarm.getText().trim(),
+                    StringPool.SHARED.canonical(addOrigin.getText().trim()),
+                    StringPool.SHARED.canonical(addFarm.getText().trim()),
                     (RoastLevel)addRoastLevel.getSelectedItem(),
                     LocalDate.parse(addRoastDate.getText().trim()),
                     Double.parseDouble(addQuantity.getText().trim()),
@@ -302,7 +350,6 @@ public class CoffeeDmsGUI extends JFrame {
                 showError("Bean ID already exists!");
                 return;
             }
-            refreshTable();
             JOptionPane.showMessageDialog(this, "Bean added.", "Success", JOptionPane.INFORMATION_MESSAGE);
         } catch (DateTimeParseException ex) {
             showError("Invalid date format.");
@@ -317,8 +364,8 @@ public class CoffeeDmsGUI extends JFrame {
         try {
             CoffeeBean b = new CoffeeBean(
                     updBeanID.getText().trim(),
-                    updOrigin.getText().trim(),
-                    updFarm.getText().trim(),
+                    StringPool.SHARED.canonical(updOrigin.getText().trim()),
+                    StringPool.SHARED.canonical(updFarm.getText().trim()),
                     (RoastLevel)updRoastLevel.getSelectedItem(),
                     LocalDate.parse(updRoastDate.getText().trim()),
                     Double.parseDouble(updQuantity.getText().trim()),
@@ -330,7 +377,6 @@ public class CoffeeDmsGUI extends JFrame {
                 showError("Update failed (ID not found).");
                 return;
             }
-            refreshTable();
             JOptionPane.showMessageDialog(this, "Bean updated.", "Success", JOptionPane.INFORMATION_MESSAGE);
         } catch (DateTimeParseException ex) {
             showError("Invalid date format.");
@@ -345,7 +391,6 @@ public class CoffeeDmsGUI extends JFrame {
         if (!repo.removeByID(tfRemoveID.getText().trim())) {
             showError("Remove failed (ID not found).");
         } else {
-            refreshTable();
             JOptionPane.showMessageDialog(this,
                     "Bean removed.", "Success", JOptionPane.INFORMATION_MESSAGE);
         }
@@ -356,21 +401,10 @@ public class CoffeeDmsGUI extends JFrame {
         lblTotalValue.setText("Total: $" + total);
     }
 
-    private void refreshTable() {
-        tableModel.setRowCount(0);
-        for (CoffeeBean b : repo.findAll()) {
-            tableModel.addRow(new Object[]{
-                    b.getBeanID(),
-                    b.getOriginCountry(),
-                    b.getFarmName(),
-                    b.getRoastLevel(),
-                    b.getRoastDate(),
-                    b.getQuantityKg(),
-                    b.getCostPerKg(),
-                    b.getFlavorNotes(),
-                    b.getCaffeineContentMgPerGram()
-            });
-        }
+    private void updatePager() {
+        btnPrevPage.setEnabled(tableModel.hasPreviousPage());
+        btnNextPage.setEnabled(tableModel.hasNextPage());
+        lblPage.setText("Page " + tableModel.getPageNumber());
     }
 
     private void showError(String msg) {
@@ -0,0 +1,341 @@
+package com.example.coffeedms;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * BeanRepository that stores lots column by column instead of as
+ * CoffeeBean objects: primitive arrays for quantity, caffeine and roast
+ * date (as an epoch day), a byte per lot for roast level, dictionary
+ * codes for origin and farm, and cost as an unscaled long plus scale.
+ * A lot costs a few dozen bytes plus its ID and notes strings, and
+ * {@link #query(BeanQuery)} is a loop over those arrays that only builds
+ * CoffeeBean objects for matching rows.
+ * <p>
+ * Rows keep insertion order. Removing a lot leaves a tombstone; the
+ * columns are compacted once more than half the rows are dead.
+ * Aggregates are maintained on every change as in BeanRepository.
+ */
+public class ColumnarBeanRepository extends BeanRepository {
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final RoastLevel[] LEVELS = RoastLevel.values();
+    /** Marks a cost that does not fit a long; the value is in wideCosts. */
+    private static final byte WIDE_COST = Byte.MIN_VALUE;
+
+    private final Map<String, Integer> rowByID = new HashMap<>();
+    private final Dictionary origins = new Dictionary();
+    private final Dictionary farms = new Dictionary();
+    private final InventoryTotals totals = new InventoryTotals();
+    private final FlavorIndex flavors = new FlavorIndex();
+    /** Costs of WIDE_COST rows, by row. */
+    private final Map<Integer, BigDecimal> wideCosts = new HashMap<>();
+
+    private String[] ids = new String[INITIAL_CAPACITY];
+    private int[] origin = new int[INITIAL_CAPACITY];
+    private int[] farm = new int[INITIAL_CAPACITY];
+    private byte[] roast = new byte[INITIAL_CAPACITY];
+    private long[] roastDay = new long[INITIAL_CAPACITY];
+    private double[] quantityKg = new double[INITIAL_CAPACITY];
+    private long[] costUnits = new long[INITIAL_CAPACITY];
+    private byte[] costScale = new byte[INITIAL_CAPACITY];
+    private String[] notes = new String[INITIAL_CAPACITY];
+    private double[] caffeine = new double[INITIAL_CAPACITY];
+    /** Rows in use, live or dead. */
+    private int rows;
+    private int dead;
+
+    @Override
+    public boolean add(CoffeeBean bean) {
+        if (rowByID.containsKey(bean.getBeanID())) return false;
+        totals.add(bean);
+        if (rows == ids.length) grow();
+        write(rows, bean);
+        rowByID.put(bean.getBeanID(), rows);
+        rows++;
+        flavors.add(bean);
+        fireAdded(bean);
+        return true;
+    }
+
+    @Override
+    public boolean removeByID(String beanID) {
+        Integer row = rowByID.remove(beanID);
+        if (row == null) return false;
+        CoffeeBean old = read(row);
+        totals.remove(old);
+        flavors.remove(old);
+        ids[row] = null;
+        notes[row] = null;
+        wideCosts.remove(row);
+        dead++;
+        if (dead > INITIAL_CAPACITY && dead * 2 > rows) compact();
+        fireRemoved(old);
+        return true;
+    }
+
+    @Override
+    public boolean update(CoffeeBean updatedBean) {
+        Integer row = rowByID.get(updatedBean.getBeanID());
+        if (row == null) return false;
+        CoffeeBean old = read(row);
+        totals.remove(old);
+        totals.add(updatedBean);
+        flavors.update(old, updatedBean);
+        wideCosts.remove(row);
+        write(row, updatedBean);
+        fireUpdated(old, updatedBean);
+        return true;
+    }
+
+    @Override
+    public boolean adjustQuantity(String beanID, double deltaKg) {
+        Integer row = rowByID.get(beanID);
+        if (row == null) return false;
+        CoffeeBean old = read(row);
+        CoffeeBean now = adjusted(old, deltaKg);
+        if (now == null) return false;
+        totals.remove(old);
+        totals.add(now);
+        quantityKg[row] = now.getQuantityKg();
+        fireUpdated(old, now);
+        return true;
+    }
+
+    @Override
+    public CoffeeBean findByID(String beanID) {
+        Integer row = rowByID.get(beanID);
+        return row == null ? null : read(row);
+    }
+
+    @Override
+    public List<CoffeeBean> findAll() {
+        List<CoffeeBean> out = new ArrayList<>(size());
+        for (int r = 0; r < rows; r++) {
+            if (ids[r] != null) out.add(read(r));
+        }
+        return out;
+    }
+
+    @Override
+    public int size() {
+        return rows - dead;
+    }
+
+    @Override
+    public void saveSnapshot(Path path) throws IOException {
+        BeanSnapshot.write(path, findAll());
+    }
+
+    /**
+     * Scans the roast level, origin, farm and roast date columns; rows
+     * are compared as bytes, dictionary codes and epoch days.
+     *
+     * @param q criteria to match
+     * @return matching beans in insertion order
+     */
+    @Override
+    public List<CoffeeBean> query(BeanQuery q) {
+        int wantOrigin = -1;
+        int wantFarm = -1;
+        if (q.getOrigin() != null) {
+            wantOrigin = origins.find(q.getOrigin());
+            if (wantOrigin < 0) return new ArrayList<>();
+        }
+        if (q.getFarm() != null) {
+            wantFarm = farms.find(q.getFarm());
+            if (wantFarm < 0) return new ArrayList<>();
+        }
+        int wantRoast = q.getRoastLevel() == null ? -1 : q.getRoastLevel().ordinal();
+        long from = q.getRoastedFrom() == null ? Long.MIN_VALUE : q.getRoastedFrom().toEpochDay();
+        long to = q.getRoastedTo() == null ? Long.MAX_VALUE : q.getRoastedTo().toEpochDay();
+
+        List<CoffeeBean> out = new ArrayList<>();
+        for (int r = 0; r < rows; r++) {
+            if ((wantRoast < 0 || roast[r] == wantRoast)
+                    && (wantOrigin < 0 || origin[r] == wantOrigin)
+                    && (wantFarm < 0 || farm[r] == wantFarm)
+                    && roastDay[r] >= from && roastDay[r] <= to
+                    && ids[r] != null) {
+                out.add(read(r));
+            }
+        }
+        return out;
+    }
+
+    @Override
+    public List<CoffeeBean> findByFlavorAll(String... terms) {
+        return lookup(flavors.matchAll(Arrays.asList(terms)));
+    }
+
+    @Override
+    public List<CoffeeBean> findByFlavorAny(String... terms) {
+        return lookup(flavors.matchAny(Arrays.asList(terms)));
+    }
+
+    @Override
+    public BigDecimal calculateTotalInventoryValue() {
+        return totals.getTotalValue();
+    }
+
+    @Override
+    public BigDecimal getTotalQuantityKg() {
+        return totals.getTotalQuantityKg();
+    }
+
+    @Override
+    public Map<RoastLevel, BigDecimal> getValueByRoastLevel() {
+        return totals.getValueByRoastLevel();
+    }
+
+    @Override
+    public Map<String, BigDecimal> getValueByOrigin() {
+        return totals.getValueByOrigin();
+    }
+
+    /**
+     * Same paging as BeanRepository, found by one scan of the rows rather
+     * than a sorted ID index, which would cost more than the rows do.
+     */
+    @Override
+    public List<CoffeeBean> findPage(String afterBeanID, int limit) {
+        return scanPage(afterBeanID, limit);
+    }
+
+    @Override
+    public List<CoffeeBean> oldestRoasts(int n) {
+        return topN(n, OLDEST_ROAST_FIRST);
+    }
+
+    @Override
+    void forEachBean(Consumer<CoffeeBean> action) {
+        for (int r = 0; r < rows; r++) {
+            if (ids[r] != null) action.accept(read(r));
+        }
+    }
+
+    private List<CoffeeBean> lookup(Collection<String> beanIDs) {
+        List<CoffeeBean> out = new ArrayList<>(beanIDs.size());
+        for (String id : beanIDs) {
+            out.add(read(rowByID.get(id)));
+        }
+        return out;
+    }
+
+    /** Builds the CoffeeBean stored in row r. */
+    private CoffeeBean read(int r) {
+        BigDecimal cost = costScale[r] == WIDE_COST
+                ? wideCosts.get(r)
+                : BigDecimal.valueOf(costUnits[r], costScale[r]);
+        return new CoffeeBean(
+                ids[r],
+                origins.value(origin[r]),
+                farms.value(farm[r]),
+                LEVELS[roast[r]],
+                LocalDate.ofEpochDay(roastDay[r]),
+                quantityKg[r],
+                cost,
+                notes[r],
+                caffeine[r]
+        );
+    }
+
+    private void write(int r, CoffeeBean b) {
+        ids[r] = b.getBeanID();
+        origin[r] = origins.code(b.getOriginCountry());
+        farm[r] = farms.code(b.getFarmName());
+        roast[r] = (byte) b.getRoastLevel().ordinal();
+        roastDay[r] = b.getRoastDate().toEpochDay();
+        quantityKg[r] = b.getQuantityKg();
+        BigDecimal cost = b.getCostPerKg();
+        if (cost.unscaledValue().bitLength() < 64
+                && cost.scale() > WIDE_COST && cost.scale() <= Byte.MAX_VALUE) {
+            costUnits[r] = cost.unscaledValue().longValue();
+            costScale[r] = (byte) cost.scale();
+        } else {
+            costUnits[r] = 0;
+            costScale[r] = WIDE_COST;
+            wideCosts.put(r, cost);
+        }
+        notes[r] = b.getFlavorNotes();
+        caffeine[r] = b.getCaffeineContentMgPerGram();
+    }
+
+    private void grow() {
+        int n = ids.length * 2;
+        ids = Arrays.copyOf(ids, n);
+        origin = Arrays.copyOf(origin, n);
+        farm = Arrays.copyOf(farm, n);
+        roast = Arrays.copyOf(roast, n);
+        roastDay = Arrays.copyOf(roastDay, n);
+        quantityKg = Arrays.copyOf(quantityKg, n);
+        costUnits = Arrays.copyOf(costUnits, n);
+        costScale = Arrays.copyOf(costScale, n);
+        notes = Arrays.copyOf(notes, n);
+        caffeine = Arrays.copyOf(caffeine, n);
+    }
+
+    /** Moves live rows down over tombstones, keeping their order. */
+    private void compact() {
+        Map<Integer, BigDecimal> wide = new HashMap<>();
+        int to = 0;
+        for (int r = 0; r < rows; r++) {
+            if (ids[r] == null) continue;
+            if (to != r) {
+                ids[to] = ids[r];
+                origin[to] = origin[r];
+                farm[to] = farm[r];
+                roast[to] = roast[r];
+                roastDay[to] = roastDay[r];
+                quantityKg[to] = quantityKg[r];
+                costUnits[to] = costUnits[r];
+                costScale[to] = costScale[r];
+                notes[to] = notes[r];
+                caffeine[to] = caffeine[r];
+                rowByID.put(ids[to], to);
+            }
+            if (costScale[to] == WIDE_COST) wide.put(to, wideCosts.get(r));
+            to++;
+        }
+        Arrays.fill(ids, to, rows, null);
+        Arrays.fill(notes, to, rows, null);
+        wideCosts.clear();
+        wideCosts.putAll(wide);
+        rows = to;
+        dead = 0;
+    }
+
+    /** Assigns each distinct string a small int code. Codes are never reused. */
+    private static final class Dictionary {
+        private final Map<String, Integer> codes = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        int code(String s) {
+            Integer c = codes.get(s);
+            if (c == null) {
+                c = values.size();
+                codes.put(s, c);
+                values.add(s);
+            }
+            return c;
+        }
+
+        /** @return the code for s, or -1 if it has none */
+        int find(String s) {
+            Integer c = codes.get(s);
+            return c == null ? -1 : c;
+        }
+
+        String value(int code) {
+            return values.get(code);
+        }
+    }
+}
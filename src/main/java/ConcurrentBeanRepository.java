@@ -0,0 +1,584 @@
+package com.example.coffeedms;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.StreamSupport;
+
+/**
+ * BeanRepository that can be shared between threads (an import thread,
+ * the GUI and a reporting thread, say).
+ * <p>
+ * All state lives in an immutable {@link Snapshot}: beans by ID and by
+ * insertion order, the query and flavor indexes and the aggregates. Each
+ * write builds the next snapshot from the current one and publishes it
+ * through a volatile field. The snapshot's maps are persistent, so a
+ * write copies only O(log n) tree nodes per changed key plus the
+ * aggregate sums it touches, never the whole inventory. Writes are
+ * serialized; reads never lock or copy, they just read the latest
+ * snapshot. Lists returned from these methods are unmodifiable.
+ */
+public class ConcurrentBeanRepository extends BeanRepository {
+    private final Object writeLock = new Object();
+    /** Last insertion sequence number handed out; guarded by writeLock. */
+    private long sequence;
+    private volatile Snapshot current = Snapshot.EMPTY;
+
+    @Override
+    public boolean add(CoffeeBean bean) {
+        synchronized (writeLock) {
+            Snapshot s = current;
+            if (s.byID.containsKey(bean.getBeanID())) return false;
+            current = s.replace(null, new Entry(++sequence, bean));
+            fireAdded(bean);
+            return true;
+        }
+    }
+
+    @Override
+    public boolean removeByID(String beanID) {
+        synchronized (writeLock) {
+            Snapshot s = current;
+            Entry e = s.byID.get(beanID);
+            if (e == null) return false;
+            current = s.replace(e, null);
+            fireRemoved(e.bean);
+            return true;
+        }
+    }
+
+    @Override
+    public boolean update(CoffeeBean updatedBean) {
+        synchronized (writeLock) {
+            Snapshot s = current;
+            Entry e = s.byID.get(updatedBean.getBeanID());
+            if (e == null) return false;
+            current = s.replace(e, new Entry(e.seq, updatedBean));
+            fireUpdated(e.bean, updatedBean);
+            return true;
+        }
+    }
+
+    /**
+     * Applies the delta atomically: concurrent adjustments of the same lot
+     * never lose each other's changes.
+     */
+    @Override
+    public boolean adjustQuantity(String beanID, double deltaKg) {
+        synchronized (writeLock) {
+            Snapshot s = current;
+            Entry e = s.byID.get(beanID);
+            if (e == null) return false;
+            CoffeeBean now = adjusted(e.bean, deltaKg);
+            if (now == null) return false;
+            current = s.replace(e, new Entry(e.seq, now));
+            fireUpdated(e.bean, now);
+            return true;
+        }
+    }
+
+    @Override
+    public CoffeeBean findByID(String beanID) {
+        return current.findByID(beanID);
+    }
+
+    /**
+     * @return every bean in insertion order, as of the latest snapshot; unmodifiable
+     */
+    @Override
+    public List<CoffeeBean> findAll() {
+        return snapshot().getBeans();
+    }
+
+    @Override
+    public int size() {
+        return current.size();
+    }
+
+    @Override
+    public void saveSnapshot(Path path) throws IOException {
+        BeanSnapshot.write(path, snapshot().getBeans());
+    }
+
+    @Override
+    public List<CoffeeBean> query(BeanQuery q) {
+        return snapshot().query(q);
+    }
+
+    @Override
+    public List<CoffeeBean> findByFlavorAll(String... terms) {
+        return snapshot().findByFlavorAll(terms);
+    }
+
+    @Override
+    public List<CoffeeBean> findByFlavorAny(String... terms) {
+        return snapshot().findByFlavorAny(terms);
+    }
+
+    @Override
+    public BigDecimal calculateTotalInventoryValue() {
+        return snapshot().calculateTotalInventoryValue();
+    }
+
+    @Override
+    public BigDecimal getTotalQuantityKg() {
+        return snapshot().getTotalQuantityKg();
+    }
+
+    @Override
+    public Map<RoastLevel, BigDecimal> getValueByRoastLevel() {
+        return snapshot().getValueByRoastLevel();
+    }
+
+    @Override
+    public Map<String, BigDecimal> getValueByOrigin() {
+        return snapshot().getValueByOrigin();
+    }
+
+    @Override
+    public List<CoffeeBean> findPage(String afterBeanID, int limit) {
+        return snapshot().findPage(afterBeanID, limit);
+    }
+
+    @Override
+    public List<CoffeeBean> oldestRoasts(int n) {
+        return topN(n, OLDEST_ROAST_FIRST);
+    }
+
+    @Override
+    void forEachBean(Consumer<CoffeeBean> action) {
+        snapshot().getBeans().forEach(action);
+    }
+
+    /**
+     * Returns a consistent, immutable view of the repository. Use it when
+     * several reads must agree with each other (the bean list and the
+     * total shown next to it, for example).
+     *
+     * @return the snapshot for the latest change
+     */
+    public Snapshot snapshot() {
+        return current;
+    }
+
+    /** A bean and its insertion sequence number. */
+    private static final class Entry {
+        final long seq;
+        final CoffeeBean bean;
+
+        Entry(long seq, CoffeeBean bean) {
+            this.seq = seq;
+            this.bean = bean;
+        }
+    }
+
+    /**
+     * Immutable state of a ConcurrentBeanRepository at one point in time.
+     * Thread-safe.
+     * <p>
+     * Secondary indexes map an attribute to the insertion sequence numbers
+     * of its beans (and their IDs), so results come out in insertion order.
+     */
+    public static final class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(0, PersistentTreeMap.empty(), PersistentTreeMap.empty(),
+                PersistentTreeMap.empty(), PersistentTreeMap.empty(), PersistentTreeMap.empty(),
+                PersistentTreeMap.empty(), PersistentTreeMap.empty(), Totals.EMPTY);
+
+        private final long version;
+        private final PersistentTreeMap<String, Entry> byID;
+        private final PersistentTreeMap<Long, CoffeeBean> bySeq;
+        private final PersistentTreeMap<RoastLevel, PersistentTreeMap<Long, String>> byRoast;
+        private final PersistentTreeMap<String, PersistentTreeMap<Long, String>> byOrigin;
+        private final PersistentTreeMap<String, PersistentTreeMap<Long, String>> byFarm;
+        private final PersistentTreeMap<LocalDate, PersistentTreeMap<Long, String>> byRoastDate;
+        /** Flavor-note token → beans; see {@link FlavorIndex#tokenize}. */
+        private final PersistentTreeMap<String, PersistentTreeMap<Long, String>> flavors;
+        private final Totals totals;
+        private final List<CoffeeBean> beans;
+
+        private Snapshot(long version,
+                         PersistentTreeMap<String, Entry> byID,
+                         PersistentTreeMap<Long, CoffeeBean> bySeq,
+                         PersistentTreeMap<RoastLevel, PersistentTreeMap<Long, String>> byRoast,
+                         PersistentTreeMap<String, PersistentTreeMap<Long, String>> byOrigin,
+                         PersistentTreeMap<String, PersistentTreeMap<Long, String>> byFarm,
+                         PersistentTreeMap<LocalDate, PersistentTreeMap<Long, String>> byRoastDate,
+                         PersistentTreeMap<String, PersistentTreeMap<Long, String>> flavors,
+                         Totals totals) {
+            this.version = version;
+            this.byID = byID;
+            this.bySeq = bySeq;
+            this.byRoast = byRoast;
+            this.byOrigin = byOrigin;
+            this.byFarm = byFarm;
+            this.byRoastDate = byRoastDate;
+            this.flavors = flavors;
+            this.totals = totals;
+            this.beans = new BeanList(bySeq);
+        }
+
+        /**
+         * @param old entry to take out, or null when adding
+         * @param now entry to put in, or null when removing
+         * @return the next snapshot; this one is left unchanged
+         */
+        private Snapshot replace(Entry old, Entry now) {
+            PersistentTreeMap<String, Entry> ids = byID;
+            PersistentTreeMap<Long, CoffeeBean> seqs = bySeq;
+            if (old != null && now == null) {
+                ids = ids.remove(old.bean.getBeanID());
+                seqs = seqs.remove(old.seq);
+            }
+            if (now != null) {
+                ids = ids.put(now.bean.getBeanID(), now);
+                seqs = seqs.put(now.seq, now.bean);
+            }
+            return new Snapshot(version + 1, ids, seqs,
+                    reindex(byRoast, old, now, CoffeeBean::getRoastLevel),
+                    reindex(byOrigin, old, now, CoffeeBean::getOriginCountry),
+                    reindex(byFarm, old, now, CoffeeBean::getFarmName),
+                    reindex(byRoastDate, old, now, CoffeeBean::getRoastDate),
+                    reindexFlavors(old, now),
+                    totals.replace(old == null ? null : old.bean, now == null ? null : now.bean));
+        }
+
+        /**
+         * @return number of changes made to the repository before this snapshot
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * @return every bean in insertion order; unmodifiable
+         */
+        public List<CoffeeBean> getBeans() {
+            return beans;
+        }
+
+        /** @see BeanRepository#findByID(String) */
+        public CoffeeBean findByID(String beanID) {
+            Entry e = byID.get(beanID);
+            return e == null ? null : e.bean;
+        }
+
+        /** @see BeanRepository#size() */
+        public int size() {
+            return byID.size();
+        }
+
+        /** @see BeanRepository#query(BeanQuery) */
+        public List<CoffeeBean> query(BeanQuery q) {
+            Iterable<Long> candidates = candidates(q);
+            if (candidates == null) return beans;
+            List<CoffeeBean> out = new ArrayList<>();
+            for (Long seq : candidates) {
+                CoffeeBean b = bySeq.get(seq);
+                if (q.matches(b)) out.add(b);
+            }
+            return Collections.unmodifiableList(out);
+        }
+
+        /** @see BeanRepository#findPage(String, int) */
+        public List<CoffeeBean> findPage(String afterBeanID, int limit) {
+            checkLimit(limit);
+            Iterable<Entry> after = afterBeanID == null ? byID.values() : byID.tailValues(afterBeanID, false);
+            List<CoffeeBean> out = new ArrayList<>(Math.min(limit, size()));
+            for (Entry e : after) {
+                if (out.size() == limit) break;
+                out.add(e.bean);
+            }
+            return Collections.unmodifiableList(out);
+        }
+
+        /** @see BeanRepository#findByFlavorAll(String...) */
+        public List<CoffeeBean> findByFlavorAll(String... terms) {
+            List<PersistentTreeMap<Long, String>> sets = resolve(Arrays.asList(terms));
+            if (sets.isEmpty()) return Collections.emptyList();
+            // probe the other sets while walking the smallest
+            sets.sort(Comparator.comparingInt(PersistentTreeMap::size));
+            List<CoffeeBean> out = new ArrayList<>();
+            outer:
+            for (Long seq : sets.get(0).keys()) {
+                for (int i = 1; i < sets.size(); i++) {
+                    if (!sets.get(i).containsKey(seq)) continue outer;
+                }
+                out.add(bySeq.get(seq));
+            }
+            return Collections.unmodifiableList(out);
+        }
+
+        /** @see BeanRepository#findByFlavorAny(String...) */
+        public List<CoffeeBean> findByFlavorAny(String... terms) {
+            TreeSet<Long> seqs = new TreeSet<>();
+            for (PersistentTreeMap<Long, String> s : resolve(Arrays.asList(terms))) {
+                s.keys().forEach(seqs::add);
+            }
+            List<CoffeeBean> out = new ArrayList<>(seqs.size());
+            for (Long seq : seqs) {
+                out.add(bySeq.get(seq));
+            }
+            return Collections.unmodifiableList(out);
+        }
+
+        public BigDecimal calculateTotalInventoryValue() {
+            return totals.value.get();
+        }
+
+        public BigDecimal getTotalQuantityKg() {
+            return totals.quantityKg.get();
+        }
+
+        public Map<RoastLevel, BigDecimal> getValueByRoastLevel() {
+            Map<RoastLevel, BigDecimal> out = new EnumMap<>(RoastLevel.class);
+            totals.valueByRoast.forEach((r, s) -> out.put(r, s.get()));
+            return out;
+        }
+
+        public Map<String, BigDecimal> getValueByOrigin() {
+            Map<String, BigDecimal> out = new LinkedHashMap<>();
+            totals.valueByOrigin.forEach((o, s) -> out.put(o, s.get()));
+            return out;
+        }
+
+        /**
+         * Picks the smallest set of candidates among the indexed criteria
+         * of q, like {@link BeanIndexes#candidates(BeanQuery)}.
+         *
+         * @return candidate sequence numbers, or null if q sets no criterion
+         */
+        private Iterable<Long> candidates(BeanQuery q) {
+            Iterable<Long> best = null;
+            long bestSize = Long.MAX_VALUE;
+            if (q.getRoastLevel() != null) {
+                PersistentTreeMap<Long, String> s = members(byRoast, q.getRoastLevel());
+                best = s.keys();
+                bestSize = s.size();
+            }
+            if (q.getOrigin() != null) {
+                PersistentTreeMap<Long, String> s = members(byOrigin, q.getOrigin());
+                if (s.size() < bestSize) {
+                    best = s.keys();
+                    bestSize = s.size();
+                }
+            }
+            if (q.getFarm() != null) {
+                PersistentTreeMap<Long, String> s = members(byFarm, q.getFarm());
+                if (s.size() < bestSize) {
+                    best = s.keys();
+                    bestSize = s.size();
+                }
+            }
+            if (q.hasDateRange() && bestSize > 0) {
+                Iterable<PersistentTreeMap<Long, String>> range = dateRange(q.getRoastedFrom(), q.getRoastedTo());
+                // count the range only as far as needed to beat the best so far
+                long size = 0;
+                for (PersistentTreeMap<Long, String> s : range) {
+                    size += s.size();
+                    if (size >= bestSize) break;
+                }
+                if (size < bestSize) {
+                    best = () -> StreamSupport.stream(range.spliterator(), false)
+                            .flatMap(s -> StreamSupport.stream(s.keys().spliterator(), false))
+                            .iterator();
+                }
+            }
+            return best;
+        }
+
+        /** Beans roasted between from and to (inclusive, null = open), by roast date. */
+        private Iterable<PersistentTreeMap<Long, String>> dateRange(LocalDate from, LocalDate to) {
+            if (from != null && to != null) {
+                return from.isAfter(to) ? Collections.emptyList()
+                        : byRoastDate.subValues(from, true, to, true);
+            }
+            if (from != null) return byRoastDate.tailValues(from, true);
+            if (to != null) return byRoastDate.headValues(to, true);
+            return byRoastDate.values();
+        }
+
+        /** One set per term; prefix terms become the union of their tokens. */
+        private List<PersistentTreeMap<Long, String>> resolve(List<String> terms) {
+            List<PersistentTreeMap<Long, String>> sets = new ArrayList<>();
+            for (String raw : terms) {
+                boolean prefix = raw.endsWith("*");
+                List<String> tokens = FlavorIndex.tokenize(prefix ? raw.substring(0, raw.length() - 1) : raw);
+                for (int i = 0; i < tokens.size(); i++) {
+                    String token = tokens.get(i);
+                    if (prefix && i == tokens.size() - 1) {
+                        PersistentTreeMap<Long, String> union = null;
+                        for (PersistentTreeMap<Long, String> s
+                                : flavors.subValues(token, true, token + Character.MAX_VALUE, false)) {
+                            if (union == null) {
+                                union = s;
+                            } else {
+                                for (Long seq : s.keys()) union = union.put(seq, s.get(seq));
+                            }
+                        }
+                        sets.add(union == null ? PersistentTreeMap.empty() : union);
+                    } else {
+                        sets.add(members(flavors, token));
+                    }
+                }
+            }
+            return sets;
+        }
+
+        private static <K extends Comparable<? super K>> PersistentTreeMap<Long, String> members(
+                PersistentTreeMap<K, PersistentTreeMap<Long, String>> index, K key) {
+            PersistentTreeMap<Long, String> s = index.get(key);
+            return s == null ? PersistentTreeMap.empty() : s;
+        }
+
+        /** Moves the bean between index keys, if the attribute changed. */
+        private static <K extends Comparable<? super K>>
+        PersistentTreeMap<K, PersistentTreeMap<Long, String>> reindex(
+                PersistentTreeMap<K, PersistentTreeMap<Long, String>> index, Entry old, Entry now,
+                Function<CoffeeBean, K> attribute) {
+            if (old != null && now != null
+                    && Objects.equals(attribute.apply(old.bean), attribute.apply(now.bean))) {
+                return index;
+            }
+            if (old != null) index = without(index, attribute.apply(old.bean), old.seq);
+            if (now != null) index = with(index, attribute.apply(now.bean), now);
+            return index;
+        }
+
+        private PersistentTreeMap<String, PersistentTreeMap<Long, String>> reindexFlavors(Entry old, Entry now) {
+            if (old != null && now != null
+                    && Objects.equals(old.bean.getFlavorNotes(), now.bean.getFlavorNotes())) {
+                return flavors;
+            }
+            PersistentTreeMap<String, PersistentTreeMap<Long, String>> index = flavors;
+            if (old != null) {
+                for (String token : FlavorIndex.tokenize(old.bean.getFlavorNotes())) {
+                    index = without(index, token, old.seq);
+                }
+            }
+            if (now != null) {
+                for (String token : FlavorIndex.tokenize(now.bean.getFlavorNotes())) {
+                    index = with(index, token, now);
+                }
+            }
+            return index;
+        }
+
+        private static <K extends Comparable<? super K>>
+        PersistentTreeMap<K, PersistentTreeMap<Long, String>> with(
+                PersistentTreeMap<K, PersistentTreeMap<Long, String>> index, K key, Entry e) {
+            return index.put(key, members(index, key).put(e.seq, e.bean.getBeanID()));
+        }
+
+        private static <K extends Comparable<? super K>>
+        PersistentTreeMap<K, PersistentTreeMap<Long, String>> without(
+                PersistentTreeMap<K, PersistentTreeMap<Long, String>> index, K key, long seq) {
+            PersistentTreeMap<Long, String> s = index.get(key);
+            if (s == null) return index;
+            s = s.remove(seq);
+            return s.isEmpty() ? index.remove(key) : index.put(key, s);
+        }
+    }
+
+    /**
+     * Aggregates of one snapshot. Never changed once published: a write
+     * copies the sums it touches and shares the rest.
+     */
+    private static final class Totals {
+        static final Totals EMPTY = new Totals(new ExactSum(), new ExactSum(),
+                PersistentTreeMap.empty(), PersistentTreeMap.empty());
+
+        final ExactSum value;
+        final ExactSum quantityKg;
+        final PersistentTreeMap<RoastLevel, ExactSum> valueByRoast;
+        final PersistentTreeMap<String, ExactSum> valueByOrigin;
+
+        Totals(ExactSum value, ExactSum quantityKg, PersistentTreeMap<RoastLevel, ExactSum> valueByRoast,
+               PersistentTreeMap<String, ExactSum> valueByOrigin) {
+            this.value = value;
+            this.quantityKg = quantityKg;
+            this.valueByRoast = valueByRoast;
+            this.valueByOrigin = valueByOrigin;
+        }
+
+        /**
+         * @param old bean to take out, or null
+         * @param now bean to put in, or null
+         */
+        Totals replace(CoffeeBean old, CoffeeBean now) {
+            ExactSum.Term out = old == null ? null : new ExactSum.Term().ofValue(old);
+            ExactSum.Term in = now == null ? null : new ExactSum.Term().ofValue(now);
+            ExactSum.Term outKg = old == null ? null : new ExactSum.Term().ofDouble(old.getQuantityKg());
+            ExactSum.Term inKg = now == null ? null : new ExactSum.Term().ofDouble(now.getQuantityKg());
+            return new Totals(moved(value, out, in), moved(quantityKg, outKg, inKg),
+                    move(valueByRoast, old == null ? null : old.getRoastLevel(), out,
+                            now == null ? null : now.getRoastLevel(), in),
+                    move(valueByOrigin, old == null ? null : old.getOriginCountry(), out,
+                            now == null ? null : now.getOriginCountry(), in));
+        }
+
+        /** Takes out from the sum for oldKey and adds in to the sum for newKey. */
+        private static <K extends Comparable<? super K>> PersistentTreeMap<K, ExactSum> move(
+                PersistentTreeMap<K, ExactSum> sums, K oldKey, ExactSum.Term out, K newKey, ExactSum.Term in) {
+            if (out != null && in != null && Objects.equals(oldKey, newKey)) {
+                return adjust(sums, newKey, out, in);
+            }
+            if (out != null) sums = adjust(sums, oldKey, out, null);
+            if (in != null) sums = adjust(sums, newKey, null, in);
+            return sums;
+        }
+
+        private static <K extends Comparable<? super K>> PersistentTreeMap<K, ExactSum> adjust(
+                PersistentTreeMap<K, ExactSum> sums, K key, ExactSum.Term out, ExactSum.Term in) {
+            ExactSum s = moved(sums.get(key), out, in);
+            return s.terms() == 0 ? sums.remove(key) : sums.put(key, s);
+        }
+
+        /** @return a copy of sum (empty if null) with out taken out and in added */
+        private static ExactSum moved(ExactSum sum, ExactSum.Term out, ExactSum.Term in) {
+            ExactSum copy = new ExactSum();
+            if (sum != null) copy.addAll(sum);
+            if (out != null) copy.subtract(out);
+            if (in != null) copy.add(in);
+            return copy;
+        }
+    }
+
+    /** Unmodifiable list view of a snapshot's beans in insertion order. */
+    private static final class BeanList extends AbstractList<CoffeeBean> {
+        private final PersistentTreeMap<Long, CoffeeBean> bySeq;
+
+        BeanList(PersistentTreeMap<Long, CoffeeBean> bySeq) {
+            this.bySeq = bySeq;
+        }
+
+        @Override
+        public CoffeeBean get(int index) {
+            return bySeq.valueAt(index);
+        }
+
+        @Override
+        public int size() {
+            return bySeq.size();
+        }
+
+        @Override
+        public Iterator<CoffeeBean> iterator() {
+            return bySeq.values().iterator();
+        }
+    }
+}
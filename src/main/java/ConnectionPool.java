@@ -0,0 +1,606 @@
+package com.example.coffeedms;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded pool of JDBC connections, so several threads can use the
+ * database at once and a dropped connection is replaced instead of
+ * breaking every later call.
+ * <p>
+ * {@link #borrow()} hands out a connection whose {@code close()} returns
+ * it to the pool. At most {@code maxSize} connections are open; a borrow
+ * waits up to {@code acquireTimeoutMillis} for one to come back and then
+ * fails with SQLTransientConnectionException rather than hanging. A
+ * connection that sat idle for a while is checked with
+ * {@code isValid} before it is handed out, connections idle longer than
+ * {@code idleTimeoutMillis} are closed, and a connection that raised a
+ * connection-level error (SQLState class 08) is discarded when returned.
+ * Returned connections get autocommit back on, rolling back anything
+ * left uncommitted.
+ * <p>
+ * Each connection also keeps its most recently used prepared statements
+ * (up to {@code statementCacheSize}, least recently used dropped first).
+ * {@code prepareStatement(sql)} on a borrowed connection reuses the
+ * cached statement for sql, and closing it resets it (parameters, fetch
+ * size and other limits) and keeps it instead of closing it, so a hot
+ * query is prepared once per connection. Cached statements are closed
+ * with their connection.
+ * <p>
+ * Connections come from a {@link ConnectionFactory}, so any JDBC driver
+ * (MySQL, an embedded database in tests) can back the pool. Thread-safe.
+ */
+public final class ConnectionPool implements AutoCloseable {
+    public static final int DEFAULT_MAX_SIZE = 8;
+    public static final long DEFAULT_ACQUIRE_TIMEOUT_MILLIS = 5_000;
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 5 * 60_000;
+    /** Connections idle for less than this are handed out unchecked. */
+    private static final long VALIDATE_AFTER_MILLIS = 500;
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+    /** Default number of prepared statements kept per connection. */
+    public static final int DEFAULT_STATEMENT_CACHE_SIZE = 32;
+
+    /** Opens a new physical connection. */
+    @FunctionalInterface
+    public interface ConnectionFactory {
+        Connection open() throws SQLException;
+    }
+
+    private final ConnectionFactory factory;
+    private final int maxSize;
+    private final long acquireTimeoutMillis;
+    private final long idleTimeoutMillis;
+    private final int statementCacheSize;
+    private final Semaphore permits;
+    /** Idle connections, most recently returned first. Guarded by itself. */
+    private final Deque<Pooled> idle = new ArrayDeque<>();
+    private final AtomicInteger open = new AtomicInteger();
+    private volatile boolean closed;
+
+    private final LongAdder borrowed = new LongAdder();
+    private final LongAdder created = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder validationFailures = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+    private final LongAdder discarded = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder statementHits = new LongAdder();
+    private final LongAdder statementMisses = new LongAdder();
+
+    /**
+     * Creates a pool with the default size and timeouts.
+     *
+     * @param factory opens physical connections
+     */
+    public ConnectionPool(ConnectionFactory factory) {
+        this(factory, DEFAULT_MAX_SIZE, DEFAULT_ACQUIRE_TIMEOUT_MILLIS, DEFAULT_IDLE_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param factory              opens physical connections
+     * @param maxSize              most connections open at once
+     * @param acquireTimeoutMillis longest a borrow waits for a free connection
+     * @param idleTimeoutMillis    idle connections older than this are closed
+     */
+    public ConnectionPool(ConnectionFactory factory, int maxSize,
+                          long acquireTimeoutMillis, long idleTimeoutMillis) {
+        this(factory, maxSize, acquireTimeoutMillis, idleTimeoutMillis, DEFAULT_STATEMENT_CACHE_SIZE);
+    }
+
+    /**
+     * @param factory              opens physical connections
+     * @param maxSize              most connections open at once
+     * @param acquireTimeoutMillis longest a borrow waits for a free connection
+     * @param idleTimeoutMillis    idle connections older than this are closed
+     * @param statementCacheSize   prepared statements kept per connection; 0 disables caching
+     */
+    public ConnectionPool(ConnectionFactory factory, int maxSize, long acquireTimeoutMillis,
+                          long idleTimeoutMillis, int statementCacheSize) {
+        if (maxSize < 1) throw new IllegalArgumentException("maxSize must be at least 1");
+        if (acquireTimeoutMillis < 0 || idleTimeoutMillis < 0) {
+            throw new IllegalArgumentException("timeouts must not be negative");
+        }
+        if (statementCacheSize < 0) {
+            throw new IllegalArgumentException("statementCacheSize must not be negative");
+        }
+        this.factory = factory;
+        this.maxSize = maxSize;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(maxSize, true);
+    }
+
+    /**
+     * Takes a connection from the pool, opening one if none is idle.
+     * Closing the returned connection gives it back.
+     *
+     * @return a valid connection with autocommit on
+     * @throws SQLTransientConnectionException if none became free in time
+     * @throws SQLException if the pool is closed or a connection cannot be opened
+     */
+    public Connection borrow() throws SQLException {
+        if (closed) throw new SQLException("Connection pool is closed");
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                timeouts.increment();
+                throw new SQLTransientConnectionException("No connection free after "
+                        + acquireTimeoutMillis + " ms (" + maxSize + " in use)");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("Interrupted waiting for a connection", ex);
+        }
+        waitNanos.add(System.nanoTime() - start);
+        try {
+            Pooled p = takeIdle();
+            if (p == null) {
+                p = new Pooled(factory.open());
+                open.incrementAndGet();
+                created.increment();
+            }
+            borrowed.increment();
+            return wrap(p);
+        } catch (SQLException | RuntimeException ex) {
+            permits.release();
+            throw ex;
+        }
+    }
+
+    /**
+     * Closes connections that have been idle longer than the idle
+     * timeout. Also done on every borrow and return.
+     */
+    public void evictIdle() {
+        long cutoff = System.currentTimeMillis() - idleTimeoutMillis;
+        synchronized (idle) {
+            // the oldest are at the tail
+            for (Iterator<Pooled> it = idle.descendingIterator(); it.hasNext(); ) {
+                Pooled p = it.next();
+                if (p.since > cutoff) break;
+                it.remove();
+                evicted.increment();
+                discard(p);
+            }
+        }
+    }
+
+    /**
+     * Closes every idle connection and refuses further borrows.
+     * Borrowed connections are closed when they are returned.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        synchronized (idle) {
+            while (!idle.isEmpty()) discard(idle.poll());
+        }
+    }
+
+    /** @return most connections open at once */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /** @return connections currently borrowed */
+    public int getActive() {
+        return maxSize - permits.availablePermits();
+    }
+
+    /** @return connections open and waiting in the pool */
+    public int getIdle() {
+        synchronized (idle) {
+            return idle.size();
+        }
+    }
+
+    /** @return physical connections currently open */
+    public int getOpen() {
+        return open.get();
+    }
+
+    /** @return threads waiting for a connection */
+    public int getWaiting() {
+        return permits.getQueueLength();
+    }
+
+    public long getBorrowed() {
+        return borrowed.sum();
+    }
+
+    public long getCreated() {
+        return created.sum();
+    }
+
+    /** @return borrows that gave up waiting */
+    public long getTimeouts() {
+        return timeouts.sum();
+    }
+
+    /** @return idle connections found dead when borrowed */
+    public long getValidationFailures() {
+        return validationFailures.sum();
+    }
+
+    /** @return idle connections closed for exceeding the idle timeout */
+    public long getEvicted() {
+        return evicted.sum();
+    }
+
+    /** @return returned connections dropped after a connection error */
+    public long getDiscarded() {
+        return discarded.sum();
+    }
+
+    /** @return mean time a borrow waited for a free slot, in milliseconds */
+    public double getAverageWaitMillis() {
+        long n = borrowed.sum() + timeouts.sum();
+        return n == 0 ? 0 : waitNanos.sum() / 1e6 / n;
+    }
+
+    /** @return prepareStatement calls served from a connection's cache */
+    public long getStatementHits() {
+        return statementHits.sum();
+    }
+
+    /** @return prepareStatement calls that had to prepare a new statement */
+    public long getStatementMisses() {
+        return statementMisses.sum();
+    }
+
+    /**
+     * @return one line with the pool statistics
+     */
+    public String describe() {
+        return String.format("Connection pool: %d active, %d idle of %d; %d borrowed, %d opened,"
+                        + " %d timed out, %d failed validation, %d evicted, %d discarded;"
+                        + " avg wait %.2f ms; statements %d cached, %d prepared",
+                getActive(), getIdle(), maxSize, getBorrowed(), getCreated(), getTimeouts(),
+                getValidationFailures(), getEvicted(), getDiscarded(), getAverageWaitMillis(),
+                getStatementHits(), getStatementMisses());
+    }
+
+    /** Pops the most recently used idle connection that is still valid, or null. */
+    private Pooled takeIdle() {
+        evictIdle();
+        while (true) {
+            Pooled p;
+            synchronized (idle) {
+                p = idle.poll();
+            }
+            if (p == null) return null;
+            if (System.currentTimeMillis() - p.since < VALIDATE_AFTER_MILLIS || isValid(p.real)) {
+                return p;
+            }
+            validationFailures.increment();
+            discard(p);
+        }
+    }
+
+    private static boolean isValid(Connection c) {
+        try {
+            return c.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException ex) {
+            return false;
+        }
+    }
+
+    /** Called once when a borrowed connection is closed. */
+    private void giveBack(Pooled p, boolean broken) {
+        try {
+            if (broken || closed || p.real.isClosed()) {
+                if (broken) discarded.increment();
+                discard(p);
+                return;
+            }
+            if (!p.real.getAutoCommit()) {
+                p.real.rollback();
+                p.real.setAutoCommit(true);
+            }
+            p.since = System.currentTimeMillis();
+            synchronized (idle) {
+                idle.push(p);
+            }
+        } catch (SQLException ex) {
+            discarded.increment();
+            discard(p);
+        } finally {
+            permits.release();
+        }
+        evictIdle();
+    }
+
+    private void discard(Pooled p) {
+        open.decrementAndGet();
+        p.closeStatements();
+        try {
+            p.real.close();
+        } catch (SQLException ignored) {
+            // already unusable
+        }
+    }
+
+    private Connection wrap(Pooled p) {
+        return (Connection) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new Lease(p));
+    }
+
+    private static boolean isClosedQuietly(ResultSet rs) {
+        try {
+            return rs.isClosed();
+        } catch (SQLException ex) {
+            return true;
+        }
+    }
+
+    private static void closeQuietly(Statement st) {
+        try {
+            st.close();
+        } catch (SQLException ignored) {
+            // the connection is going away or already broken
+        }
+    }
+
+    /**
+     * A physical connection, when it was last returned, and its cached
+     * prepared statements.
+     */
+    private final class Pooled {
+        final Connection real;
+        long since;
+        /**
+         * Idle statements by SQL, least recently returned first. A
+         * statement in use is not in the map, so preparing the same SQL
+         * twice at once gives two statements. Guarded by itself.
+         */
+        private final LinkedHashMap<String, PreparedStatement> statements = new LinkedHashMap<>();
+
+        Pooled(Connection real) {
+            this.real = real;
+        }
+
+        PreparedStatement takeStatement(String sql) {
+            synchronized (statements) {
+                return statements.remove(sql);
+            }
+        }
+
+        /** Keeps ps for reuse, closing whatever no longer fits. */
+        void putStatement(String sql, PreparedStatement ps) {
+            PreparedStatement extra;
+            synchronized (statements) {
+                extra = statements.put(sql, ps);
+                if (extra == null && statements.size() > statementCacheSize) {
+                    Iterator<PreparedStatement> eldest = statements.values().iterator();
+                    extra = eldest.next();
+                    eldest.remove();
+                }
+            }
+            if (extra != null) closeQuietly(extra);
+        }
+
+        void closeStatements() {
+            List<PreparedStatement> all;
+            synchronized (statements) {
+                all = new ArrayList<>(statements.values());
+                statements.clear();
+            }
+            all.forEach(ConnectionPool::closeQuietly);
+        }
+    }
+
+    /**
+     * Handler behind a borrowed connection: passes calls through until
+     * close(), which returns the connection instead of closing it.
+     * unwrap() only hands out the proxy itself, so the physical connection
+     * cannot be reached, closed or left in an odd state behind the pool's
+     * back. Statements it creates are wrapped too, so a connection error raised
+     * while executing one also marks the connection broken, and
+     * {@code prepareStatement(String)} is served from the connection's
+     * statement cache.
+     */
+    private final class Lease implements InvocationHandler {
+        private final Pooled pooled;
+        private boolean returned;
+        private volatile boolean broken;
+
+        Lease(Pooled pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    synchronized (this) {
+                        if (returned) return null;
+                        returned = true;
+                    }
+                    giveBack(pooled, broken);
+                    return null;
+                case "isClosed":
+                    synchronized (this) {
+                        if (returned) return true;
+                    }
+                    break;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled " + pooled.real;
+                default:
+                    synchronized (this) {
+                        if (returned) throw new SQLException("Connection was returned to the pool");
+                    }
+            }
+            if (method.getName().equals("unwrap")) {
+                Class<?> iface = (Class<?>) args[0];
+                if (iface.isInstance(proxy)) return proxy;
+                throw new SQLException("A pooled connection cannot be unwrapped to " + iface.getName());
+            }
+            if (method.getName().equals("isWrapperFor")) {
+                return ((Class<?>) args[0]).isInstance(proxy);
+            }
+            if (statementCacheSize > 0 && method.getName().equals("prepareStatement")
+                    && args.length == 1) {
+                return prepareCached((Connection) proxy, (String) args[0], method, args);
+            }
+            Object result = call(pooled.real, method, args);
+            if (result instanceof Statement && method.getReturnType().isInterface()) {
+                return Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+                        new Class<?>[]{method.getReturnType()},
+                        new StatementHandler((Connection) proxy, (Statement) result, null));
+            }
+            return result;
+        }
+
+        /**
+         * Returns a cached statement for sql, or prepares one. Closing the
+         * returned statement resets it and puts it back in the cache
+         * instead of closing it.
+         */
+        private PreparedStatement prepareCached(Connection owner, String sql, Method method,
+                                                Object[] args) throws Throwable {
+            PreparedStatement ps = pooled.takeStatement(sql);
+            if (ps != null) {
+                statementHits.increment();
+            } else {
+                statementMisses.increment();
+                ps = (PreparedStatement) call(pooled.real, method, args);
+            }
+            return (PreparedStatement) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class}, new StatementHandler(owner, ps, sql));
+        }
+
+        /**
+         * Puts a cached statement back in the cache as a fresh one: open
+         * results closed, parameters and batch cleared, and any limits the
+         * caller set back at the JDBC defaults, so the next borrower does
+         * not inherit, say, a streaming fetch size.
+         */
+        private void recycle(StatementHandler h) {
+            PreparedStatement ps = (PreparedStatement) h.target;
+            if (broken) {
+                closeQuietly(ps);
+                return;
+            }
+            try {
+                for (ResultSet rs : h.results) rs.close();
+                ps.clearParameters();
+                ps.clearBatch();
+                if (h.limitsChanged) {
+                    ps.setFetchSize(0);
+                    ps.setFetchDirection(ResultSet.FETCH_FORWARD);
+                    ps.setMaxRows(0);
+                    ps.setMaxFieldSize(0);
+                    ps.setQueryTimeout(0);
+                }
+                pooled.putStatement(h.cachedSql, ps);
+            } catch (SQLException ex) {
+                closeQuietly(ps);
+            }
+        }
+
+        /**
+         * Handler behind a statement of the lease. getConnection() and the
+         * getStatement() of its result sets return the proxies, so no
+         * caller can reach, and close, the physical connection. For a
+         * cached statement (cachedSql set) close() recycles it.
+         */
+        private final class StatementHandler implements InvocationHandler {
+            final Connection owner;
+            final Statement target;
+            final String cachedSql;
+            /** Result sets to close on recycle; only kept for cached statements. */
+            final List<ResultSet> results = new ArrayList<>(1);
+            boolean limitsChanged;
+            private boolean closed;
+
+            StatementHandler(Connection owner, Statement target, String cachedSql) {
+                this.owner = owner;
+                this.target = target;
+                this.cachedSql = cachedSql;
+            }
+
+            @Override
+            public Object invoke(Object proxy, Method m, Object[] a) throws Throwable {
+                switch (m.getName()) {
+                    case "close":
+                        if (cachedSql == null) {
+                            closed = true;
+                            return call(target, m, a);
+                        }
+                        if (!closed) {
+                            closed = true;
+                            recycle(this);
+                        }
+                        return null;
+                    case "isClosed":
+                        return closed || target.isClosed();
+                    case "getConnection":
+                        return owner;
+                    case "equals":
+                        return proxy == a[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "setFetchSize":
+                    case "setFetchDirection":
+                    case "setMaxRows":
+                    case "setLargeMaxRows":
+                    case "setMaxFieldSize":
+                    case "setQueryTimeout":
+                        limitsChanged = true;
+                        break;
+                    default:
+                        break;
+                }
+                if (closed && cachedSql != null) throw new SQLException("Statement is closed");
+                Object result = call(target, m, a);
+                if (result instanceof ResultSet) {
+                    ResultSet rs = (ResultSet) result;
+                    if (cachedSql != null) {
+                        results.removeIf(ConnectionPool::isClosedQuietly);
+                        results.add(rs);
+                    }
+                    return Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+                            new Class<?>[]{ResultSet.class}, (p, rm, ra) ->
+                                    rm.getName().equals("getStatement") ? proxy : call(rs, rm, ra));
+                }
+                return result;
+            }
+        }
+
+        private Object call(Object target, Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException ex) {
+                Throwable cause = ex.getCause();
+                if (cause instanceof SQLException) {
+                    String state = ((SQLException) cause).getSQLState();
+                    if (state != null && state.startsWith("08")) broken = true;
+                }
+                throw cause;
+            }
+        }
+    }
+}
@@ -1,19 +1,61 @@
 package com.example.coffeedms;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.sql.*;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * JDBC-backed repository for CoffeeBean, using MySQL.
  * Attempts both modern and legacy driver class names.
+ * Each call borrows a connection from a {@link ConnectionPool}, so
+ * threads can read and write in parallel.
  */
-public class DBBeanRepository {
-    private final Connection conn;
+public class DBBeanRepository implements AutoCloseable {
+    /** Rows sent to the server per executeBatch call. */
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+    /** Rows inserted by an import between commits. */
+    public static final int DEFAULT_COMMIT_ROWS = 20_000;
+    /** Rows fetched per round trip by {@link #streamAll()}. */
+    public static final int DEFAULT_FETCH_SIZE = 1000;
+    /**
+     * Fetch size that makes MySQL Connector/J stream rows one at a time
+     * instead of reading the whole result before returning it.
+     */
+    public static final int FETCH_ROW_BY_ROW = Integer.MIN_VALUE;
+    /** Most bean_ids per locking lookup before an insert batch. */
+    static final int MAX_LOOKUP_IDS = 1000;
+    private static final String INSERT_SQL = "INSERT INTO bean_lots VALUES(?,?,?,?,?,?,?,?,?)";
+    private static final String UPDATE_SQL = "UPDATE bean_lots SET origin=?, farm=?, roast_level=?,"
+            + " roast_date=?, quantity_kg=?, cost_per_kg=?, notes=?, caffeine_mg_per_g=?"
+            + " WHERE bean_id=?";
+    private static final String DELETE_SQL = "DELETE FROM bean_lots WHERE bean_id=?";
+    private static final String ADJUST_SQL = "UPDATE bean_lots SET quantity_kg = quantity_kg + ?"
+            + " WHERE bean_id=? AND quantity_kg + ? >= 0";
+
+    private final ConnectionPool pool;
+    private final BeanChangeDispatcher changes = new BeanChangeDispatcher();
 
     /**
+     * Connects to MySQL through a pool of up to
+     * {@link ConnectionPool#DEFAULT_MAX_SIZE} connections. One connection
+     * is opened right away so bad settings fail here.
+     *
      * @param url  JDBC URL (e.g. "jdbc:mysql://localhost:3306/coffee_dms")
      * @param user MySQL username
      * @param pass MySQL password
@@ -34,12 +76,41 @@ public class DBBeanRepository {
         String fullUrl = url.contains("?")
                 ? url + "&serverTimezone=UTC"
                 : url + "?serverTimezone=UTC";
-        conn = DriverManager.getConnection(fullUrl, user, pass);
+        pool = new ConnectionPool(() -> DriverManager.getConnection(fullUrl, user, pass));
+        pool.borrow().close();
+    }
+
+    /**
+     * Uses connections from the given pool, e.g. one backed by an
+     * embedded database. The bean_lots table must already exist.
+     *
+     * @param pool source of connections; closed by {@link #close()}
+     */
+    public DBBeanRepository(ConnectionPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * @return the connection pool, for its metrics
+     */
+    public ConnectionPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Stops change delivery, dropping the listeners, and closes the
+     * connection pool.
+     */
+    @Override
+    public void close() {
+        changes.close();
+        pool.close();
     }
 
     public List<CoffeeBean> findAll() throws SQLException {
         String sql = "SELECT * FROM bean_lots ORDER BY bean_id";
-        try (Statement st = conn.createStatement();
+        try (Connection conn = pool.borrow();
+             Statement st = conn.createStatement();
              ResultSet rs = st.executeQuery(sql)) {
             List<CoffeeBean> list = new ArrayList<>();
             while (rs.next()) list.add(mapRow(rs));
@@ -47,9 +118,61 @@ public class DBBeanRepository {
         }
     }
 
+    /**
+     * Same as {@link #streamAll(int)} with {@link #DEFAULT_FETCH_SIZE}.
+     *
+     * @return every lot in bean_id order; must be closed
+     * @throws SQLException if the query cannot be started
+     */
+    public Stream<CoffeeBean> streamAll() throws SQLException {
+        return streamAll(DEFAULT_FETCH_SIZE);
+    }
+
+    /**
+     * Returns every lot in bean_id order as a lazily read stream, so an
+     * export or report can walk the whole table in constant memory and
+     * see the first row as soon as the database sends it. Unlike
+     * {@link #findAll()}, nothing is collected on the client.
+     * <p>
+     * The stream holds a pooled connection until it is closed; use it in
+     * try-with-resources. It also releases the connection once the last
+     * row has been read. A database error while reading is thrown as
+     * {@link UncheckedSQLException}.
+     * <p>
+     * How much the driver reads ahead depends on the driver. MySQL
+     * Connector/J honours fetchSize only with {@code useCursorFetch=true}
+     * in the URL; otherwise pass {@link #FETCH_ROW_BY_ROW}, and the
+     * connection cannot run other queries until the stream is closed,
+     * which the pool guarantees. Drivers that only use cursors inside a
+     * transaction get one, since the query runs with autocommit off.
+     *
+     * @param fetchSize rows per round trip, 0 for the driver default, or
+     *                  {@link #FETCH_ROW_BY_ROW}
+     * @return every lot in bean_id order; must be closed
+     * @throws SQLException if the query cannot be started
+     */
+    public Stream<CoffeeBean> streamAll(int fetchSize) throws SQLException {
+        if (fetchSize < 0 && fetchSize != FETCH_ROW_BY_ROW) {
+            throw new IllegalArgumentException("fetchSize must not be negative");
+        }
+        RowCursor cursor = new RowCursor(pool.borrow());
+        try {
+            cursor.open("SELECT * FROM bean_lots ORDER BY bean_id", fetchSize);
+        } catch (SQLException | RuntimeException ex) {
+            try {
+                cursor.close();
+            } catch (UncheckedSQLException closeEx) {
+                ex.addSuppressed(closeEx.getCause());
+            }
+            throw ex;
+        }
+        return StreamSupport.stream(cursor, false).onClose(cursor::close);
+    }
+
     public CoffeeBean findByID(String id) throws SQLException {
         String sql = "SELECT * FROM bean_lots WHERE bean_id = ?";
-        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+        try (Connection conn = pool.borrow();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setString(1, id);
             try (ResultSet rs = ps.executeQuery()) {
                 return rs.next() ? mapRow(rs) : null;
@@ -58,60 +181,694 @@ public class DBBeanRepository {
     }
 
     public boolean add(CoffeeBean b) throws SQLException {
-        String sql = "INSERT INTO bean_lots VALUES(?,?,?,?,?,?,?,?,?)";
-        try (PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setString(1, b.getBeanID());
-            ps.setString(2, b.getOriginCountry());
-            ps.setString(3, b.getFarmName());
-            ps.setString(4, b.getRoastLevel().name());
-            ps.setDate(5, Date.valueOf(b.getRoastDate()));
-            ps.setDouble(6, b.getQuantityKg());
-            ps.setBigDecimal(7, b.getCostPerKg());
-            ps.setString(8, b.getFlavorNotes());
-            ps.setDouble(9, b.getCaffeineContentMgPerGram());
-            return ps.executeUpdate() == 1;
+        try (Connection conn = pool.borrow();
+             PreparedStatement ps = conn.prepareStatement(INSERT_SQL)) {
+            bindInsert(ps, b);
+            if (ps.executeUpdate() != 1) return false;
+        }
+        fire(BeanChangeEvent.added(b));
+        return true;
+    }
+
+    /**
+     * Inserts the beans with batched statements in one transaction.
+     * Beans whose bean_id already exists, in the table or earlier in
+     * beans, are skipped. Any other rejected row fails the whole call.
+     * Until it commits, other clients inserting the same bean_ids wait;
+     * two calls adding the same new lots at once may fail with a
+     * deadlock error instead.
+     *
+     * @param beans beans to add
+     * @return one outcome per bean, in iteration order: true if inserted
+     * @throws SQLException on database error; nothing is inserted
+     */
+    public boolean[] addAll(Collection<CoffeeBean> beans) throws SQLException {
+        boolean[] added = new boolean[beans.size()];
+        // the pool turns autocommit back on when the connection is returned
+        try (Connection conn = pool.borrow()) {
+            int isolation = lockGaps(conn);
+            conn.setAutoCommit(false);
+            try (PreparedStatement ps = conn.prepareStatement(INSERT_SQL)) {
+                List<CoffeeBean> chunk = new ArrayList<>(Math.min(beans.size(), DEFAULT_BATCH_SIZE));
+                int from = 0;
+                for (CoffeeBean b : beans) {
+                    chunk.add(b);
+                    if (chunk.size() == DEFAULT_BATCH_SIZE) {
+                        from = record(insertNew(conn, ps, chunk), added, from);
+                        chunk.clear();
+                    }
+                }
+                if (!chunk.isEmpty()) record(insertNew(conn, ps, chunk), added, from);
+                conn.commit();
+            } catch (SQLException | RuntimeException ex) {
+                conn.rollback();
+                throw ex;
+            } finally {
+                conn.setTransactionIsolation(isolation);
+            }
         }
+        fireApplied(beans, added, BeanChangeEvent::added);
+        return added;
+    }
+
+    /**
+     * Updates the beans with batched statements in one transaction.
+     *
+     * @param beans new versions of existing beans
+     * @return one outcome per bean, in iteration order: true if a row was updated
+     * @throws SQLException on database error; nothing is updated
+     */
+    public boolean[] updateAll(Collection<CoffeeBean> beans) throws SQLException {
+        boolean[] updated = batch(UPDATE_SQL, beans, DBBeanRepository::bindUpdate);
+        fireApplied(beans, updated, b -> BeanChangeEvent.updated(null, b));
+        return updated;
+    }
+
+    /**
+     * Deletes the lots with batched statements in one transaction.
+     *
+     * @param ids lots to remove
+     * @return one outcome per ID, in iteration order: true if a row was deleted
+     * @throws SQLException on database error; nothing is deleted
+     */
+    public boolean[] removeAll(Collection<String> ids) throws SQLException {
+        boolean[] removed = batch(DELETE_SQL, ids, (ps, id) -> ps.setString(1, id));
+        fireApplied(ids, removed, id -> BeanChangeEvent.removed(id, null));
+        return removed;
+    }
+
+    /**
+     * Streams a CSV file (same format as BeanRepository.loadFromFile)
+     * straight into bean_lots with batched inserts. Rows whose bean_id
+     * already exists, in the table or earlier in the file, are counted as
+     * duplicates and skipped.
+     *
+     * @param path filesystem path to CSV
+     * @return accepted count and a report of skipped lines
+     * @throws IOException if the file cannot be read or an insert fails
+     */
+    public ImportResult importFile(String path) throws IOException {
+        return importFile(path, new RejectReport());
+    }
+
+    /**
+     * Same as {@link #importFile(String)}, collecting skipped lines into
+     * the given report.
+     *
+     * @param path    filesystem path to CSV
+     * @param rejects collects skipped lines; flushed but not closed
+     * @return accepted count and the reject report
+     * @throws IOException if the file cannot be read or an insert fails
+     */
+    public ImportResult importFile(String path, RejectReport rejects) throws IOException {
+        return importFile(path, rejects, DEFAULT_BATCH_SIZE, DEFAULT_COMMIT_ROWS);
+    }
+
+    /**
+     * Streams a CSV file into bean_lots on one connection, sending rows
+     * batchSize at a time with addBatch/executeBatch and committing every
+     * commitRows rows, so a large file costs a round trip per batch rather
+     * than per row and does not hold one huge transaction. Each batch
+     * first looks up which of its bean_ids already exist; those lines are
+     * reported as duplicates, and the lookup locks the others until the
+     * next commit so no other client can insert them in between. A row the
+     * database refuses for any other reason (an overlong field, say) is
+     * reported as {@link RejectReason#REFUSED} and the import goes on.
+     * <p>
+     * If the import fails, rows committed before the failure stay in the
+     * table. That includes a deadlock with another import of the same
+     * lots: the database rolls back the open transaction, so the import
+     * stops rather than report those rows as accepted. With MySQL, adding
+     * {@code rewriteBatchedStatements=true} to the URL sends each batch as
+     * one multi-row INSERT, which is much faster; duplicates are still
+     * found, but one refused row then fails, and is reported for, its
+     * whole batch.
+     *
+     * @param path       filesystem path to CSV
+     * @param rejects    collects skipped lines; flushed but not closed
+     * @param batchSize  rows per executeBatch; at least 1
+     * @param commitRows rows between commits; at least 1
+     * @return accepted count and the reject report
+     * @throws IOException if the file cannot be read or an insert fails
+     */
+    public ImportResult importFile(String path, RejectReport rejects, int batchSize, int commitRows)
+            throws IOException {
+        if (batchSize < 1 || commitRows < 1) {
+            throw new IllegalArgumentException("batchSize and commitRows must be at least 1");
+        }
+        long start = System.nanoTime();
+        BatchLoader loader;
+        long lines;
+        long bytes;
+        try (FileChannel ch = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+             Connection conn = pool.borrow();
+             PreparedStatement ps = conn.prepareStatement(INSERT_SQL)) {
+            int isolation = lockGaps(conn);
+            conn.setAutoCommit(false);
+            loader = new BatchLoader(conn, ps, rejects, batchSize, commitRows);
+            try {
+                lines = new BeanCsvParser().parse(ch, loader);
+                loader.flush(true);
+            } catch (UncheckedIOException ex) {
+                throw ex.getCause();
+            } finally {
+                try {
+                    rejects.flush();
+                } finally {
+                    conn.setTransactionIsolation(isolation);
+                }
+            }
+            bytes = ch.size();
+        } catch (SQLException ex) {
+            throw new IOException("Import failed: " + ex.getMessage(), ex);
+        }
+        if (loader.accepted > 0) fire(BeanChangeEvent.bulkLoaded(loader.accepted));
+        return new ImportResult(lines, loader.accepted, rejects, bytes, System.nanoTime() - start);
     }
 
     public boolean update(CoffeeBean b) throws SQLException {
-        String sql = "UPDATE bean_lots SET origin=?, farm=?, roast_level=?, roast_date=?,"
-                + " quantity_kg=?, cost_per_kg=?, notes=?, caffeine_mg_per_g=?"
-                + " WHERE bean_id=?";
-        try (PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setString(1, b.getOriginCountry());
-            ps.setString(2, b.getFarmName());
-            ps.setString(3, b.getRoastLevel().name());
-            ps.setDate(4, Date.valueOf(b.getRoastDate()));
-            ps.setDouble(5, b.getQuantityKg());
-            ps.setBigDecimal(6, b.getCostPerKg());
-            ps.setString(7, b.getFlavorNotes());
-            ps.setDouble(8, b.getCaffeineContentMgPerGram());
-            ps.setString(9, b.getBeanID());
+        try (Connection conn = pool.borrow();
+             PreparedStatement ps = conn.prepareStatement(UPDATE_SQL)) {
+            bindUpdate(ps, b);
+            if (ps.executeUpdate() != 1) return false;
+        }
+        fire(BeanChangeEvent.updated(null, b));
+        return true;
+    }
+
+    /**
+     * Adds deltaKg to a lot's quantity with a single UPDATE, so concurrent
+     * movements on the same lot are applied by the database one after
+     * another instead of overwriting each other. A change that would
+     * leave the quantity negative is refused.
+     * <p>
+     * When a change listener is registered, the lot is first read with
+     * SELECT ... FOR UPDATE in the same transaction, so the UPDATED event
+     * carries exactly this change and not a later writer's.
+     *
+     * @param id      lot to change
+     * @param deltaKg kilograms to add (negative to take away)
+     * @return true if the lot exists and the change was applied
+     * @throws SQLException on database error
+     */
+    public boolean adjustQuantity(String id, double deltaKg) throws SQLException {
+        if (!Double.isFinite(deltaKg)) {
+            throw new IllegalArgumentException("deltaKg must be finite");
+        }
+        if (changes.isActive()) return adjustAndFire(id, deltaKg);
+        try (Connection conn = pool.borrow();
+             PreparedStatement ps = conn.prepareStatement(ADJUST_SQL)) {
+            bindAdjust(ps, id, deltaKg);
             return ps.executeUpdate() == 1;
         }
     }
 
+    /** adjustQuantity for when the UPDATED event is needed. */
+    private boolean adjustAndFire(String id, double deltaKg) throws SQLException {
+        CoffeeBean before;
+        // the pool turns autocommit back on when the connection is returned
+        try (Connection conn = pool.borrow()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement lock = conn.prepareStatement(
+                         "SELECT * FROM bean_lots WHERE bean_id = ? FOR UPDATE");
+                 PreparedStatement ps = conn.prepareStatement(ADJUST_SQL)) {
+                lock.setString(1, id);
+                try (ResultSet rs = lock.executeQuery()) {
+                    before = rs.next() ? mapRow(rs) : null;
+                }
+                bindAdjust(ps, id, deltaKg);
+                if (before == null || ps.executeUpdate() != 1) {
+                    conn.rollback();
+                    return false;
+                }
+                conn.commit();
+            } catch (SQLException | RuntimeException ex) {
+                conn.rollback();
+                throw ex;
+            }
+        }
+        CoffeeBean after = BeanRepository.adjusted(before, deltaKg);
+        fire(BeanChangeEvent.updated(before, after));
+        return true;
+    }
+
+    private static void bindAdjust(PreparedStatement ps, String id, double deltaKg) throws SQLException {
+        ps.setDouble(1, deltaKg);
+        ps.setString(2, id);
+        ps.setDouble(3, deltaKg);
+    }
+
+    /**
+     * @param id lot to change
+     * @param kg kilograms received; must not be negative
+     * @return true if the lot exists
+     * @throws SQLException on database error
+     */
+    public boolean receive(String id, double kg) throws SQLException {
+        return adjustQuantity(id, BeanRepository.checkAmount(kg));
+    }
+
+    /**
+     * @param id lot to change
+     * @param kg kilograms consumed; must not be negative
+     * @return true if the lot exists and held at least kg
+     * @throws SQLException on database error
+     */
+    public boolean consume(String id, double kg) throws SQLException {
+        return adjustQuantity(id, -BeanRepository.checkAmount(kg));
+    }
+
     public boolean removeByID(String id) throws SQLException {
-        String sql = "DELETE FROM bean_lots WHERE bean_id=?";
-        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+        try (Connection conn = pool.borrow();
+             PreparedStatement ps = conn.prepareStatement(DELETE_SQL)) {
             ps.setString(1, id);
-            return ps.executeUpdate() == 1;
+            if (ps.executeUpdate() != 1) return false;
+        }
+        fire(BeanChangeEvent.removed(id, null));
+        return true;
+    }
+
+    /**
+     * Registers a listener for every later change made through this
+     * repository (not by other clients of the database). Listeners are
+     * called in batches on a dispatcher thread; an import arrives as one
+     * BULK_LOADED event. Updates carry no previous version and removals
+     * only the bean_id, since reading them would cost a query.
+     *
+     * @param listener receives change batches
+     */
+    public void addChangeListener(BeanChangeListener listener) {
+        changes.addListener(listener);
+    }
+
+    public void removeChangeListener(BeanChangeListener listener) {
+        changes.removeListener(listener);
+    }
+
+    /**
+     * Returns one page of lots in bean_id order, keyed on the last
+     * bean_id of the previous page (null for the first page). The
+     * database seeks the primary key index to the cursor, so a page costs
+     * the same wherever it is, and concurrent inserts do not shift it.
+     *
+     * @param afterBeanID last bean_id of the previous page, or null
+     * @param limit       most rows to return; at least 1
+     * @return up to limit lots with bean_id after afterBeanID
+     * @throws SQLException on database error
+     */
+    public List<CoffeeBean> findPage(String afterBeanID, int limit) throws SQLException {
+        BeanRepository.checkLimit(limit);
+        String sql = afterBeanID == null
+                ? "SELECT * FROM bean_lots ORDER BY bean_id LIMIT ?"
+                : "SELECT * FROM bean_lots WHERE bean_id > ? ORDER BY bean_id LIMIT ?";
+        try (Connection conn = pool.borrow();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            int i = 1;
+            if (afterBeanID != null) ps.setString(i++, afterBeanID);
+            ps.setInt(i, limit);
+            try (ResultSet rs = ps.executeQuery()) {
+                List<CoffeeBean> list = new ArrayList<>(Math.min(limit, 1024));
+                while (rs.next()) list.add(mapRow(rs));
+                return list;
+            }
+        }
+    }
+
+    /**
+     * @param n most rows to return
+     * @return the n lots with the highest value (quantity × cost)
+     * @throws SQLException on database error
+     */
+    public List<CoffeeBean> mostValuable(int n) throws SQLException {
+        return ranked("quantity_kg * cost_per_kg DESC", n);
+    }
+
+    /**
+     * @param n most rows to return
+     * @return the n lots with the earliest roast dates, oldest first
+     * @throws SQLException on database error
+     */
+    public List<CoffeeBean> oldestRoasts(int n) throws SQLException {
+        return ranked("roast_date", n);
+    }
+
+    /**
+     * @param n most rows to return
+     * @return the n lots with the highest caffeine content
+     * @throws SQLException on database error
+     */
+    public List<CoffeeBean> highestCaffeine(int n) throws SQLException {
+        return ranked("caffeine_mg_per_g DESC", n);
+    }
+
+    /** Lets the database pick the top n rows; ties are broken by bean_id. */
+    private List<CoffeeBean> ranked(String orderBy, int n) throws SQLException {
+        if (n < 0) throw new IllegalArgumentException("n must not be negative");
+        String sql = "SELECT * FROM bean_lots ORDER BY " + orderBy + ", bean_id LIMIT ?";
+        try (Connection conn = pool.borrow();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, n);
+            try (ResultSet rs = ps.executeQuery()) {
+                List<CoffeeBean> list = new ArrayList<>();
+                while (rs.next()) list.add(mapRow(rs));
+                return list;
+            }
         }
     }
 
     public BigDecimal calculateTotalInventoryValue() throws SQLException {
         String sql = "SELECT SUM(quantity_kg * cost_per_kg) AS total FROM bean_lots";
-        try (Statement st = conn.createStatement();
+        try (Connection conn = pool.borrow();
+             Statement st = conn.createStatement();
              ResultSet rs = st.executeQuery(sql)) {
             return rs.next() ? rs.getBigDecimal("total") : BigDecimal.ZERO;
         }
     }
 
+    /**
+     * Binds each item into sql and sends the statements DEFAULT_BATCH_SIZE at a
+     * time inside one transaction, rolled back if any batch fails.
+     * A driver that reports SUCCESS_NO_INFO (MySQL with
+     * rewriteBatchedStatements) gives no per-row count, so those rows
+     * are reported as applied.
+     */
+    private <T> boolean[] batch(String sql, Collection<? extends T> items, Binder<T> binder)
+            throws SQLException {
+        boolean[] applied = new boolean[items.size()];
+        // the pool turns autocommit back on when the connection is returned
+        try (Connection conn = pool.borrow()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                int sent = 0;
+                int pending = 0;
+                for (T item : items) {
+                    binder.bind(ps, item);
+                    ps.addBatch();
+                    if (++pending == DEFAULT_BATCH_SIZE) {
+                        sent = record(ps.executeBatch(), applied, sent);
+                        pending = 0;
+                    }
+                }
+                if (pending > 0) record(ps.executeBatch(), applied, sent);
+                conn.commit();
+                return applied;
+            } catch (SQLException | RuntimeException ex) {
+                conn.rollback();
+                throw ex;
+            }
+        }
+    }
+
+    /**
+     * Inserts a chunk of beans on conn with the INSERT_SQL statement
+     * insert, skipping beans whose bean_id is already in the table or
+     * earlier in the chunk. Those are found by a locking read, which at
+     * the isolation {@link #lockGaps(Connection)} sets also locks the
+     * bean_ids that are missing: another client inserting one of them
+     * waits until this transaction ends, so every row sent here is new.
+     * (ON DUPLICATE KEY UPDATE could not tell a skipped row from an
+     * inserted one in Connector/J's default found-rows mode.)
+     *
+     * @return per bean: 1 if inserted, 0 if a duplicate
+     * @throws BatchUpdateException if a row is rejected; its update counts
+     *         then hold one entry per bean, EXECUTE_FAILED for the rejected
+     *         and unexecuted ones
+     */
+    private static int[] insertNew(Connection conn, PreparedStatement insert, List<CoffeeBean> chunk)
+            throws SQLException {
+        Set<String> skip = existingIDs(conn, chunk);
+        int[] status = new int[chunk.size()];
+        int[] batched = new int[chunk.size()];
+        int n = 0;
+        for (int i = 0; i < chunk.size(); i++) {
+            CoffeeBean b = chunk.get(i);
+            if (!skip.add(b.getBeanID())) continue;
+            bindInsert(insert, b);
+            insert.addBatch();
+            batched[n++] = i;
+        }
+        if (n == 0) return status;
+        int[] counts;
+        BatchUpdateException failure = null;
+        try {
+            counts = insert.executeBatch();
+        } catch (BatchUpdateException ex) {
+            counts = ex.getUpdateCounts() == null ? new int[0] : ex.getUpdateCounts();
+            failure = ex;
+        }
+        for (int k = 0; k < n; k++) {
+            int c = k < counts.length ? counts[k] : Statement.EXECUTE_FAILED;
+            status[batched[k]] = c == Statement.EXECUTE_FAILED ? c
+                    : c > 0 || c == Statement.SUCCESS_NO_INFO ? 1 : 0;
+        }
+        if (failure != null) {
+            throw new BatchUpdateException(failure.getMessage(), failure.getSQLState(),
+                    failure.getErrorCode(), status, failure);
+        }
+        return status;
+    }
+
+    /**
+     * Raises conn to REPEATABLE READ, the level at which InnoDB's locking
+     * reads also lock the gaps where missing keys would go. Call before
+     * the transaction starts.
+     *
+     * @return the level to restore afterwards
+     */
+    private static int lockGaps(Connection conn) throws SQLException {
+        int isolation = conn.getTransactionIsolation();
+        if (isolation < Connection.TRANSACTION_REPEATABLE_READ) {
+            conn.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+        }
+        return isolation;
+    }
+
+    /**
+     * @return the bean_ids of chunk that are already in bean_lots, locking
+     *         those rows and the gaps of the others until the transaction ends
+     */
+    private static Set<String> existingIDs(Connection conn, List<CoffeeBean> chunk) throws SQLException {
+        Set<String> found = new HashSet<>();
+        // MySQL takes at most 65,535 placeholders per statement, so a large
+        // batch is looked up MAX_LOOKUP_IDS at a time
+        for (int from = 0; from < chunk.size(); from += MAX_LOOKUP_IDS) {
+            List<CoffeeBean> part = chunk.subList(from, Math.min(chunk.size(), from + MAX_LOOKUP_IDS));
+            StringBuilder sql = new StringBuilder("SELECT bean_id FROM bean_lots WHERE bean_id IN (?");
+            for (int i = 1; i < part.size(); i++) sql.append(",?");
+            sql.append(") FOR UPDATE");
+            try (PreparedStatement ps = conn.prepareStatement(sql.toString())) {
+                for (int i = 0; i < part.size(); i++) ps.setString(i + 1, part.get(i).getBeanID());
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) found.add(rs.getString(1));
+                }
+            }
+        }
+        return found;
+    }
+
+    /** Used by tests to wait for delivery. */
+    BeanChangeDispatcher changes() {
+        return changes;
+    }
+
+    private void fire(BeanChangeEvent event) {
+        if (changes.isActive()) changes.publish(event);
+    }
+
+    private <T> void fireApplied(Collection<? extends T> items, boolean[] applied,
+                                 Function<T, BeanChangeEvent> event) {
+        if (!changes.isActive()) return;
+        int i = 0;
+        for (T item : items) {
+            if (applied[i++]) changes.publish(event.apply(item));
+        }
+    }
+
+    private static int record(int[] counts, boolean[] applied, int from) {
+        for (int i = 0; i < counts.length; i++) {
+            applied[from + i] = counts[i] > 0 || counts[i] == Statement.SUCCESS_NO_INFO;
+        }
+        return from + counts.length;
+    }
+
+    private static void bindInsert(PreparedStatement ps, CoffeeBean b) throws SQLException {
+        ps.setString(1, b.getBeanID());
+        ps.setString(2, b.getOriginCountry());
+        ps.setString(3, b.getFarmName());
+        ps.setString(4, b.getRoastLevel().name());
+        ps.setDate(5, Date.valueOf(b.getRoastDate()));
+        ps.setDouble(6, b.getQuantityKg());
+        ps.setBigDecimal(7, b.getCostPerKg());
+        ps.setString(8, b.getFlavorNotes());
+        ps.setDouble(9, b.getCaffeineContentMgPerGram());
+    }
+
+    private static void bindUpdate(PreparedStatement ps, CoffeeBean b) throws SQLException {
+        ps.setString(1, b.getOriginCountry());
+        ps.setString(2, b.getFarmName());
+        ps.setString(3, b.getRoastLevel().name());
+        ps.setDate(4, Date.valueOf(b.getRoastDate()));
+        ps.setDouble(5, b.getQuantityKg());
+        ps.setBigDecimal(6, b.getCostPerKg());
+        ps.setString(7, b.getFlavorNotes());
+        ps.setDouble(8, b.getCaffeineContentMgPerGram());
+        ps.setString(9, b.getBeanID());
+    }
+
+    /**
+     * Collects parsed beans into batches for insertNew, and records which
+     * lines turned out to be duplicates or refused once each batch has run.
+     */
+    private static final class BatchLoader implements BeanCsvParser.LineHandler {
+        private final Connection conn;
+        private final PreparedStatement ps;
+        private final RejectReport rejects;
+        private final int batchSize;
+        private final int commitRows;
+        private final List<CoffeeBean> pending;
+        private final long[] pendingLines;
+        private long uncommitted;
+        long accepted;
+
+        BatchLoader(Connection conn, PreparedStatement ps, RejectReport rejects,
+                    int batchSize, int commitRows) {
+            this.conn = conn;
+            this.ps = ps;
+            this.rejects = rejects;
+            this.batchSize = batchSize;
+            this.commitRows = commitRows;
+            this.pending = new ArrayList<>(batchSize);
+            this.pendingLines = new long[batchSize];
+        }
+
+        @Override
+        public void bean(long lineNo, CoffeeBean bean) {
+            try {
+                pendingLines[pending.size()] = lineNo;
+                pending.add(bean);
+                if (pending.size() == batchSize) flush(false);
+            } catch (SQLException | IOException ex) {
+                throw new UncheckedIOException(new IOException(
+                        "Import stopped near line " + lineNo + ": " + ex.getMessage(), ex));
+            }
+        }
+
+        @Override
+        public void malformed(long lineNo, RejectReason reason, Supplier<String> line) {
+            try {
+                rejects.record(lineNo, reason, line);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        /**
+         * Runs the pending batch, then commits if enough rows are waiting
+         * or last is set. A connection error (SQLState class 08) or a
+         * rolled-back transaction (class 40, such as a deadlock) stops the
+         * import, since the uncommitted rows already counted as accepted
+         * are gone; other refused rows are reported.
+         */
+        void flush(boolean last) throws SQLException, IOException {
+            if (!pending.isEmpty()) {
+                int[] status;
+                String refusal = null;
+                try {
+                    status = insertNew(conn, ps, pending);
+                } catch (BatchUpdateException ex) {
+                    String state = ex.getSQLState();
+                    if (state != null && (state.startsWith("08") || state.startsWith("40"))) throw ex;
+                    status = ex.getUpdateCounts();
+                    refusal = ex.getMessage();
+                }
+                for (int i = 0; i < pending.size(); i++) {
+                    String id = pending.get(i).getBeanID();
+                    if (status[i] == 1) {
+                        accepted++;
+                        uncommitted++;
+                    } else if (status[i] == 0) {
+                        rejects.record(pendingLines[i], RejectReason.DUPLICATE_ID, () -> id);
+                    } else {
+                        String why = refusal;
+                        rejects.record(pendingLines[i], RejectReason.REFUSED, () -> id + ": " + why);
+                    }
+                }
+                pending.clear();
+            }
+            if (uncommitted >= commitRows || (last && uncommitted > 0)) {
+                conn.commit();
+                uncommitted = 0;
+            }
+        }
+    }
+
+    /**
+     * Reads a forward-only result set one row per tryAdvance, and closes
+     * it with its statement and connection when the rows run out or the
+     * stream is closed, whichever comes first.
+     */
+    private final class RowCursor extends Spliterators.AbstractSpliterator<CoffeeBean> {
+        private final Connection conn;
+        private Statement st;
+        private ResultSet rs;
+        private boolean closed;
+
+        RowCursor(Connection conn) {
+            super(Long.MAX_VALUE, ORDERED | NONNULL);
+            this.conn = conn;
+        }
+
+        void open(String sql, int fetchSize) throws SQLException {
+            conn.setAutoCommit(false);
+            st = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            st.setFetchSize(fetchSize);
+            rs = st.executeQuery(sql);
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super CoffeeBean> action) {
+            if (closed) return false;
+            try {
+                if (!rs.next()) {
+                    close();
+                    return false;
+                }
+                action.accept(mapRow(rs));
+                return true;
+            } catch (SQLException ex) {
+                throw new UncheckedSQLException("Reading bean_lots failed", ex);
+            }
+        }
+
+        /** Closes the result set, statement and connection; safe to repeat. */
+        void close() {
+            if (closed) return;
+            closed = true;
+            SQLException failure = null;
+            for (AutoCloseable c : new AutoCloseable[]{rs, st, conn}) {
+                if (c == null) continue;
+                try {
+                    c.close();
+                } catch (Exception ex) {
+                    if (failure == null) failure = ex instanceof SQLException
+                            ? (SQLException) ex : new SQLException(ex);
+                    else failure.addSuppressed(ex);
+                }
+            }
+            if (failure != null) throw new UncheckedSQLException(failure);
+        }
+    }
+
+    /** Sets the parameters of a batched statement from one item. */
+    private interface Binder<T> {
+        void bind(PreparedStatement ps, T item) throws SQLException;
+    }
+
     private CoffeeBean mapRow(ResultSet rs) throws SQLException {
         return new CoffeeBean(
                 rs.getString("bean_id"),
-                rs.getString("origin"),
-                rs.getString("farm"),
+                StringPool.SHARED.canonical(rs.getString("origin")),
+                StringPool.SHARED.canonical(rs.getString("farm")),
                 RoastLevel.valueOf(rs.getString("roast_level")),
                 rs.getDate("roast_date").toLocalDate(),
                 rs.getDouble("quantity_kg"),
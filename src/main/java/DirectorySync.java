@@ -0,0 +1,35 @@
+package com.example.coffeedms;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Makes renames, creations and deletions in a directory durable. A file
+ * renamed over another is only safe from a power loss once its
+ * directory has been fsynced too, not just the file itself.
+ */
+final class DirectorySync {
+    private DirectorySync() {
+    }
+
+    /**
+     * Fsyncs dir. Does nothing where directories cannot be opened
+     * (Windows), since the rename is durable there already.
+     *
+     * @param dir directory whose entries changed
+     * @throws IOException if the fsync fails
+     */
+    static void force(Path dir) throws IOException {
+        FileChannel ch;
+        try {
+            ch = FileChannel.open(dir, StandardOpenOption.READ);
+        } catch (IOException ex) {
+            return;
+        }
+        try (FileChannel c = ch) {
+            c.force(true);
+        }
+    }
+}
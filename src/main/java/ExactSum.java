@@ -0,0 +1,291 @@
+package com.example.coffeedms;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.TreeMap;
+
+/**
+ * Running decimal sum that supports removing terms and always reports
+ * exactly what summing the current terms from BigDecimal.ZERO would give,
+ * including the scale (the largest term scale, at least 0).
+ * <p>
+ * Terms are normally accumulated as a long count of 10^-scale units, so
+ * adding a fixed-point term ({@link #add(long, int)} or a {@link Term})
+ * allocates nothing.
+ * Terms or totals that overflow a long spill into a BigDecimal; a
+ * BigDecimal is only built when the sum is read.
+ */
+final class ExactSum {
+    /** Powers of ten that fit in a long. */
+    static final long[] POW10 = new long[19];
+    /** Term scales below this are counted in an array, the rest in a map. */
+    private static final int SCALE_SLOTS = 20;
+
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++) {
+            POW10[i] = POW10[i - 1] * 10;
+        }
+    }
+
+    /**
+     * A term as unscaled × 10^-scale, or as a BigDecimal when it does not
+     * fit a long. Meant to be reused, so working a term out with
+     * {@link #ofDouble} or {@link #ofValue} allocates nothing in the
+     * common case; {@link #ofProduct} has to unpack its BigDecimal first.
+     */
+    static final class Term {
+        long unscaled;
+        int scale;
+        /** The term itself when it does not fit a long, otherwise null. */
+        BigDecimal big;
+
+        /** Sets this term to BigDecimal.valueOf(d). */
+        Term ofDouble(double d) {
+            int s = shortScale(d);
+            if (s < 0) {
+                big = BigDecimal.valueOf(d);
+            } else {
+                unscaled = Math.round(d * POW10[s]);
+                scale = s;
+                big = null;
+            }
+            return this;
+        }
+
+        /** Sets this term to cost × BigDecimal.valueOf(d). */
+        Term ofProduct(BigDecimal cost, double d) {
+            boolean fixed = cost.precision() < 19;
+            return ofProduct(fixed ? cost.unscaledValue().longValue() : 0, cost.scale(), fixed, cost, d);
+        }
+
+        /**
+         * Sets this term to the value of a lot, {@link CoffeeBean#calculateValue()},
+         * from the cost digits the bean keeps.
+         */
+        Term ofValue(CoffeeBean b) {
+            return ofProduct(b.costUnits(), b.costScale(), b.isCostFixed(), b.getCostPerKg(), b.getQuantityKg());
+        }
+
+        /** @param fixed whether cost is cu × 10^-cs */
+        private Term ofProduct(long cu, int cs, boolean fixed, BigDecimal cost, double d) {
+            int s = fixed ? shortScale(d) : -1;
+            if (s >= 0) {
+                long du = Math.round(d * POW10[s]);
+                long u = cu * du;
+                long sc = (long) cs + s;
+                if (Math.multiplyHigh(cu, du) == (u >> 63) && sc == (int) sc) {
+                    unscaled = u;
+                    scale = (int) sc;
+                    big = null;
+                    return this;
+                }
+            }
+            big = cost.multiply(BigDecimal.valueOf(d));
+            return this;
+        }
+
+        BigDecimal toBigDecimal() {
+            return big != null ? big : BigDecimal.valueOf(unscaled, scale);
+        }
+    }
+
+    /**
+     * Works out the value of a lot as {@link Term#ofValue} does, building
+     * only the result.
+     *
+     * @return cost × BigDecimal.valueOf(quantityKg) of b
+     */
+    static BigDecimal value(CoffeeBean b) {
+        double d = b.getQuantityKg();
+        int s = b.isCostFixed() ? shortScale(d) : -1;
+        if (s >= 0) {
+            long du = Math.round(d * POW10[s]);
+            long u = b.costUnits() * du;
+            long sc = (long) b.costScale() + s;
+            if (Math.multiplyHigh(b.costUnits(), du) == (u >> 63) && sc == (int) sc) {
+                return BigDecimal.valueOf(u, (int) sc);
+            }
+        }
+        return b.getCostPerKg().multiply(BigDecimal.valueOf(d));
+    }
+
+    /**
+     * Compares two terms by value, like BigDecimal.compareTo. Allocates
+     * nothing unless a term does not fit a long or lining up the scales
+     * overflows.
+     */
+    static int compare(Term a, Term b) {
+        if (a.big == null && b.big == null) {
+            long shift = (long) a.scale - b.scale;
+            if (shift == 0) return Long.compare(a.unscaled, b.unscaled);
+            if (shift > 0 && shift < POW10.length) {
+                long bu = b.unscaled * POW10[(int) shift];
+                if (Math.multiplyHigh(b.unscaled, POW10[(int) shift]) == (bu >> 63)) {
+                    return Long.compare(a.unscaled, bu);
+                }
+            } else if (shift < 0 && -shift < POW10.length) {
+                long au = a.unscaled * POW10[(int) -shift];
+                if (Math.multiplyHigh(a.unscaled, POW10[(int) -shift]) == (au >> 63)) {
+                    return Long.compare(au, b.unscaled);
+                }
+            }
+        }
+        return a.toBigDecimal().compareTo(b.toBigDecimal());
+    }
+
+    private long units;
+    private int unitScale;
+    /** Part of the sum that did not fit units; null while unused. */
+    private BigDecimal spill;
+    /** max(0, scale) of each current term → number of terms with that scale. */
+    private final int[] scaleCounts = new int[SCALE_SLOTS];
+    private TreeMap<Integer, Integer> wideScales;
+    private int terms;
+
+    /** Adds the term unscaled × 10^-scale. */
+    void add(long unscaled, int scale) {
+        accumulate(unscaled, scale);
+        count(scale, 1);
+    }
+
+    /** Removes a term previously added with {@link #add(long, int)}. */
+    void subtract(long unscaled, int scale) {
+        if (unscaled == Long.MIN_VALUE) {
+            accumulate(BigDecimal.valueOf(unscaled, scale).negate());
+        } else {
+            accumulate(-unscaled, scale);
+        }
+        count(scale, -1);
+    }
+
+    void add(Term t) {
+        if (t.big == null) {
+            add(t.unscaled, t.scale);
+        } else {
+            add(t.big);
+        }
+    }
+
+    /** Removes a term previously added with {@link #add(Term)}. */
+    void subtract(Term t) {
+        if (t.big == null) {
+            subtract(t.unscaled, t.scale);
+        } else {
+            subtract(t.big);
+        }
+    }
+
+    void add(BigDecimal v) {
+        accumulate(v);
+        count(v.scale(), 1);
+    }
+
+    void subtract(BigDecimal v) {
+        accumulate(v.negate());
+        count(v.scale(), -1);
+    }
+
+    /** Adds every term of another sum. */
+    void addAll(ExactSum other) {
+        accumulate(other.units, other.unitScale);
+        if (other.spill != null) accumulate(other.spill);
+        for (int i = 0; i < SCALE_SLOTS; i++) {
+            scaleCounts[i] += other.scaleCounts[i];
+        }
+        if (other.wideScales != null) {
+            other.wideScales.forEach((scale, n) -> wide().merge(scale, n, Integer::sum));
+        }
+        terms += other.terms;
+    }
+
+    /**
+     * @return number of terms currently summed
+     */
+    int terms() {
+        return terms;
+    }
+
+    BigDecimal get() {
+        if (terms == 0) return BigDecimal.ZERO;
+        BigDecimal sum = BigDecimal.valueOf(units, unitScale);
+        if (spill != null) sum = sum.add(spill);
+        // every remaining term fits this scale, so no rounding can occur
+        int scale = maxScale();
+        return sum.scale() == scale ? sum : sum.setScale(scale, RoundingMode.UNNECESSARY);
+    }
+
+    private void accumulate(long unscaled, int scale) {
+        try {
+            long u = unscaled;
+            int sc = scale;
+            if (sc < 0) {
+                // 4E+2 → 400 at scale 0
+                u = Math.multiplyExact(u, pow10(-sc));
+                sc = 0;
+            }
+            if (sc > unitScale) {
+                units = Math.multiplyExact(units, pow10(sc - unitScale));
+                unitScale = sc;
+            } else if (sc < unitScale) {
+                u = Math.multiplyExact(u, pow10(unitScale - sc));
+            }
+            units = Math.addExact(units, u);
+        } catch (ArithmeticException overflow) {
+            accumulate(BigDecimal.valueOf(unscaled, scale));
+        }
+    }
+
+    private void accumulate(BigDecimal v) {
+        spill = spill == null ? v : spill.add(v);
+    }
+
+    /**
+     * Returns the scale BigDecimal.valueOf(d) has when d is the double
+     * nearest to a decimal with at most 9 fraction digits and fewer than 16
+     * digits in all, so that Math.round(d × 10^scale) gives its unscaled
+     * value; returns -1 for any other d.
+     */
+    static int shortScale(double d) {
+        if (d == 0) return 1; // "0.0"
+        double a = Math.abs(d);
+        // Double.toString switches to E notation outside this range
+        if (!(a >= 1e-3 && a < 1e7)) return -1;
+        for (int s = 1; s <= 9; s++) {
+            double scaled = d * POW10[s];
+            if (Math.abs(scaled) >= 1e15) return -1;
+            // with under 16 digits, the decimal that round-trips at the
+            // smallest scale is the one Double.toString prints
+            if (Math.round(scaled) / (double) POW10[s] == d) return s;
+        }
+        return -1;
+    }
+
+    private static long pow10(int n) {
+        if (n >= POW10.length) throw new ArithmeticException("scale difference too large");
+        return POW10[n];
+    }
+
+    private void count(int scale, int delta) {
+        int s = Math.max(0, scale);
+        if (s < SCALE_SLOTS) {
+            scaleCounts[s] += delta;
+        } else {
+            wide().merge(s, delta, (a, b) -> a + b == 0 ? null : a + b);
+        }
+        terms += delta;
+    }
+
+    private TreeMap<Integer, Integer> wide() {
+        if (wideScales == null) wideScales = new TreeMap<>();
+        return wideScales;
+    }
+
+    private int maxScale() {
+        if (wideScales != null && !wideScales.isEmpty()) return wideScales.lastKey();
+        for (int s = SCALE_SLOTS - 1; s > 0; s--) {
+            if (scaleCounts[s] > 0) return s;
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.coffeedms;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Inverted index from flavor-note words to beanIDs. Notes are split into
+ * lower-case tokens of letters and digits ("Dark chocolate, blueberry"
+ * → dark, chocolate, blueberry). A search term ending in '*' matches
+ * every token with that prefix.
+ */
+class FlavorIndex {
+    private final NavigableMap<String, Set<String>> postings = new TreeMap<>();
+
+    void add(CoffeeBean b) {
+        for (String token : tokenize(b.getFlavorNotes())) {
+            postings.computeIfAbsent(token, t -> new LinkedHashSet<>()).add(b.getBeanID());
+        }
+    }
+
+    void remove(CoffeeBean b) {
+        for (String token : tokenize(b.getFlavorNotes())) {
+            Set<String> ids = postings.get(token);
+            if (ids != null && ids.remove(b.getBeanID()) && ids.isEmpty()) {
+                postings.remove(token);
+            }
+        }
+    }
+
+    void update(CoffeeBean old, CoffeeBean now) {
+        if (!Objects.equals(old.getFlavorNotes(), now.getFlavorNotes())) {
+            remove(old);
+            add(now);
+        }
+    }
+
+    /**
+     * @param terms search terms; each may end in '*' for a prefix match
+     * @return IDs of beans whose notes match every term
+     */
+    Set<String> matchAll(List<String> terms) {
+        List<Set<String>> sets = resolve(terms);
+        if (sets.isEmpty()) return Collections.emptySet();
+        // probe the other sets while walking the smallest
+        sets.sort(Comparator.comparingInt(Set::size));
+        Set<String> out = new LinkedHashSet<>();
+        outer:
+        for (String id : sets.get(0)) {
+            for (int i = 1; i < sets.size(); i++) {
+                if (!sets.get(i).contains(id)) continue outer;
+            }
+            out.add(id);
+        }
+        return out;
+    }
+
+    /**
+     * @param terms search terms; each may end in '*' for a prefix match
+     * @return IDs of beans whose notes match at least one term
+     */
+    Set<String> matchAny(List<String> terms) {
+        Set<String> out = new LinkedHashSet<>();
+        for (Set<String> s : resolve(terms)) {
+            out.addAll(s);
+        }
+        return out;
+    }
+
+    /** One ID set per term; prefix terms become the union of their tokens. */
+    private List<Set<String>> resolve(List<String> terms) {
+        List<Set<String>> sets = new ArrayList<>();
+        for (String raw : terms) {
+            boolean prefix = raw.endsWith("*");
+            List<String> tokens = tokenize(prefix ? raw.substring(0, raw.length() - 1) : raw);
+            for (int i = 0; i < tokens.size(); i++) {
+                String token = tokens.get(i);
+                if (prefix && i == tokens.size() - 1) {
+                    Map<String, Set<String>> range = postings.subMap(token, true, token + Character.MAX_VALUE, false);
+                    if (range.size() == 1) {
+                        sets.add(range.values().iterator().next());
+                    } else {
+                        Set<String> union = new LinkedHashSet<>();
+                        range.values().forEach(union::addAll);
+                        sets.add(union);
+                    }
+                } else {
+                    sets.add(postings.getOrDefault(token, Collections.emptySet()));
+                }
+            }
+        }
+        return sets;
+    }
+
+    /**
+     * Splits text into distinct lower-case tokens of letters and digits.
+     */
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) return tokens;
+        String lower = text.toLowerCase(Locale.ROOT);
+        int start = -1;
+        for (int i = 0; i <= lower.length(); i++) {
+            boolean word = i < lower.length() && Character.isLetterOrDigit(lower.charAt(i));
+            if (word && start < 0) {
+                start = i;
+            } else if (!word && start >= 0) {
+                String t = lower.substring(start, i);
+                if (!tokens.contains(t)) tokens.add(t);
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.coffeedms;
+
+/**
+ * Summary of a batch import: how many lines were read, how many beans
+ * were accepted, the report of skipped lines, and how long it took.
+ */
+public class ImportResult {
+    private final long linesRead;
+    private final long accepted;
+    private final RejectReport rejects;
+    private final long bytesRead;
+    private final long elapsedNanos;
+
+    /**
+     * @param linesRead    number of lines read from the file
+     * @param accepted     beans added to the repository
+     * @param rejects      duplicate and malformed lines skipped
+     * @param bytesRead    size of the input in bytes
+     * @param elapsedNanos wall-clock time of the import
+     */
+    public ImportResult(long linesRead, long accepted, RejectReport rejects,
+                        long bytesRead, long elapsedNanos) {
+        this.linesRead = linesRead;
+        this.accepted = accepted;
+        this.rejects = rejects;
+        this.bytesRead = bytesRead;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public long getLinesRead() {
+        return linesRead;
+    }
+
+    public long getAccepted() {
+        return accepted;
+    }
+
+    public RejectReport getRejects() {
+        return rejects;
+    }
+
+    public long getDuplicates() {
+        return rejects.getCount(RejectReason.DUPLICATE_ID);
+    }
+
+    /**
+     * @return lines skipped for any reason other than a duplicate ID
+     */
+    public long getMalformed() {
+        return getRejected() - getDuplicates();
+    }
+
+    /**
+     * @return duplicate plus malformed lines
+     */
+    public long getRejected() {
+        return rejects.getTotal();
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * @return lines processed per second, or 0 if no time elapsed
+     */
+    public double getLinesPerSecond() {
+        return elapsedNanos == 0 ? 0 : linesRead * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * @return megabytes (2^20 bytes) processed per second, or 0 if no time elapsed
+     */
+    public double getMegabytesPerSecond() {
+        return elapsedNanos == 0 ? 0 : bytesRead * 1e9 / elapsedNanos / (1 << 20);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "%d line(s): %d imported, %d duplicate, %d invalid in %.1f ms (%.0f lines/s, %.1f MB/s)",
+                linesRead, accepted, getDuplicates(), getMalformed(), elapsedNanos / 1e6,
+                getLinesPerSecond(), getMegabytesPerSecond()
+        );
+    }
+}
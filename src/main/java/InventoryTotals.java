@@ -0,0 +1,72 @@
+package com.example.coffeedms;
+
+import java.math.BigDecimal;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Aggregates over a set of beans, kept up to date one bean at a time so
+ * reads never rescan the inventory: total value, total kilograms, and
+ * value per roast level and per origin country.
+ */
+class InventoryTotals {
+    private final ExactSum value = new ExactSum();
+    private final ExactSum quantityKg = new ExactSum();
+    private final Map<RoastLevel, ExactSum> valueByRoast = new EnumMap<>(RoastLevel.class);
+    private final Map<String, ExactSum> valueByOrigin = new HashMap<>();
+    /** Scratch terms; like the sums, only used by one writer at a time. */
+    private final ExactSum.Term lotValue = new ExactSum.Term();
+    private final ExactSum.Term lotKg = new ExactSum.Term();
+
+    void add(CoffeeBean b) {
+        lotValue.ofValue(b);
+        value.add(lotValue);
+        quantityKg.add(lotKg.ofDouble(b.getQuantityKg()));
+        valueByRoast.computeIfAbsent(b.getRoastLevel(), r -> new ExactSum()).add(lotValue);
+        valueByOrigin.computeIfAbsent(b.getOriginCountry(), o -> new ExactSum()).add(lotValue);
+    }
+
+    void remove(CoffeeBean b) {
+        lotValue.ofValue(b);
+        value.subtract(lotValue);
+        quantityKg.subtract(lotKg.ofDouble(b.getQuantityKg()));
+        subtract(valueByRoast, b.getRoastLevel());
+        subtract(valueByOrigin, b.getOriginCountry());
+    }
+
+    /** Adds the totals of another, disjoint set of beans. */
+    void addAll(InventoryTotals other) {
+        value.addAll(other.value);
+        quantityKg.addAll(other.quantityKg);
+        other.valueByRoast.forEach((r, s) -> valueByRoast.computeIfAbsent(r, k -> new ExactSum()).addAll(s));
+        other.valueByOrigin.forEach((o, s) -> valueByOrigin.computeIfAbsent(o, k -> new ExactSum()).addAll(s));
+    }
+
+    BigDecimal getTotalValue() {
+        return value.get();
+    }
+
+    BigDecimal getTotalQuantityKg() {
+        return quantityKg.get();
+    }
+
+    Map<RoastLevel, BigDecimal> getValueByRoastLevel() {
+        Map<RoastLevel, BigDecimal> out = new EnumMap<>(RoastLevel.class);
+        valueByRoast.forEach((r, s) -> out.put(r, s.get()));
+        return out;
+    }
+
+    Map<String, BigDecimal> getValueByOrigin() {
+        Map<String, BigDecimal> out = new LinkedHashMap<>();
+        valueByOrigin.forEach((o, s) -> out.put(o, s.get()));
+        return out;
+    }
+
+    private <K> void subtract(Map<K, ExactSum> sums, K key) {
+        ExactSum s = sums.get(key);
+        s.subtract(lotValue);
+        if (s.terms() == 0) sums.remove(key);
+    }
+}
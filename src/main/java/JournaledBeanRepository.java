@@ -0,0 +1,184 @@
+package com.example.coffeedms;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * BeanRepository that survives restarts. Every successful add, update
+ * and remove (including those made by batch imports) is appended to a
+ * write-ahead journal in the data directory. Once the journal holds
+ * {@code compactEvery} records it is folded into a snapshot of the whole
+ * inventory and emptied, so a restart loads one snapshot and replays a
+ * short journal tail no matter how much history has built up.
+ * <p>
+ * Files in the data directory: {@code snapshot.dat} (a {@link BeanSnapshot})
+ * and {@code journal.log}.
+ * A change is journaled before it is applied, so if the journal cannot
+ * be written the change is refused with an {@link UncheckedIOException}
+ * and the inventory is left as it was.
+ * Replaying the journal over a snapshot is idempotent (records carry the
+ * full bean), so a crash between writing a snapshot and emptying the
+ * journal is harmless.
+ */
+public class JournaledBeanRepository extends BeanRepository implements Closeable {
+    static final String SNAPSHOT_FILE = "snapshot.dat";
+    static final String JOURNAL_FILE = "journal.log";
+
+    /** Default records per fsync group. */
+    public static final int DEFAULT_GROUP_SIZE = 64;
+    /** Default longest wait before a record is fsynced, in milliseconds. */
+    public static final long DEFAULT_SYNC_INTERVAL_MILLIS = 50;
+    /** Default journal length that triggers a snapshot. */
+    public static final long DEFAULT_COMPACT_EVERY = 100_000;
+
+    private final Path dir;
+    private final long compactEvery;
+    private final BeanJournal journal;
+    /** Journal length at which the next automatic checkpoint runs. */
+    private long checkpointAt;
+    private volatile IOException checkpointFailure;
+
+    /**
+     * Opens (or creates) a repository in dir with default settings.
+     *
+     * @param dir data directory
+     * @throws IOException if the snapshot or journal cannot be read
+     */
+    public JournaledBeanRepository(Path dir) throws IOException {
+        this(dir, DEFAULT_GROUP_SIZE, DEFAULT_SYNC_INTERVAL_MILLIS, DEFAULT_COMPACT_EVERY);
+    }
+
+    /**
+     * Opens (or creates) a repository in dir, recovering its contents
+     * from the latest snapshot plus the journal tail.
+     *
+     * @param dir                data directory
+     * @param groupSize          journal records per fsync (1 = fsync every change)
+     * @param syncIntervalMillis longest time a change waits for fsync; 0 = only on group/close
+     * @param compactEvery       journal records that trigger a snapshot
+     * @throws IOException if the snapshot or journal cannot be read
+     */
+    public JournaledBeanRepository(Path dir, int groupSize, long syncIntervalMillis,
+                                   long compactEvery) throws IOException {
+        if (compactEvery < 1) {
+            throw new IllegalArgumentException("compactEvery must be at least 1");
+        }
+        this.dir = dir;
+        this.compactEvery = compactEvery;
+        this.checkpointAt = compactEvery;
+        Files.createDirectories(dir);
+
+        Path snapshot = dir.resolve(SNAPSHOT_FILE);
+        if (Files.exists(snapshot)) {
+            BeanSnapshot.read(snapshot, super::add);
+        }
+        long replayed = BeanJournal.replay(dir.resolve(JOURNAL_FILE), (op, bean, id) -> {
+            if (op == BeanJournal.REMOVE) {
+                super.removeByID(id);
+            } else if (!super.add(bean)) {
+                super.update(bean);
+            }
+        });
+        journal = new BeanJournal(dir.resolve(JOURNAL_FILE), groupSize, syncIntervalMillis, replayed);
+    }
+
+    @Override
+    public boolean add(CoffeeBean bean) {
+        if (findByID(bean.getBeanID()) != null) return false;
+        journal.append(BeanJournal.ADD, bean);
+        super.add(bean);
+        afterWrite();
+        return true;
+    }
+
+    @Override
+    public boolean update(CoffeeBean updatedBean) {
+        if (findByID(updatedBean.getBeanID()) == null) return false;
+        journal.append(BeanJournal.UPDATE, updatedBean);
+        super.update(updatedBean);
+        afterWrite();
+        return true;
+    }
+
+    @Override
+    public boolean removeByID(String beanID) {
+        if (findByID(beanID) == null) return false;
+        journal.appendRemove(beanID);
+        super.removeByID(beanID);
+        afterWrite();
+        return true;
+    }
+
+    @Override
+    public boolean adjustQuantity(String beanID, double deltaKg) {
+        CoffeeBean old = findByID(beanID);
+        if (old == null) return false;
+        CoffeeBean now = adjusted(old, deltaKg);
+        if (now == null) return false;
+        journal.append(BeanJournal.UPDATE, now);
+        super.adjustQuantity(beanID, deltaKg);
+        afterWrite();
+        return true;
+    }
+
+    /**
+     * Forces every change made so far to disk.
+     *
+     * @throws IOException if the journal cannot be written
+     */
+    public void sync() throws IOException {
+        journal.sync();
+    }
+
+    /**
+     * Writes a snapshot of the current inventory and empties the journal.
+     * Runs automatically every {@code compactEvery} changes; an automatic
+     * run that fails does not fail the change that triggered it, which is
+     * already journaled. It is reported by {@link #getCheckpointFailure()}
+     * and tried again after another {@code compactEvery} changes.
+     *
+     * @throws IOException if the snapshot cannot be written
+     */
+    public void checkpoint() throws IOException {
+        // durable, directory included, before the journal it replaces is emptied
+        BeanSnapshot.write(dir.resolve(SNAPSHOT_FILE), findAll());
+        journal.truncate();
+        checkpointAt = compactEvery;
+        checkpointFailure = null;
+    }
+
+    /**
+     * @return why the last automatic checkpoint failed, or null if it did
+     *         not fail or a checkpoint has succeeded since
+     */
+    public IOException getCheckpointFailure() {
+        return checkpointFailure;
+    }
+
+    /**
+     * @return journal records written since the last snapshot
+     */
+    public long getJournalLength() {
+        return journal.records();
+    }
+
+    @Override
+    public void close() throws IOException {
+        changes().close();
+        journal.close();
+    }
+
+    private void afterWrite() {
+        if (journal.records() < checkpointAt) return;
+        try {
+            checkpoint();
+        } catch (IOException ex) {
+            checkpointFailure = ex;
+            checkpointAt = journal.records() + compactEvery;
+            System.err.println("Checkpoint failed: " + ex.getMessage());
+        }
+    }
+}
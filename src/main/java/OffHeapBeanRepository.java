@@ -0,0 +1,381 @@
+package com.example.coffeedms;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * BeanRepository whose lots live outside the Java heap, so a large
+ * inventory adds little to GC work. Each lot is a fixed-width record in
+ * an {@link OffHeapBeanStore}; only the beanID → slot index and the
+ * aggregates stay on the heap, and CoffeeBean objects are built on
+ * demand.
+ * <p>
+ * The store is either in direct buffers (gone when the repository is
+ * closed; counts against {@code -XX:MaxDirectMemorySize}, which defaults
+ * to the heap limit) or memory-mapped from files in a directory. A
+ * file-backed repository reopens from its files by reading only the
+ * beanIDs; the aggregates are rebuilt on first use. Changes are in the
+ * mapped files as soon as they are made, so they survive the process
+ * being killed (except a lot being written at that moment); {@link #sync()}
+ * or {@link #close()} forces them to disk, which an OS crash or power
+ * loss needs. This is a restart cache, not a crash-safe log (see
+ * JournaledBeanRepository for that).
+ * <p>
+ * Removed lots and replaced notes leave dead space; the store is
+ * rewritten without it once more than half of it is dead. Files are
+ * rewritten as a new generation beside the old one, so an interrupted
+ * rewrite leaves the old store in use.
+ */
+public class OffHeapBeanRepository extends BeanRepository implements Closeable {
+    /** Default size of each direct or mapped segment. */
+    public static final int DEFAULT_SEGMENT_BYTES = 1 << 26;
+    private static final long MIN_COMPACT_SLOTS = 1024;
+
+    private final Path dir;
+    private final int segmentBytes;
+    private final Map<String, Long> slotByID = new HashMap<>();
+    /** Aggregates of the live lots; null until first needed after reopening files. */
+    private InventoryTotals totals;
+    private OffHeapBeanStore store;
+    private long dead;
+
+    /**
+     * Creates an empty repository in direct buffers.
+     */
+    public OffHeapBeanRepository() {
+        this.dir = null;
+        this.segmentBytes = DEFAULT_SEGMENT_BYTES;
+        this.store = OffHeapBeanStore.direct(segmentBytes);
+        this.totals = new InventoryTotals();
+    }
+
+    /**
+     * Opens (or creates) a file-backed repository in dir.
+     *
+     * @param dir directory for the store files
+     * @throws IOException if the files cannot be opened or are damaged
+     */
+    public OffHeapBeanRepository(Path dir) throws IOException {
+        this(dir, DEFAULT_SEGMENT_BYTES);
+    }
+
+    OffHeapBeanRepository(Path dir, int segmentBytes) throws IOException {
+        this.dir = dir;
+        this.store = dir == null
+                ? OffHeapBeanStore.direct(segmentBytes)
+                : OffHeapBeanStore.open(dir, segmentBytes);
+        this.segmentBytes = store.getSegmentBytes();
+        for (long slot = 0; slot < store.slots(); slot++) {
+            if (store.isLive(slot)) {
+                slotByID.put(store.readID(slot), slot);
+            } else {
+                dead++;
+            }
+        }
+        if (slotByID.isEmpty()) totals = new InventoryTotals();
+    }
+
+    @Override
+    public boolean add(CoffeeBean bean) {
+        if (slotByID.containsKey(bean.getBeanID())) return false;
+        try {
+            slotByID.put(bean.getBeanID(), store.append(bean));
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        if (totals != null) totals.add(bean);
+        fireAdded(bean);
+        return true;
+    }
+
+    @Override
+    public boolean removeByID(String beanID) {
+        Long slot = slotByID.get(beanID);
+        if (slot == null) return false;
+        try {
+            CoffeeBean old = store.read(slot);
+            if (totals != null) totals.remove(old);
+            store.kill(slot);
+            slotByID.remove(beanID);
+            dead++;
+            compactIfWasteful();
+            fireRemoved(old);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean update(CoffeeBean updatedBean) {
+        Long slot = slotByID.get(updatedBean.getBeanID());
+        if (slot == null) return false;
+        try {
+            CoffeeBean old = store.read(slot);
+            store.overwrite(slot, updatedBean);
+            if (totals != null) {
+                totals.remove(old);
+                totals.add(updatedBean);
+            }
+            compactIfWasteful();
+            fireUpdated(old, updatedBean);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean adjustQuantity(String beanID, double deltaKg) {
+        Long slot = slotByID.get(beanID);
+        if (slot == null) return false;
+        try {
+            CoffeeBean old = store.read(slot);
+            CoffeeBean now = adjusted(old, deltaKg);
+            if (now == null) return false;
+            store.setQuantity(slot, now.getQuantityKg());
+            if (totals != null) {
+                totals.remove(old);
+                totals.add(now);
+            }
+            fireUpdated(old, now);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return true;
+    }
+
+    @Override
+    public CoffeeBean findByID(String beanID) {
+        Long slot = slotByID.get(beanID);
+        try {
+            return slot == null ? null : store.read(slot);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @Override
+    public List<CoffeeBean> findAll() {
+        List<CoffeeBean> out = new ArrayList<>(size());
+        try {
+            for (long slot = 0; slot < store.slots(); slot++) {
+                if (store.isLive(slot)) out.add(store.read(slot));
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return out;
+    }
+
+    @Override
+    public int size() {
+        return slotByID.size();
+    }
+
+    @Override
+    public void saveSnapshot(Path path) throws IOException {
+        BeanSnapshot.write(path, findAll());
+    }
+
+    /**
+     * Scans the fixed-width fields of every record; only matching lots
+     * are decoded.
+     *
+     * @param q criteria to match
+     * @return matching beans in insertion order
+     */
+    @Override
+    public List<CoffeeBean> query(BeanQuery q) {
+        List<CoffeeBean> out = new ArrayList<>();
+        try {
+            long origin = q.getOrigin() == null ? -1 : store.dictionaryOffset(q.getOrigin());
+            long farm = q.getFarm() == null ? -1 : store.dictionaryOffset(q.getFarm());
+            if ((q.getOrigin() != null && origin < 0) || (q.getFarm() != null && farm < 0)) {
+                return out;
+            }
+            int roast = q.getRoastLevel() == null ? -1 : q.getRoastLevel().ordinal();
+            long from = q.getRoastedFrom() == null ? Long.MIN_VALUE : q.getRoastedFrom().toEpochDay();
+            long to = q.getRoastedTo() == null ? Long.MAX_VALUE : q.getRoastedTo().toEpochDay();
+            for (long slot = 0; slot < store.slots(); slot++) {
+                if (store.matches(slot, roast, origin, farm, from, to)) out.add(store.read(slot));
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return out;
+    }
+
+    /**
+     * Same matching as BeanRepository, by scanning notes instead of an
+     * on-heap index.
+     */
+    @Override
+    public List<CoffeeBean> findByFlavorAll(String... terms) {
+        return scanFlavors(terms, true);
+    }
+
+    /**
+     * Same matching as BeanRepository, by scanning notes instead of an
+     * on-heap index.
+     */
+    @Override
+    public List<CoffeeBean> findByFlavorAny(String... terms) {
+        return scanFlavors(terms, false);
+    }
+
+    @Override
+    public BigDecimal calculateTotalInventoryValue() {
+        return totals().getTotalValue();
+    }
+
+    @Override
+    public BigDecimal getTotalQuantityKg() {
+        return totals().getTotalQuantityKg();
+    }
+
+    @Override
+    public Map<RoastLevel, BigDecimal> getValueByRoastLevel() {
+        return totals().getValueByRoastLevel();
+    }
+
+    @Override
+    public Map<String, BigDecimal> getValueByOrigin() {
+        return totals().getValueByOrigin();
+    }
+
+    /**
+     * Same paging as BeanRepository, found by one scan of the rows rather
+     * than a sorted ID index, which would cost more than the rows do.
+     */
+    @Override
+    public List<CoffeeBean> findPage(String afterBeanID, int limit) {
+        return scanPage(afterBeanID, limit);
+    }
+
+    @Override
+    public List<CoffeeBean> oldestRoasts(int n) {
+        return topN(n, OLDEST_ROAST_FIRST);
+    }
+
+    @Override
+    void forEachBean(Consumer<CoffeeBean> action) {
+        try {
+            for (long slot = 0; slot < store.slots(); slot++) {
+                if (store.isLive(slot)) action.accept(store.read(slot));
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Writes every change to the store files. Does nothing for a direct store.
+     *
+     * @throws IOException if the files cannot be written
+     */
+    public void sync() throws IOException {
+        store.force();
+    }
+
+    /**
+     * @return bytes of off-heap memory or file used by the store
+     */
+    public long getStoreBytes() {
+        return (store.slots() + 1) * OffHeapBeanStore.RECORD_BYTES + store.stringBytes();
+    }
+
+    @Override
+    public void close() throws IOException {
+        changes().close();
+        store.close();
+    }
+
+    private InventoryTotals totals() {
+        if (totals == null) {
+            InventoryTotals t = new InventoryTotals();
+            forEachBean(t::add);
+            totals = t;
+        }
+        return totals;
+    }
+
+    private List<CoffeeBean> scanFlavors(String[] terms, boolean all) {
+        List<String> words = new ArrayList<>();
+        List<Boolean> prefix = new ArrayList<>();
+        for (String raw : terms) {
+            boolean p = raw.endsWith("*");
+            List<String> tokens = FlavorIndex.tokenize(p ? raw.substring(0, raw.length() - 1) : raw);
+            for (int i = 0; i < tokens.size(); i++) {
+                words.add(tokens.get(i));
+                prefix.add(p && i == tokens.size() - 1);
+            }
+        }
+        List<CoffeeBean> out = new ArrayList<>();
+        if (words.isEmpty()) return out;
+        try {
+            for (long slot = 0; slot < store.slots(); slot++) {
+                if (!store.isLive(slot)) continue;
+                List<String> tokens = FlavorIndex.tokenize(store.readNotes(slot));
+                int matched = 0;
+                for (int i = 0; i < words.size(); i++) {
+                    if (contains(tokens, words.get(i), prefix.get(i))) matched++;
+                }
+                if (all ? matched == words.size() : matched > 0) out.add(store.read(slot));
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return out;
+    }
+
+    private static boolean contains(List<String> tokens, String word, boolean prefix) {
+        for (String t : tokens) {
+            if (prefix ? t.startsWith(word) : t.equals(word)) return true;
+        }
+        return false;
+    }
+
+    private void compactIfWasteful() throws IOException {
+        boolean slotsWasted = dead > MIN_COMPACT_SLOTS && dead * 2 > store.slots();
+        boolean stringsWasted = store.garbageBytes() > segmentBytes
+                && store.garbageBytes() * 2 > store.stringBytes();
+        if (slotsWasted || stringsWasted) compact();
+    }
+
+    /**
+     * Rewrites the live lots, in order, into a fresh store. A file-backed
+     * store is rebuilt as the next generation of files, which replaces
+     * the old one only once it is complete; see
+     * {@link OffHeapBeanStore#makeCurrent()}.
+     */
+    private void compact() throws IOException {
+        OffHeapBeanStore fresh = store.emptyCopy();
+        Map<String, Long> moved = new HashMap<>();
+        try {
+            for (long slot = 0; slot < store.slots(); slot++) {
+                if (store.isLive(slot)) {
+                    CoffeeBean b = store.read(slot);
+                    moved.put(b.getBeanID(), fresh.append(b));
+                }
+            }
+            fresh.makeCurrent();
+        } catch (IOException | RuntimeException ex) {
+            fresh.discard();
+            throw ex;
+        }
+        OffHeapBeanStore old = store;
+        store = fresh;
+        slotByID.putAll(moved);
+        dead = 0;
+        old.discard();
+    }
+}
@@ -0,0 +1,566 @@
+package com.example.coffeedms;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Lot records and their strings, kept outside the Java heap in direct
+ * or memory-mapped ByteBuffers.
+ * <p>
+ * The record area holds one fixed-width record per slot, in insertion
+ * order; slot 0 of the record area is the store header. The string area
+ * holds {@code [int length][UTF-8 bytes]} entries that records point to
+ * by offset. Origins and farms are written once per distinct value.
+ * Both areas are split into segments of {@code segmentBytes}; records
+ * and strings never cross a segment boundary.
+ * <p>
+ * A mapped store lives in a directory as {@code records.<n>.dat} and
+ * {@code strings.<n>.dat}, where n is the generation named in
+ * {@value #GENERATION_FILE}. Compaction writes the next generation and
+ * then switches the pointer, so it never replaces or deletes a file that
+ * is still mapped (which Windows refuses).
+ * <p>
+ * Record layout ({@value #RECORD_BYTES} bytes):
+ * <pre>
+ *  0 long   beanID string offset
+ *  8 long   origin string offset
+ * 16 long   farm string offset
+ * 24 long   notes string offset
+ * 32 long   roast date as epoch day
+ * 40 double quantity kg
+ * 48 long   cost unscaled value, or offset of its text when scale is WIDE_COST
+ * 56 double caffeine mg/g
+ * 64 byte   status (LIVE or DEAD)
+ * 65 byte   roast level ordinal
+ * 66 byte   cost scale
+ * </pre>
+ * Not thread-safe.
+ */
+final class OffHeapBeanStore implements Closeable {
+    static final int RECORD_BYTES = 72;
+    static final byte LIVE = 1;
+    static final byte DEAD = 2;
+    /** Names the generation of store files in use; missing means generation 0. */
+    static final String GENERATION_FILE = "store.generation";
+
+    private static final int MAGIC = 0x43424f48; // "CBOH"
+    private static final int VERSION = 1;
+    private static final byte WIDE_COST = Byte.MIN_VALUE;
+    private static final int NULL_STRING = -1;
+    /** Bytes at the start of the string area reserved for its header. */
+    private static final long STRING_HEADER = 16;
+    private static final RoastLevel[] LEVELS = RoastLevel.values();
+
+    private final int segmentBytes;
+    private final int recordsPerSegment;
+    private final FileChannel recordFile;
+    private final FileChannel stringFile;
+    /** Directory of a store opened by {@link #open(Path, int)}, else null. */
+    private final Path dir;
+    private final long generation;
+    private final List<ByteBuffer> recordSegments = new ArrayList<>();
+    private final List<ByteBuffer> stringSegments = new ArrayList<>();
+    /** Origin and farm values already in the string area → offset. */
+    private final Map<String, Long> dictionary = new HashMap<>();
+    private final Map<Long, String> dictionaryValues = new HashMap<>();
+    private final long stamp;
+    /** False until the dictionary of a reopened store has been read back. */
+    private boolean dictionaryLoaded = true;
+    private byte[] scratch = new byte[256];
+    private long slots;
+    private long stringEnd = STRING_HEADER;
+    /** String bytes no longer referenced by a live record. */
+    private long garbageBytes;
+
+    private OffHeapBeanStore(int segmentBytes, Path dir, long generation,
+                             FileChannel recordFile, FileChannel stringFile, long stamp) {
+        if (segmentBytes < 4096) {
+            throw new IllegalArgumentException("segmentBytes must be at least 4096");
+        }
+        this.segmentBytes = segmentBytes;
+        this.recordsPerSegment = segmentBytes / RECORD_BYTES;
+        this.dir = dir;
+        this.generation = generation;
+        this.recordFile = recordFile;
+        this.stringFile = stringFile;
+        this.stamp = stamp;
+    }
+
+    /**
+     * @param segmentBytes size of each direct buffer
+     * @return an empty store in direct buffers
+     */
+    static OffHeapBeanStore direct(int segmentBytes) {
+        return new OffHeapBeanStore(segmentBytes, null, 0, null, null, 0);
+    }
+
+    /**
+     * Opens the store files in dir, creating them if dir holds no store
+     * yet. Existing files hold every change written to the mapping,
+     * including those made after the last {@link #force()} by a process
+     * that was killed, as long as the OS itself did not crash first. Files
+     * of any other generation, left by an interrupted compaction, are
+     * deleted.
+     *
+     * @param dir          directory holding the store files
+     * @param segmentBytes size of each mapped segment for a new store
+     * @return the store
+     * @throws IOException if the files cannot be opened, do not belong
+     *                     together, or the generation in use is missing
+     */
+    static OffHeapBeanStore open(Path dir, int segmentBytes) throws IOException {
+        Files.createDirectories(dir);
+        Path pointer = dir.resolve(GENERATION_FILE);
+        long generation = 0;
+        if (Files.exists(pointer)) {
+            try {
+                generation = Long.parseLong(new String(Files.readAllBytes(pointer), StandardCharsets.US_ASCII).trim());
+            } catch (NumberFormatException ex) {
+                throw new IOException("Damaged store generation file: " + pointer, ex);
+            }
+        }
+        // never start an empty store over one whose files went missing
+        if (!Files.exists(recordFile(dir, generation)) && (Files.exists(pointer) || hasStoreFiles(dir))) {
+            throw new IOException("Store files of generation " + generation + " are missing in " + dir);
+        }
+        deleteOtherGenerations(dir, generation);
+        return open(dir, generation, segmentBytes);
+    }
+
+    private static boolean hasStoreFiles(Path dir) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "{records,strings}.*.dat")) {
+            return files.iterator().hasNext();
+        }
+    }
+
+    /**
+     * @return the records file of a generation in dir
+     */
+    static Path recordFile(Path dir, long generation) {
+        return dir.resolve("records." + generation + ".dat");
+    }
+
+    /**
+     * @return the strings file of a generation in dir
+     */
+    static Path stringFile(Path dir, long generation) {
+        return dir.resolve("strings." + generation + ".dat");
+    }
+
+    private static void deleteOtherGenerations(Path dir, long keep) throws IOException {
+        List<Path> stale = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "{records,strings}.*.dat")) {
+            for (Path p : files) {
+                if (!p.equals(recordFile(dir, keep)) && !p.equals(stringFile(dir, keep))) stale.add(p);
+            }
+        }
+        stale.add(dir.resolve(GENERATION_FILE + ".tmp"));
+        for (Path p : stale) {
+            deleteIfUnmapped(p);
+        }
+    }
+
+    /**
+     * Deletes a file of an old generation. One still mapped by this
+     * process cannot be deleted on Windows until its buffers are
+     * collected; it is left for a later open.
+     */
+    private static void deleteIfUnmapped(Path p) throws IOException {
+        try {
+            Files.deleteIfExists(p);
+        } catch (FileSystemException ex) {
+            // still mapped; retried by the next open
+        }
+    }
+
+    private static OffHeapBeanStore open(Path dir, long generation, int segmentBytes) throws IOException {
+        Path records = recordFile(dir, generation);
+        Path strings = stringFile(dir, generation);
+        FileChannel rf = FileChannel.open(records, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        FileChannel sf = null;
+        try {
+            sf = FileChannel.open(strings, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            if (rf.size() == 0) {
+                OffHeapBeanStore store = new OffHeapBeanStore(segmentBytes, dir, generation, rf, sf,
+                        ThreadLocalRandom.current().nextLong());
+                store.force();
+                return store;
+            }
+            ByteBuffer head = ByteBuffer.allocate(40);
+            rf.read(head, 0);
+            if (head.getInt(0) != MAGIC || head.getInt(4) != VERSION) {
+                throw new IOException("Not an off-heap bean store: " + records);
+            }
+            ByteBuffer stringHead = ByteBuffer.allocate(8);
+            sf.read(stringHead, 0);
+            long stamp = head.getLong(8);
+            if (stringHead.getLong(0) != stamp) {
+                throw new IOException("Store files do not belong together: " + records);
+            }
+            OffHeapBeanStore store = new OffHeapBeanStore(head.getInt(16), dir, generation, rf, sf, stamp);
+            store.slots = head.getLong(24);
+            store.stringEnd = head.getLong(32);
+            store.dictionaryLoaded = store.slots == 0;
+            return store;
+        } catch (IOException | RuntimeException ex) {
+            rf.close();
+            if (sf != null) sf.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * @return an empty store to compact into: direct like this one, or new
+     *         files of the next generation that {@link #open(Path, int)}
+     *         ignores until {@link #makeCurrent()}
+     */
+    OffHeapBeanStore emptyCopy() throws IOException {
+        if (!isMapped()) return direct(segmentBytes);
+        Files.deleteIfExists(recordFile(dir, generation + 1));
+        Files.deleteIfExists(stringFile(dir, generation + 1));
+        return open(dir, generation + 1, segmentBytes);
+    }
+
+    /**
+     * Forces this store and points its directory at its generation, so
+     * that the next {@link #open(Path, int)} uses it. The pointer file is
+     * replaced in one atomic move; it is never mapped. The directory is
+     * fsynced before returning, so the old generation can then be deleted
+     * without a power loss bringing back a pointer to it.
+     */
+    void makeCurrent() throws IOException {
+        if (!isMapped()) return;
+        force();
+        Path pointer = dir.resolve(GENERATION_FILE);
+        Path tmp = dir.resolve(GENERATION_FILE + ".tmp");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ch.write(ByteBuffer.wrap(Long.toString(generation).getBytes(StandardCharsets.US_ASCII)));
+            ch.force(true);
+        }
+        Files.move(tmp, pointer, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        DirectorySync.force(dir);
+    }
+
+    /**
+     * Closes this store and deletes its files, as far as the platform
+     * allows while they may still be mapped.
+     */
+    void discard() throws IOException {
+        release();
+        if (!isMapped()) return;
+        deleteIfUnmapped(recordFile(dir, generation));
+        deleteIfUnmapped(stringFile(dir, generation));
+    }
+
+    boolean isMapped() {
+        return recordFile != null;
+    }
+
+    int getSegmentBytes() {
+        return segmentBytes;
+    }
+
+    /**
+     * @return slots written so far, live or dead
+     */
+    long slots() {
+        return slots;
+    }
+
+    /**
+     * @return bytes of the string area in use, including garbage
+     */
+    long stringBytes() {
+        return stringEnd;
+    }
+
+    long garbageBytes() {
+        return garbageBytes;
+    }
+
+    /**
+     * @return the slot the bean was written to
+     */
+    long append(CoffeeBean b) throws IOException {
+        long slot = slots;
+        ByteBuffer seg = recordSegment(slot);
+        int at = recordPos(slot);
+        seg.putLong(at, writeString(b.getBeanID()));
+        encode(seg, at, b);
+        slots++;
+        writeCounts();
+        return slot;
+    }
+
+    /** Replaces every field but the beanID of a live record. */
+    void overwrite(long slot, CoffeeBean b) throws IOException {
+        ByteBuffer seg = recordSegment(slot);
+        int at = recordPos(slot);
+        garbageBytes += stringSize(seg.getLong(at + 24));
+        if (seg.get(at + 66) == WIDE_COST) garbageBytes += stringSize(seg.getLong(at + 48));
+        encode(seg, at, b);
+    }
+
+    void setQuantity(long slot, double quantityKg) throws IOException {
+        recordSegment(slot).putDouble(recordPos(slot) + 40, quantityKg);
+    }
+
+    void kill(long slot) throws IOException {
+        ByteBuffer seg = recordSegment(slot);
+        int at = recordPos(slot);
+        seg.put(at + 64, DEAD);
+        garbageBytes += stringSize(seg.getLong(at)) + stringSize(seg.getLong(at + 24));
+        if (seg.get(at + 66) == WIDE_COST) garbageBytes += stringSize(seg.getLong(at + 48));
+    }
+
+    boolean isLive(long slot) throws IOException {
+        return recordSegment(slot).get(recordPos(slot) + 64) == LIVE;
+    }
+
+    String readID(long slot) throws IOException {
+        return readString(recordSegment(slot).getLong(recordPos(slot)));
+    }
+
+    CoffeeBean read(long slot) throws IOException {
+        ByteBuffer seg = recordSegment(slot);
+        int at = recordPos(slot);
+        byte costScale = seg.get(at + 66);
+        BigDecimal cost = costScale == WIDE_COST
+                ? new BigDecimal(readString(seg.getLong(at + 48)))
+                : BigDecimal.valueOf(seg.getLong(at + 48), costScale);
+        return new CoffeeBean(
+                readString(seg.getLong(at)),
+                dictionaryValue(seg.getLong(at + 8)),
+                dictionaryValue(seg.getLong(at + 16)),
+                LEVELS[seg.get(at + 65)],
+                LocalDate.ofEpochDay(seg.getLong(at + 32)),
+                seg.getDouble(at + 40),
+                cost,
+                readString(seg.getLong(at + 24)),
+                seg.getDouble(at + 56)
+        );
+    }
+
+    /**
+     * @return the string-area offset of an origin or farm value, or -1 if
+     *         no record has ever used it
+     */
+    long dictionaryOffset(String value) throws IOException {
+        loadDictionary();
+        Long off = dictionary.get(value);
+        return off == null ? -1 : off;
+    }
+
+    /**
+     * Checks a live record against already-resolved query criteria, reading
+     * only the fixed-width fields.
+     *
+     * @param roast  wanted roast ordinal, or -1 for any
+     * @param origin wanted origin offset, or -1 for any
+     * @param farm   wanted farm offset, or -1 for any
+     * @param from   earliest epoch day
+     * @param to     latest epoch day
+     */
+    boolean matches(long slot, int roast, long origin, long farm, long from, long to) throws IOException {
+        ByteBuffer seg = recordSegment(slot);
+        int at = recordPos(slot);
+        long day = seg.getLong(at + 32);
+        return seg.get(at + 64) == LIVE
+                && (roast < 0 || seg.get(at + 65) == roast)
+                && (origin < 0 || seg.getLong(at + 8) == origin)
+                && (farm < 0 || seg.getLong(at + 16) == farm)
+                && day >= from && day <= to;
+    }
+
+    String readNotes(long slot) throws IOException {
+        return readString(recordSegment(slot).getLong(recordPos(slot) + 24));
+    }
+
+    /**
+     * Writes the header and, for a mapped store, forces every segment to disk.
+     */
+    void force() throws IOException {
+        if (!isMapped()) return;
+        segment(recordSegments, recordFile, 0)
+                .putInt(0, MAGIC).putInt(4, VERSION).putLong(8, stamp).putInt(16, segmentBytes);
+        segment(stringSegments, stringFile, 0).putLong(0, stamp);
+        writeCounts();
+        for (ByteBuffer seg : stringSegments) ((MappedByteBuffer) seg).force();
+        for (ByteBuffer seg : recordSegments) ((MappedByteBuffer) seg).force();
+        stringFile.force(true);
+        recordFile.force(true);
+    }
+
+    /**
+     * Keeps the slot count and string end in the mapped header current.
+     * The OS writes dirty mapped pages back even if the process dies
+     * without {@link #force()}, so the header must never be behind the
+     * records and strings it describes.
+     */
+    private void writeCounts() throws IOException {
+        if (!isMapped()) return;
+        segment(recordSegments, recordFile, 0).putLong(24, slots).putLong(32, stringEnd);
+    }
+
+    /**
+     * Forces the store, then closes the files and drops every segment, so the mappings can be
+     * released as soon as the buffers are collected. Closing the channels
+     * alone does not unmap them.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            force();
+        } finally {
+            release();
+        }
+    }
+
+    private void release() throws IOException {
+        recordSegments.clear();
+        stringSegments.clear();
+        if (isMapped()) {
+            try {
+                recordFile.close();
+            } finally {
+                stringFile.close();
+            }
+        }
+    }
+
+    private void encode(ByteBuffer seg, int at, CoffeeBean b) throws IOException {
+        seg.putLong(at + 8, dictionaryString(b.getOriginCountry()));
+        seg.putLong(at + 16, dictionaryString(b.getFarmName()));
+        seg.putLong(at + 24, writeString(b.getFlavorNotes()));
+        seg.putLong(at + 32, b.getRoastDate().toEpochDay());
+        seg.putDouble(at + 40, b.getQuantityKg());
+        BigDecimal cost = b.getCostPerKg();
+        if (cost.unscaledValue().bitLength() < 64
+                && cost.scale() > WIDE_COST && cost.scale() <= Byte.MAX_VALUE) {
+            seg.putLong(at + 48, cost.unscaledValue().longValue());
+            seg.put(at + 66, (byte) cost.scale());
+        } else {
+            seg.putLong(at + 48, writeString(cost.toString()));
+            seg.put(at + 66, WIDE_COST);
+        }
+        seg.putDouble(at + 56, b.getCaffeineContentMgPerGram());
+        seg.put(at + 64, LIVE);
+        seg.put(at + 65, (byte) b.getRoastLevel().ordinal());
+    }
+
+    private long dictionaryString(String value) throws IOException {
+        loadDictionary();
+        Long off = dictionary.get(value);
+        if (off == null) {
+            off = writeString(value);
+            dictionary.put(value, off);
+            dictionaryValues.put(off, value);
+        }
+        return off;
+    }
+
+    /**
+     * Reads back the origin and farm values of a reopened store, so that
+     * equal values keep sharing one offset.
+     */
+    private void loadDictionary() throws IOException {
+        if (dictionaryLoaded) return;
+        dictionaryLoaded = true;
+        for (long slot = 0; slot < slots; slot++) {
+            ByteBuffer seg = recordSegment(slot);
+            int at = recordPos(slot);
+            dictionaryValue(seg.getLong(at + 8));
+            dictionaryValue(seg.getLong(at + 16));
+        }
+    }
+
+    private String dictionaryValue(long off) throws IOException {
+        String value = dictionaryValues.get(off);
+        if (value == null) {
+            // first use after reopening a mapped store
+            value = StringPool.SHARED.canonical(readString(off));
+            dictionary.put(value, off);
+            dictionaryValues.put(off, value);
+        }
+        return value;
+    }
+
+    private long writeString(String s) throws IOException {
+        byte[] bytes = s == null ? null : s.getBytes(StandardCharsets.UTF_8);
+        int size = 4 + (bytes == null ? 0 : bytes.length);
+        if (size > segmentBytes) {
+            throw new IllegalArgumentException("String longer than a segment: " + size + " bytes");
+        }
+        long off = stringEnd;
+        if (off % segmentBytes + size > segmentBytes) {
+            off = (off / segmentBytes + 1) * segmentBytes;
+        }
+        ByteBuffer seg = segment(stringSegments, stringFile, off / segmentBytes);
+        int at = (int) (off % segmentBytes);
+        seg.putInt(at, bytes == null ? NULL_STRING : bytes.length);
+        if (bytes != null) {
+            ByteBuffer d = seg.duplicate();
+            d.position(at + 4);
+            d.put(bytes);
+        }
+        stringEnd = off + size;
+        writeCounts();
+        return off;
+    }
+
+    private String readString(long off) throws IOException {
+        ByteBuffer seg = segment(stringSegments, stringFile, off / segmentBytes);
+        int at = (int) (off % segmentBytes);
+        int len = seg.getInt(at);
+        if (len == NULL_STRING) return null;
+        if (scratch.length < len) scratch = new byte[Math.max(len, scratch.length * 2)];
+        for (int i = 0; i < len; i++) {
+            scratch[i] = seg.get(at + 4 + i);
+        }
+        return new String(scratch, 0, len, StandardCharsets.UTF_8);
+    }
+
+    private int stringSize(long off) throws IOException {
+        int len = segment(stringSegments, stringFile, off / segmentBytes).getInt((int) (off % segmentBytes));
+        return 4 + Math.max(len, 0);
+    }
+
+    /** Slot s lives at physical record s + 1; record 0 is the header. */
+    private ByteBuffer recordSegment(long slot) throws IOException {
+        return segment(recordSegments, recordFile, (slot + 1) / recordsPerSegment);
+    }
+
+    private int recordPos(long slot) {
+        return (int) ((slot + 1) % recordsPerSegment) * RECORD_BYTES;
+    }
+
+    private ByteBuffer segment(List<ByteBuffer> segments, FileChannel file, long index) throws IOException {
+        while (segments.size() <= index) {
+            long at = (long) segments.size() * segmentBytes;
+            segments.add(file == null
+                    ? ByteBuffer.allocateDirect(segmentBytes)
+                    : file.map(FileChannel.MapMode.READ_WRITE, at, segmentBytes));
+        }
+        return segments.get((int) index);
+    }
+}
@@ -0,0 +1,281 @@
+package com.example.coffeedms;
+
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Immutable sorted map. {@link #put} and {@link #remove} return a new map
+ * that shares all but O(log n) nodes with the old one, so a map can be
+ * handed to other threads once and then read without locking.
+ * <p>
+ * Keys are in natural order, null first. The tree is balanced by subtree
+ * size, which also gives {@link #valueAt(int)} in O(log n).
+ */
+final class PersistentTreeMap<K extends Comparable<? super K>, V> {
+    private static final PersistentTreeMap<?, ?> EMPTY = new PersistentTreeMap<>(null);
+    private static final Comparator<Comparable<Object>> ORDER =
+            Comparator.nullsFirst(Comparator.naturalOrder());
+    /** A subtree is rebalanced once its sibling outweighs it this many times. */
+    private static final int DELTA = 3;
+    /** Rebalancing rotates twice if the inner grandchild is this much heavier. */
+    private static final int RATIO = 2;
+
+    private static final class Node<K, V> {
+        final K key;
+        final V value;
+        final Node<K, V> left;
+        final Node<K, V> right;
+        final int size;
+
+        Node(K key, V value, Node<K, V> left, Node<K, V> right) {
+            this.key = key;
+            this.value = value;
+            this.left = left;
+            this.right = right;
+            this.size = size(left) + size(right) + 1;
+        }
+    }
+
+    private final Node<K, V> root;
+
+    private PersistentTreeMap(Node<K, V> root) {
+        this.root = root;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <K extends Comparable<? super K>, V> PersistentTreeMap<K, V> empty() {
+        return (PersistentTreeMap<K, V>) EMPTY;
+    }
+
+    int size() {
+        return size(root);
+    }
+
+    boolean isEmpty() {
+        return root == null;
+    }
+
+    /** @return the value for key, or null if there is none */
+    V get(K key) {
+        Node<K, V> n = find(key);
+        return n == null ? null : n.value;
+    }
+
+    boolean containsKey(K key) {
+        return find(key) != null;
+    }
+
+    /**
+     * @param index position in key order, from 0
+     * @return the value of the index-th key
+     */
+    V valueAt(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size());
+        }
+        Node<K, V> n = root;
+        while (true) {
+            int leftSize = size(n.left);
+            if (index < leftSize) {
+                n = n.left;
+            } else if (index == leftSize) {
+                return n.value;
+            } else {
+                index -= leftSize + 1;
+                n = n.right;
+            }
+        }
+    }
+
+    /** @return this map with key mapped to value */
+    PersistentTreeMap<K, V> put(K key, V value) {
+        Node<K, V> r = put(root, key, value);
+        return r == root ? this : new PersistentTreeMap<>(r);
+    }
+
+    /** @return this map without key */
+    PersistentTreeMap<K, V> remove(K key) {
+        Node<K, V> r = remove(root, key);
+        return r == root ? this : new PersistentTreeMap<>(r);
+    }
+
+    /** Calls action for every mapping, in key order. */
+    void forEach(BiConsumer<? super K, ? super V> action) {
+        for (Iterator<Node<K, V>> it = nodes(false, null, false, false, null, false); it.hasNext(); ) {
+            Node<K, V> n = it.next();
+            action.accept(n.key, n.value);
+        }
+    }
+
+    /** @return every key, ascending */
+    Iterable<K> keys() {
+        return () -> map(nodes(false, null, false, false, null, false), n -> n.key);
+    }
+
+    /** @return every value, in key order */
+    Iterable<V> values() {
+        return () -> map(nodes(false, null, false, false, null, false), n -> n.value);
+    }
+
+    /** @return values of keys from from (inclusive or not), in key order */
+    Iterable<V> tailValues(K from, boolean inclusive) {
+        return () -> map(nodes(true, from, inclusive, false, null, false), n -> n.value);
+    }
+
+    /** @return values of keys up to to (inclusive or not), in key order */
+    Iterable<V> headValues(K to, boolean inclusive) {
+        return () -> map(nodes(false, null, false, true, to, inclusive), n -> n.value);
+    }
+
+    /** @return values of keys between from and to, in key order */
+    Iterable<V> subValues(K from, boolean fromInclusive, K to, boolean toInclusive) {
+        return () -> map(nodes(true, from, fromInclusive, true, to, toInclusive), n -> n.value);
+    }
+
+    private Node<K, V> find(K key) {
+        Node<K, V> n = root;
+        while (n != null) {
+            int c = compare(key, n.key);
+            if (c == 0) return n;
+            n = c < 0 ? n.left : n.right;
+        }
+        return null;
+    }
+
+    /** In-order walk of the nodes between the given bounds. */
+    private Iterator<Node<K, V>> nodes(boolean bounded, K low, boolean lowInclusive,
+                                       boolean capped, K high, boolean highInclusive) {
+        ArrayDeque<Node<K, V>> stack = new ArrayDeque<>();
+        for (Node<K, V> n = root; n != null; ) {
+            int c = bounded ? compare(n.key, low) : 1;
+            if (c < 0 || c == 0 && !lowInclusive) {
+                n = n.right;
+            } else {
+                stack.push(n);
+                n = n.left;
+            }
+        }
+        return new Iterator<Node<K, V>>() {
+            @Override
+            public boolean hasNext() {
+                if (stack.isEmpty()) return false;
+                if (!capped) return true;
+                int c = compare(stack.peek().key, high);
+                return c < 0 || c == 0 && highInclusive;
+            }
+
+            @Override
+            public Node<K, V> next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                Node<K, V> n = stack.pop();
+                for (Node<K, V> m = n.right; m != null; m = m.left) {
+                    stack.push(m);
+                }
+                return n;
+            }
+        };
+    }
+
+    private static <T, R> Iterator<R> map(Iterator<T> it, Function<T, R> f) {
+        return new Iterator<R>() {
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public R next() {
+                return f.apply(it.next());
+            }
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int compare(Object a, Object b) {
+        return ORDER.compare((Comparable<Object>) a, (Comparable<Object>) b);
+    }
+
+    private static int size(Node<?, ?> n) {
+        return n == null ? 0 : n.size;
+    }
+
+    private static <K, V> Node<K, V> put(Node<K, V> n, K key, V value) {
+        if (n == null) return new Node<>(key, value, null, null);
+        int c = compare(key, n.key);
+        if (c < 0) {
+            Node<K, V> l = put(n.left, key, value);
+            return l == n.left ? n : balance(n.key, n.value, l, n.right);
+        }
+        if (c > 0) {
+            Node<K, V> r = put(n.right, key, value);
+            return r == n.right ? n : balance(n.key, n.value, n.left, r);
+        }
+        return n.value == value ? n : new Node<>(key, value, n.left, n.right);
+    }
+
+    private static <K, V> Node<K, V> remove(Node<K, V> n, K key) {
+        if (n == null) return null;
+        int c = compare(key, n.key);
+        if (c < 0) {
+            Node<K, V> l = remove(n.left, key);
+            return l == n.left ? n : balance(n.key, n.value, l, n.right);
+        }
+        if (c > 0) {
+            Node<K, V> r = remove(n.right, key);
+            return r == n.right ? n : balance(n.key, n.value, n.left, r);
+        }
+        return glue(n.left, n.right);
+    }
+
+    /** Joins two subtrees whose keys were separated by a removed node. */
+    private static <K, V> Node<K, V> glue(Node<K, V> l, Node<K, V> r) {
+        if (l == null) return r;
+        if (r == null) return l;
+        if (l.size > r.size) {
+            Node<K, V> max = l;
+            while (max.right != null) max = max.right;
+            return balance(max.key, max.value, removeMax(l), r);
+        }
+        Node<K, V> min = r;
+        while (min.left != null) min = min.left;
+        return balance(min.key, min.value, l, removeMin(r));
+    }
+
+    private static <K, V> Node<K, V> removeMin(Node<K, V> n) {
+        if (n.left == null) return n.right;
+        return balance(n.key, n.value, removeMin(n.left), n.right);
+    }
+
+    private static <K, V> Node<K, V> removeMax(Node<K, V> n) {
+        if (n.right == null) return n.left;
+        return balance(n.key, n.value, n.left, removeMax(n.right));
+    }
+
+    /** Builds a node, rotating if one side became too heavy after a single change. */
+    private static <K, V> Node<K, V> balance(K key, V value, Node<K, V> l, Node<K, V> r) {
+        int sl = size(l);
+        int sr = size(r);
+        if (sl + sr <= 1) return new Node<>(key, value, l, r);
+        if (sr > DELTA * sl) {
+            Node<K, V> rl = r.left;
+            if (size(rl) < RATIO * size(r.right)) {
+                return new Node<>(r.key, r.value, new Node<>(key, value, l, rl), r.right);
+            }
+            return new Node<>(rl.key, rl.value, new Node<>(key, value, l, rl.left),
+                    new Node<>(r.key, r.value, rl.right, r.right));
+        }
+        if (sl > DELTA * sr) {
+            Node<K, V> lr = l.right;
+            if (size(lr) < RATIO * size(l.left)) {
+                return new Node<>(l.key, l.value, l.left, new Node<>(key, value, lr, r));
+            }
+            return new Node<>(lr.key, lr.value, new Node<>(l.key, l.value, l.left, lr.left),
+                    new Node<>(key, value, lr.right, r));
+        }
+        return new Node<>(key, value, l, r);
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.coffeedms;
+
+/**
+ * Why a line was skipped during a batch import.
+ */
+public enum RejectReason {
+    PARSE_ERROR("invalid line"),
+    BAD_ROAST_LEVEL("bad roast level"),
+    BAD_DATE("bad roast date"),
+    DUPLICATE_ID("duplicate ID"),
+    /** The database refused the row, e.g. a field too long for its column. */
+    REFUSED("refused by database");
+
+    private final String label;
+
+    RejectReason(String label) {
+        this.label = label;
+    }
+
+    /**
+     * @return short human-readable description, e.g. "bad roast date"
+     */
+    public String getLabel() {
+        return label;
+    }
+}
@@ -0,0 +1,204 @@
+package com.example.coffeedms;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Collects the lines skipped by a batch import: a counter per
+ * {@link RejectReason}, the first few rejects kept in memory as samples,
+ * and optionally every reject written to a buffered file as
+ * {@code lineNo<TAB>reason<TAB>text}.
+ * The text of a reject is only materialized when a sample slot is free
+ * or a reject file is open, so a feed full of bad lines costs a counter
+ * increment per line. Not thread-safe.
+ */
+public class RejectReport implements Closeable {
+    /** Samples kept by {@link #RejectReport()}. */
+    public static final int DEFAULT_SAMPLE_LIMIT = 20;
+
+    private final long[] counts = new long[RejectReason.values().length];
+    private final List<Reject> samples = new ArrayList<>();
+    private final int sampleLimit;
+    private final Path rejectFile;
+    private final BufferedWriter writer;
+
+    /**
+     * Keeps {@value #DEFAULT_SAMPLE_LIMIT} samples and writes no file.
+     */
+    public RejectReport() {
+        this.sampleLimit = DEFAULT_SAMPLE_LIMIT;
+        this.rejectFile = null;
+        this.writer = null;
+    }
+
+    /**
+     * @param sampleLimit maximum rejects kept in memory
+     * @param rejectFile  file that receives every reject, or null for none
+     * @throws IOException if the reject file cannot be created
+     */
+    public RejectReport(int sampleLimit, Path rejectFile) throws IOException {
+        if (sampleLimit < 0) {
+            throw new IllegalArgumentException("sampleLimit must not be negative");
+        }
+        this.sampleLimit = sampleLimit;
+        this.rejectFile = rejectFile;
+        this.writer = rejectFile == null ? null
+                : Files.newBufferedWriter(rejectFile, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Records one skipped line.
+     *
+     * @param lineNo 1-based line number in the imported file
+     * @param reason why the line was skipped
+     * @param text   supplies the line text (or the beanID for duplicates);
+     *               only called if the text is needed
+     * @throws IOException if the reject file cannot be written
+     */
+    public void record(long lineNo, RejectReason reason, Supplier<String> text) throws IOException {
+        counts[reason.ordinal()]++;
+        if (!wantsText()) return;
+        String t = text.get();
+        if (samples.size() < sampleLimit) {
+            samples.add(new Reject(lineNo, reason, t));
+        }
+        if (writer != null) {
+            writer.write(Long.toString(lineNo));
+            writer.write('\t');
+            writer.write(reason.name());
+            writer.write('\t');
+            writer.write(t);
+            writer.newLine();
+        }
+    }
+
+    /**
+     * @return true if the next record would keep or write its text
+     */
+    public boolean wantsText() {
+        return writer != null || samples.size() < sampleLimit;
+    }
+
+    public int getSampleLimit() {
+        return sampleLimit;
+    }
+
+    public long getCount(RejectReason reason) {
+        return counts[reason.ordinal()];
+    }
+
+    /**
+     * @return number of rejects of every reason
+     */
+    public long getTotal() {
+        long total = 0;
+        for (long c : counts) total += c;
+        return total;
+    }
+
+    /**
+     * @return the first rejects, in the order recorded
+     */
+    public List<Reject> getSamples() {
+        return Collections.unmodifiableList(samples);
+    }
+
+    /**
+     * @return the reject file, or null if none is written
+     */
+    public Path getRejectFile() {
+        return rejectFile;
+    }
+
+    /**
+     * Pushes buffered reject lines to the file.
+     *
+     * @throws IOException if the reject file cannot be written
+     */
+    public void flush() throws IOException {
+        if (writer != null) writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (writer != null) writer.close();
+    }
+
+    /**
+     * @return e.g. "2 duplicate ID, 1 bad roast date", or "none"
+     */
+    public String summary() {
+        StringBuilder sb = new StringBuilder();
+        for (RejectReason r : RejectReason.values()) {
+            long c = counts[r.ordinal()];
+            if (c == 0) continue;
+            if (sb.length() > 0) sb.append(", ");
+            sb.append(c).append(' ').append(r.getLabel());
+        }
+        return sb.length() == 0 ? "none" : sb.toString();
+    }
+
+    /**
+     * Multi-line description for display: the summary, up to
+     * {@code maxSamples} sample lines, and the reject file if any.
+     *
+     * @param maxSamples sample lines to include
+     * @return description, or "" if nothing was rejected
+     */
+    public String describe(int maxSamples) {
+        long total = getTotal();
+        if (total == 0) return "";
+        StringBuilder sb = new StringBuilder("Skipped " + total + " line(s): " + summary());
+        int shown = Math.min(maxSamples, samples.size());
+        for (int i = 0; i < shown; i++) {
+            sb.append(System.lineSeparator()).append("  ").append(samples.get(i));
+        }
+        if (total > shown) {
+            sb.append(System.lineSeparator()).append("  ... ").append(total - shown).append(" more");
+        }
+        if (rejectFile != null) {
+            sb.append(System.lineSeparator()).append("All rejects written to ").append(rejectFile);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * One skipped line.
+     */
+    public static final class Reject {
+        private final long lineNo;
+        private final RejectReason reason;
+        private final String text;
+
+        Reject(long lineNo, RejectReason reason, String text) {
+            this.lineNo = lineNo;
+            this.reason = reason;
+            this.text = text;
+        }
+
+        public long getLineNo() {
+            return lineNo;
+        }
+
+        public RejectReason getReason() {
+            return reason;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        @Override
+        public String toString() {
+            return "line " + lineNo + " (" + reason.getLabel() + "): " + text;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.coffeedms;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded canonicalizing dictionary for strings that repeat across lots
+ * (origin countries and farm names). {@link #canonical(String)} returns
+ * one shared instance per distinct value, so a million lots from a few
+ * thousand farms keep a few thousand farm-name Strings instead of a
+ * million. Once {@code maxEntries} distinct values are held, new values
+ * are returned as-is, so a feed of unique names cannot grow the pool
+ * without bound. Thread-safe.
+ */
+public final class StringPool {
+    /** Default number of distinct values kept. */
+    public static final int DEFAULT_MAX_ENTRIES = 100_000;
+    /** Pool shared by the CSV loader, the database mapper and the GUIs. */
+    public static final StringPool SHARED = new StringPool(DEFAULT_MAX_ENTRIES);
+
+    private final ConcurrentHashMap<String, String> values = new ConcurrentHashMap<>();
+    private final int maxEntries;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder savedBytes = new LongAdder();
+    private final LongAdder overflow = new LongAdder();
+
+    /**
+     * @param maxEntries most distinct values to keep
+     */
+    public StringPool(int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries must be at least 1");
+        }
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * @param s any string, or null
+     * @return the pooled instance equal to s, or s itself if it is new
+     *         and the pool is full
+     */
+    public String canonical(String s) {
+        if (s == null) return null;
+        String pooled = values.get(s);
+        if (pooled != null) {
+            countHit(s.length());
+            return pooled;
+        }
+        if (values.size() >= maxEntries) {
+            overflow.increment();
+            return s;
+        }
+        pooled = values.putIfAbsent(s, s);
+        if (pooled == null) return s;
+        countHit(s.length());
+        return pooled;
+    }
+
+    /**
+     * Records a reuse found by a caller's own cache in front of the pool
+     * (the CSV parser looks values up by their bytes).
+     *
+     * @param length length of the reused value
+     */
+    void countHit(int length) {
+        hits.increment();
+        savedBytes.add(stringBytes(length));
+    }
+
+    /**
+     * @return number of distinct values held
+     */
+    public int size() {
+        return values.size();
+    }
+
+    /**
+     * @return times an existing instance was returned instead of a new one
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return times a new value was not pooled because the pool was full
+     */
+    public long getOverflow() {
+        return overflow.sum();
+    }
+
+    /**
+     * @return estimated heap not retained thanks to the pool (a String plus
+     *         its byte array per reuse, assuming compressed oops and
+     *         Latin-1 content)
+     */
+    public long getSavedBytes() {
+        return savedBytes.sum();
+    }
+
+    /**
+     * @return one line with the pool statistics and current heap usage
+     */
+    public String describe() {
+        Runtime rt = Runtime.getRuntime();
+        long usedMb = (rt.totalMemory() - rt.freeMemory()) >> 20;
+        return String.format("String pool: %d distinct, %d reused (~%d KB saved), %d not pooled;"
+                        + " heap %d MB used of %d MB",
+                size(), getHits(), getSavedBytes() >> 10, getOverflow(),
+                usedMb, rt.maxMemory() >> 20);
+    }
+
+    private static long stringBytes(int length) {
+        // String object, then byte[] header + content rounded up to 8
+        return 24 + ((16 + length + 7) & ~7L);
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.coffeedms;
+
+import java.sql.SQLException;
+import java.util.Objects;
+
+/**
+ * Wraps an {@link SQLException} raised where a checked exception cannot
+ * be thrown, such as while a stream of rows is being consumed.
+ */
+public class UncheckedSQLException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * @param cause the database error; not null
+     */
+    public UncheckedSQLException(SQLException cause) {
+        super(Objects.requireNonNull(cause));
+    }
+
+    /**
+     * @param message detail message
+     * @param cause   the database error; not null
+     */
+    public UncheckedSQLException(String message, SQLException cause) {
+        super(message, Objects.requireNonNull(cause));
+    }
+
+    @Override
+    public SQLException getCause() {
+        return (SQLException) super.getCause();
+    }
+}
@@ -0,0 +1,196 @@
+package com.example.coffeedms;
+
+import org.junit.jupiter.api.*;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for BeanCsvParser, checked against the String.split parsing
+ * the repository used before.
+ */
+class BeanCsvParserTest {
+
+    private Path temp;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        temp = Files.createTempFile("beans_csv", ".txt");
+    }
+
+    @AfterEach
+    void tearDown() {
+        try {
+            Files.deleteIfExists(temp);
+        } catch (IOException ex) {
+            // a mapping may still hold the file open on some platforms
+            temp.toFile().deleteOnExit();
+        }
+    }
+
+    /**
+     * Tests that valid and invalid lines parse exactly like String.split parsing.
+     */
+    @Test
+    void testMatchesStringParsing() throws IOException {
+        List<String> lines = List.of(
+                "ID1,Country1,Farm1,LIGHT,2025-01-01,1.0,5.0,notes1,0.1",
+                "  ID2 , C\u00f4te d'Ivoire ,Farm2, medium ,2025-02-28, 2.25 ,6.50,notes2, 12",
+                "ID3,C,F,Dark,2024-02-29,1e3,1.5E+2,n,-0.0",
+                "ID4,C,F,DARK,2025-03-03,.5,7.,n,0.123456789012345678",
+                "ID5,C,F,DARK,2025-03-03,3,+4.10,n,0.3,,extra",
+                "ID6,C,F,BURNT,2025-03-03,3,4,n,0.3",
+                "ID7,C,F,DARK,2025-02-30,3,4,n,0.3",
+                "ID8,C,F,DARK,2025-3-3,3,4,n,0.3",
+                "ID9,C,F,DARK,2025-03-03,abc,4,n,0.3",
+                "ID10,C,F,DARK,2025-03-03,3,4,n",
+                "",
+                "ID11,C,F,DARK,2025-03-03,3,4,,0.3"
+        );
+        Files.write(temp, String.join("\r\n", lines).getBytes(StandardCharsets.UTF_8));
+
+        List<Object> parsed = parseAll();
+        assertEquals(lines.size(), parsed.size());
+        for (int i = 0; i < lines.size(); i++) {
+            CoffeeBean expected = reference(lines.get(i));
+            Object actual = parsed.get(i);
+            if (expected == null) {
+                assertEquals(lines.get(i), actual, "line " + (i + 1));
+            } else {
+                assertBeanEquals(expected, (CoffeeBean) actual);
+            }
+        }
+    }
+
+    /**
+     * Tests LF, CRLF and lone CR terminators and a missing final newline.
+     */
+    @Test
+    void testLineTerminators() throws IOException {
+        String line = "ID1,C,F,LIGHT,2025-01-01,1.0,5.0,n,0.1";
+        Files.write(temp, (line + "\n" + line.replace("ID1", "ID2") + "\r\n"
+                + line.replace("ID1", "ID3") + "\r" + line.replace("ID1", "ID4"))
+                .getBytes(StandardCharsets.UTF_8));
+
+        List<Object> parsed = parseAll();
+        assertEquals(4, parsed.size());
+        assertEquals("ID4", ((CoffeeBean) parsed.get(3)).getBeanID());
+    }
+
+    /**
+     * Tests a file large enough to be memory-mapped.
+     */
+    @Test
+    void testMappedFile() throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; lines.size() * 60L < 2 * BeanCsvParser.MAP_THRESHOLD; i++) {
+            lines.add("ID" + i + ",Colombia,Farm" + (i % 50) + ",MEDIUM,2025-04-"
+                    + String.format("%02d", i % 30 + 1) + "," + (i % 100) / 4.0 + ",12.75,notes,1.1");
+        }
+        Files.write(temp, lines);
+
+        List<Object> parsed = parseAll();
+        assertEquals(lines.size(), parsed.size());
+        for (int i = 0; i < lines.size(); i += 997) {
+            assertBeanEquals(reference(lines.get(i)), (CoffeeBean) parsed.get(i));
+        }
+    }
+
+    /**
+     * Tests that origins and farms are shared instances and that a full
+     * pool stops taking new values.
+     */
+    @Test
+    void testPooledNames() throws IOException {
+        Files.write(temp, List.of(
+                "ID1,Kenya,Farm1,LIGHT,2025-01-01,1.0,5.0,n,0.1",
+                "ID2,Kenya,Farm2,LIGHT,2025-01-01,1.0,5.0,n,0.1",
+                "ID3,Peru,Farm1,LIGHT,2025-01-01,1.0,5.0,n,0.1",
+                "ID4,Kenya,Farm3,LIGHT,2025-01-01,1.0,5.0,n,0.1"));
+        StringPool pool = new StringPool(3);
+        List<CoffeeBean> beans = new ArrayList<>();
+        try (FileChannel ch = FileChannel.open(temp, StandardOpenOption.READ)) {
+            new BeanCsvParser(pool).parse(ch, new BeanCsvParser.LineHandler() {
+                @Override
+                public void bean(long lineNo, CoffeeBean bean) {
+                    beans.add(bean);
+                }
+
+                @Override
+                public void malformed(long lineNo, RejectReason reason, Supplier<String> line) {
+                    fail(line.get());
+                }
+            });
+        }
+        assertSame(beans.get(0).getOriginCountry(), beans.get(1).getOriginCountry());
+        assertSame(beans.get(0).getOriginCountry(), beans.get(3).getOriginCountry());
+        assertSame(beans.get(0).getFarmName(), beans.get(2).getFarmName());
+        assertEquals(3, pool.size());
+        assertEquals(2, pool.getOverflow());
+        assertEquals(3, pool.getHits());
+        assertEquals("Farm3", beans.get(3).getFarmName());
+    }
+
+    /** Parses temp; beans are returned as-is and malformed lines as their text. */
+    private List<Object> parseAll() throws IOException {
+        List<Object> out = new ArrayList<>();
+        try (FileChannel ch = FileChannel.open(temp, StandardOpenOption.READ)) {
+            new BeanCsvParser().parse(ch, new BeanCsvParser.LineHandler() {
+                @Override
+                public void bean(long lineNo, CoffeeBean bean) {
+                    assertEquals(out.size() + 1, lineNo);
+                    out.add(bean);
+                }
+
+                @Override
+                public void malformed(long lineNo, RejectReason reason, Supplier<String> line) {
+                    assertEquals(out.size() + 1, lineNo);
+                    out.add(line.get());
+                }
+            });
+        }
+        return out;
+    }
+
+    private static CoffeeBean reference(String line) {
+        try {
+            String[] p = line.split(",");
+            return new CoffeeBean(
+                    p[0].trim(),
+                    p[1].trim(),
+                    p[2].trim(),
+                    RoastLevel.fromString(p[3]),
+                    LocalDate.parse(p[4].trim()),
+                    Double.parseDouble(p[5].trim()),
+                    new BigDecimal(p[6].trim()),
+                    p[7].trim(),
+                    Double.parseDouble(p[8].trim())
+            );
+        } catch (Exception ex) {
+            return null;
+        }
+    }
+
+    private static void assertBeanEquals(CoffeeBean expected, CoffeeBean actual) {
+        assertNotNull(actual, expected.getBeanID());
+        assertEquals(expected.getBeanID(), actual.getBeanID());
+        assertEquals(expected.getOriginCountry(), actual.getOriginCountry());
+        assertEquals(expected.getFarmName(), actual.getFarmName());
+        assertEquals(expected.getRoastLevel(), actual.getRoastLevel());
+        assertEquals(expected.getRoastDate(), actual.getRoastDate());
+        assertEquals(Double.doubleToLongBits(expected.getQuantityKg()),
+                Double.doubleToLongBits(actual.getQuantityKg()));
+        assertEquals(expected.getCostPerKg(), actual.getCostPerKg());
+        assertEquals(expected.getFlavorNotes(), actual.getFlavorNotes());
+        assertEquals(Double.doubleToLongBits(expected.getCaffeineContentMgPerGram()),
+                Double.doubleToLongBits(actual.getCaffeineContentMgPerGram()));
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.coffeedms;
+
+import org.junit.jupiter.api.*;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for BeanPageModel, paging over a BeanRepository.
+ */
+class BeanPageModelTest {
+
+    private BeanRepository repo;
+    private BeanPageModel model;
+
+    @BeforeEach
+    void setUp() {
+        repo = new BeanRepository();
+        for (int i = 1; i <= 7; i++) {
+            repo.add(bean("ID" + i));
+        }
+        model = new BeanPageModel(3, repo::findPage);
+        repo.addChangeListener(model::applyChanges);
+        model.refresh();
+    }
+
+    /**
+     * Tests moving between pages in beanID order.
+     */
+    @Test
+    void testPaging() {
+        assertEquals(List.of("ID1", "ID2", "ID3"), ids());
+        assertFalse(model.hasPreviousPage());
+        assertTrue(model.hasNextPage());
+
+        model.nextPage();
+        model.nextPage();
+        assertEquals(List.of("ID7"), ids());
+        assertEquals(3, model.getPageNumber());
+        assertFalse(model.hasNextPage());
+
+        model.previousPage();
+        assertEquals(List.of("ID4", "ID5", "ID6"), ids());
+        assertTrue(model.hasPreviousPage());
+    }
+
+    /**
+     * Tests that changes patch the visible page, that a page shortened by
+     * removals is refilled from the lots after it, and that a page emptied
+     * by removals falls back to the one before.
+     */
+    @Test
+    void testChangesPatchPage() throws InterruptedException {
+        repo.add(bean("ID0"));
+        repo.add(bean("ID9"));
+        settle();
+        assertEquals(List.of("ID0", "ID1", "ID2"), ids());
+        repo.removeByID("ID1");
+        repo.consume("ID2", 1.0);
+        settle();
+        assertEquals(List.of("ID0", "ID2", "ID3"), ids());
+        assertEquals(0.5, model.getValueAt(1, 5));
+        assertTrue(model.hasNextPage());
+
+        model.nextPage();
+        model.nextPage();
+        assertEquals(List.of("ID7", "ID9"), ids());
+        repo.removeByID("ID7");
+        repo.removeByID("ID9");
+        settle();
+        assertEquals(List.of("ID4", "ID5", "ID6"), ids());
+        assertEquals(2, model.getPageNumber());
+        assertFalse(model.hasNextPage());
+    }
+
+    /**
+     * Tests that removals on a page before the last keep it full, and
+     * that the next page flag clears once no lots are left after it.
+     */
+    @Test
+    void testRemovalsKeepPageFull() throws InterruptedException {
+        repo.removeByID("ID1");
+        repo.removeByID("ID2");
+        settle();
+        assertEquals(List.of("ID3", "ID4", "ID5"), ids());
+        assertTrue(model.hasNextPage());
+
+        repo.removeByID("ID3");
+        repo.removeByID("ID6");
+        settle();
+        assertEquals(List.of("ID4", "ID5", "ID7"), ids());
+        assertFalse(model.hasNextPage());
+    }
+
+    /**
+     * Tests that a failing page read leaves the model as it was.
+     */
+    @Test
+    void testFailedReadKeepsPage() {
+        boolean[] fail = {false};
+        model = new BeanPageModel(3, (after, limit) -> {
+            if (fail[0]) throw new IllegalStateException("down");
+            return repo.findPage(after, limit);
+        });
+        model.refresh();
+        fail[0] = true;
+        assertThrows(IllegalStateException.class, model::nextPage);
+        assertEquals(List.of("ID1", "ID2", "ID3"), ids());
+        assertEquals(1, model.getPageNumber());
+    }
+
+    private void settle() throws InterruptedException {
+        assertTrue(repo.changes().awaitDelivery(5000));
+    }
+
+    private List<String> ids() {
+        List<String> out = new ArrayList<>();
+        for (int r = 0; r < model.getRowCount(); r++) {
+            out.add((String) model.getValueAt(r, 0));
+        }
+        return out;
+    }
+
+    private static CoffeeBean bean(String id) {
+        return new CoffeeBean(
+                id, "Colombia", "Farm", RoastLevel.MEDIUM, LocalDate.of(2025, 5, 1),
+                1.5, new BigDecimal("7.25"), "cocoa", 0.2
+        );
+    }
+}
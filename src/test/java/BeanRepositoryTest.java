@@ -3,9 +3,21 @@ package com.example.coffeedms;
 import org.junit.jupiter.api.*;
 import java.io.IOException;
 import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -44,6 +56,74 @@ class BeanRepositoryTest {
         Files.deleteIfExists(temp);
     }
 
+    /**
+     * Tests that importFile reports accepted, duplicate and malformed counts.
+     */
+    @Test
+    void testImportFileCounts() throws IOException {
+        Path temp = Files.createTempFile("beans_import", ".txt");
+        List<String> lines = List.of(
+                "ID1,Country1,Farm1,LIGHT,2025-01-01,1.0,5.0,notes1,0.1",
+                "ID1,Country1,FarmDup,LIGHT,2025-01-01,1.0,5.0,notes1,0.1",
+                "ID2,Country2,Farm2,MEDIUM,not-a-date,2.0,6.0,notes2,0.2",
+                "ID3,Country3,Farm3,DARK,2025-03-03,3.0,7.0,notes3,0.3"
+        );
+        Files.write(temp, lines);
+
+        ImportResult result = repo.importFile(temp.toString());
+        assertEquals(4, result.getLinesRead());
+        assertEquals(2, result.getAccepted());
+        assertEquals(1, result.getDuplicates());
+        assertEquals(1, result.getMalformed());
+        assertEquals("Farm1", repo.findByID("ID1").getFarmName());
+
+        Files.deleteIfExists(temp);
+    }
+
+    /**
+     * Tests per-reason reject counts, samples with line numbers, and the
+     * reject file, for both the serial and the parallel loader.
+     */
+    @Test
+    void testRejectReport() throws IOException {
+        Path temp = Files.createTempFile("beans_rejects", ".txt");
+        Path rejectFile = Files.createTempFile("beans_rejects", ".log");
+        List<String> lines = List.of(
+                "ID1,Country1,Farm1,LIGHT,2025-01-01,1.0,5.0,notes1,0.1",
+                "ID2,Country2,Farm2,BURNT,2025-01-01,1.0,5.0,notes2,0.1",
+                "ID3,Country3,Farm3,DARK,2025-13-01,1.0,5.0,notes3,0.1",
+                "ID1,Country1,Farm1,LIGHT,2025-01-01,1.0,5.0,notes1,0.1",
+                "ID4,Country4,Farm4,DARK,2025-01-01,lots,5.0,notes4,0.1"
+        );
+        Files.write(temp, lines);
+
+        RejectReport serial;
+        try (RejectReport rejects = new RejectReport(2, rejectFile)) {
+            repo.importFile(temp.toString(), rejects);
+            serial = rejects;
+        }
+        assertEquals(1, serial.getCount(RejectReason.BAD_ROAST_LEVEL));
+        assertEquals(1, serial.getCount(RejectReason.BAD_DATE));
+        assertEquals(1, serial.getCount(RejectReason.DUPLICATE_ID));
+        assertEquals(1, serial.getCount(RejectReason.PARSE_ERROR));
+        assertEquals(2, serial.getSamples().size());
+        assertEquals(2, serial.getSamples().get(0).getLineNo());
+        assertEquals(lines.get(1), serial.getSamples().get(0).getText());
+
+        List<String> written = Files.readAllLines(rejectFile);
+        assertEquals(4, written.size());
+        assertEquals("4\tDUPLICATE_ID\tID1", written.get(2));
+
+        RejectReport parallel = new RejectReport();
+        new BeanRepository().loadFromFileParallel(temp.toString(), 2, parallel);
+        assertEquals(serial.summary(), parallel.summary());
+        assertEquals(List.of(2L, 3L, 4L, 5L), parallel.getSamples().stream()
+                .map(RejectReport.Reject::getLineNo).collect(Collectors.toList()));
+
+        Files.deleteIfExists(temp);
+        Files.deleteIfExists(rejectFile);
+    }
+
     /**
      * Tests that loading from a non-existent file throws IOException.
      */
@@ -136,6 +216,100 @@ class BeanRepositoryTest {
         assertFalse(repo.update(bean));
     }
 
+    /**
+     * Tests that findAll keeps insertion order across update and remove.
+     */
+    @Test
+    void testFindAllKeepsInsertionOrder() {
+        for (String id : List.of("B", "A", "C")) {
+            repo.add(new CoffeeBean(
+                    id, "C", "F",
+                    RoastLevel.LIGHT, LocalDate.now(),
+                    1.0, new BigDecimal("1.0"),
+                    "n", 0.1
+            ));
+        }
+        repo.update(new CoffeeBean(
+                "A", "CUpd", "F",
+                RoastLevel.DARK, LocalDate.now(),
+                2.0, new BigDecimal("2.0"),
+                "n", 0.1
+        ));
+        repo.removeByID("B");
+
+        List<CoffeeBean> all = repo.findAll();
+        assertEquals(2, all.size());
+        assertEquals("A", all.get(0).getBeanID());
+        assertEquals("CUpd", all.get(0).getOriginCountry());
+        assertEquals("C", all.get(1).getBeanID());
+    }
+
+    /**
+     * Tests that the parallel loader matches the serial one, including
+     * first-occurrence-wins for duplicate IDs spread across chunks.
+     */
+    @Test
+    void testLoadFromFileParallelMatchesSerial() throws IOException {
+        Path temp = Files.createTempFile("beans_parallel", ".txt");
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            // every 7th line repeats an earlier ID with a different farm
+            int id = i % 7 == 6 ? i / 2 : i;
+            lines.add("ID" + id + ",Country,Farm" + i + ",DARK,2025-03-03,1.5,4.25,notes,0.3");
+        }
+        lines.add("not,a,valid,line");
+        Files.write(temp, lines);
+
+        BeanRepository serial = new BeanRepository();
+        serial.loadFromFile(temp.toString());
+        ImportResult result = repo.loadFromFileParallel(temp.toString(), 4);
+
+        assertEquals(lines.size(), result.getLinesRead());
+        assertEquals(serial.findAll().size(), result.getAccepted());
+        assertEquals(lines.size() - result.getAccepted(), result.getRejected());
+        List<CoffeeBean> expected = serial.findAll();
+        List<CoffeeBean> actual = repo.findAll();
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getBeanID(), actual.get(i).getBeanID());
+            assertEquals(expected.get(i).getFarmName(), actual.get(i).getFarmName());
+        }
+
+        Files.deleteIfExists(temp);
+    }
+
+    /**
+     * Tests that files with lone-CR or CRLF line endings are split into
+     * several chunks at line breaks and load like the serial loader.
+     */
+    @Test
+    void testLoadFromFileParallelLineEndings() throws IOException {
+        Path temp = Files.createTempFile("beans_parallel_cr", ".txt");
+        for (String eol : new String[]{"\r", "\r\n"}) {
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < 20000; i++) {
+                text.append("ID").append(i).append(",Country,Farm,DARK,2025-03-03,1.5,4.25,notes,0.3").append(eol);
+            }
+            Files.write(temp, text.toString().getBytes(StandardCharsets.UTF_8));
+
+            try (FileChannel ch = FileChannel.open(temp, StandardOpenOption.READ)) {
+                List<Long> bounds = BeanRepository.chunkBounds(ch, ch.size(), 4);
+                assertTrue(bounds.size() > 2);
+                ByteBuffer before = ByteBuffer.allocate(1);
+                for (int i = 1; i + 1 < bounds.size(); i++) {
+                    before.clear();
+                    ch.read(before, bounds.get(i) - 1);
+                    assertEquals(eol.charAt(eol.length() - 1), (char) before.get(0));
+                }
+            }
+            BeanRepository parallel = new BeanRepository();
+            ImportResult result = parallel.loadFromFileParallel(temp.toString(), 4);
+            assertEquals(20000, result.getLinesRead());
+            assertEquals(20000, result.getAccepted());
+            assertEquals("ID19999", parallel.findAll().get(19999).getBeanID());
+        }
+        Files.deleteIfExists(temp);
+    }
+
     /**
      * Tests the custom action calculateTotalInventoryValue.
      */
@@ -162,4 +336,493 @@ class BeanRepositoryTest {
 
         assertEquals(0, repo.calculateTotalInventoryValue().compareTo(expected));
     }
+
+    /**
+     * Tests that the maintained aggregates equal a full recomputation,
+     * scale included, after a mix of adds, updates and removes.
+     */
+    @Test
+    void testAggregatesMatchRecomputation() {
+        String[] costs = {"10.0", "7.125", "3", "12.50", "0.3333"};
+        double[] qtys = {1.0, 2.5, 0.1, 0.2, 1e7};
+        String[] origins = {"Colombia", "Kenya", "Ethiopia"};
+        for (int i = 0; i < 60; i++) {
+            repo.add(new CoffeeBean(
+                    "ID" + i, origins[i % 3], "F",
+                    RoastLevel.values()[i % 3], LocalDate.now(),
+                    qtys[i % 5], new BigDecimal(costs[i % 5]),
+                    "n", 0.1
+            ));
+        }
+        for (int i = 0; i < 60; i += 4) {
+            repo.update(new CoffeeBean(
+                    "ID" + i, "Brazil", "F",
+                    RoastLevel.DARK, LocalDate.now(),
+                    3.0, new BigDecimal("1.1"),
+                    "n", 0.1
+            ));
+        }
+        for (int i = 1; i < 60; i += 3) {
+            repo.removeByID("ID" + i);
+        }
+        // drop every bean that has the highest-scale cost
+        for (int i = 4; i < 60; i += 5) {
+            repo.removeByID("ID" + i);
+        }
+
+        BigDecimal value = BigDecimal.ZERO;
+        BigDecimal kg = BigDecimal.ZERO;
+        Map<RoastLevel, BigDecimal> byRoast = new EnumMap<>(RoastLevel.class);
+        Map<String, BigDecimal> byOrigin = new HashMap<>();
+        for (CoffeeBean b : repo.findAll()) {
+            value = value.add(b.calculateValue());
+            kg = kg.add(BigDecimal.valueOf(b.getQuantityKg()));
+            byRoast.put(b.getRoastLevel(), byRoast.getOrDefault(b.getRoastLevel(), BigDecimal.ZERO)
+                    .add(b.calculateValue()));
+            byOrigin.put(b.getOriginCountry(), byOrigin.getOrDefault(b.getOriginCountry(), BigDecimal.ZERO)
+                    .add(b.calculateValue()));
+        }
+        assertEquals(value, repo.calculateTotalInventoryValue());
+        assertEquals(kg, repo.getTotalQuantityKg());
+        assertEquals(byRoast, repo.getValueByRoastLevel());
+        assertEquals(byOrigin, repo.getValueByOrigin());
+    }
+
+    /**
+     * Tests that the fixed-point valuation gives exactly what BigDecimal
+     * arithmetic gives, scale included, also for values that overflow a
+     * long and for very large or small exponents.
+     */
+    @Test
+    void testFixedPointValuationParity() {
+        String[] costs = {"10.00", "7.125", "4E+2", "0.0001", "92233720368547758.07",
+                "123456789012345678901234567890.5", "-3.5", "0"};
+        double[] qtys = {1.0, 0.1, 2.675, 1e7, 123456.789, 1e300, 4.9e-324, -0.0, 9.223372036854775E18};
+        Random rnd = new Random(13);
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 400; i++) {
+            CoffeeBean b = new CoffeeBean(
+                    "ID" + i, "O" + (i % 4), "F",
+                    RoastLevel.values()[i % 3], LocalDate.now(),
+                    qtys[rnd.nextInt(qtys.length)], new BigDecimal(costs[rnd.nextInt(costs.length)]),
+                    "n", 0.1
+            );
+            assertEquals(b.getCostPerKg().multiply(BigDecimal.valueOf(b.getQuantityKg())),
+                    b.calculateValue());
+            repo.add(b);
+            ids.add(b.getBeanID());
+            if (rnd.nextInt(3) == 0) {
+                repo.removeByID(ids.remove(rnd.nextInt(ids.size())));
+            }
+        }
+
+        BigDecimal value = BigDecimal.ZERO;
+        BigDecimal kg = BigDecimal.ZERO;
+        for (CoffeeBean b : repo.findAll()) {
+            value = value.add(b.getCostPerKg().multiply(BigDecimal.valueOf(b.getQuantityKg())));
+            kg = kg.add(BigDecimal.valueOf(b.getQuantityKg()));
+        }
+        assertEquals(value, repo.calculateTotalInventoryValue());
+        assertEquals(kg, repo.getTotalQuantityKg());
+    }
+
+    /**
+     * Tests that the top-N queries return the head of a full sort, ties
+     * included, on the base repository and on a storage engine.
+     */
+    @Test
+    void testTopNMatchesFullSort() {
+        BeanRepository columnar = new ColumnarBeanRepository();
+        LocalDate base = LocalDate.of(2025, 1, 1);
+        Random rnd = new Random(17);
+        for (int i = 0; i < 300; i++) {
+            CoffeeBean b = new CoffeeBean(
+                    String.format("T%03d", rnd.nextInt(1000)), "Kenya", "F",
+                    RoastLevel.MEDIUM, base.plusDays(rnd.nextInt(20)),
+                    rnd.nextInt(50), BigDecimal.valueOf(rnd.nextInt(400), 2),
+                    "n", rnd.nextInt(10) / 10.0
+            );
+            repo.add(b);
+            columnar.add(b);
+        }
+        repo.removeByID(repo.findAll().get(0).getBeanID());
+        columnar.removeByID(columnar.findAll().get(0).getBeanID());
+
+        for (BeanRepository r : List.of(repo, columnar)) {
+            List<CoffeeBean> all = r.findAll();
+            for (int n : new int[]{0, 1, 20, 50, 1000}) {
+                assertEquals(head(all, BeanRepository.MOST_VALUABLE_FIRST, n), ids(r.mostValuable(n)));
+                assertEquals(head(all, BeanRepository.OLDEST_ROAST_FIRST, n), ids(r.oldestRoasts(n)));
+                assertEquals(head(all, BeanRepository.HIGHEST_CAFFEINE_FIRST, n), ids(r.highestCaffeine(n)));
+            }
+        }
+        assertThrows(IllegalArgumentException.class, () -> repo.topN(-1, BeanRepository.OLDEST_ROAST_FIRST));
+    }
+
+    private static List<String> head(List<CoffeeBean> beans, Comparator<CoffeeBean> order, int n) {
+        return ids(beans.stream().sorted(order).limit(n).collect(Collectors.toList()));
+    }
+
+    /**
+     * Tests that walking findPage visits every bean once in ID order, and
+     * that inserting IDs before the cursor does not shift later pages.
+     */
+    @Test
+    void testFindPageWalksSortedIDs() {
+        List<BeanRepository> repos = List.of(repo, new ConcurrentBeanRepository(),
+                new ColumnarBeanRepository());
+        Random rnd = new Random(3);
+        for (int i = 0; i < 250; i++) {
+            CoffeeBean b = new CoffeeBean(
+                    String.format("P%04d", rnd.nextInt(10000)), "Kenya", "F",
+                    RoastLevel.LIGHT, LocalDate.of(2025, 3, 1), 1.0, new BigDecimal("2.00"), "n", 0.1
+            );
+            repos.forEach(r -> r.add(b));
+        }
+        for (BeanRepository r : repos) {
+            List<String> expected = ids(r.findAll());
+            expected.sort(null);
+            List<String> walked = new ArrayList<>();
+            String cursor = null;
+            List<CoffeeBean> page;
+            do {
+                page = r.findPage(cursor, 32);
+                assertTrue(page.size() <= 32);
+                walked.addAll(ids(page));
+                if (!page.isEmpty()) cursor = page.get(page.size() - 1).getBeanID();
+                // a concurrent insert behind the cursor must not reappear later
+                r.add(new CoffeeBean("A" + walked.size(), "Kenya", "F", RoastLevel.LIGHT,
+                        LocalDate.of(2025, 3, 1), 1.0, new BigDecimal("2.00"), "n", 0.1));
+            } while (page.size() == 32);
+            assertEquals(expected, walked);
+            assertTrue(r.findPage(cursor, 5).isEmpty());
+            assertThrows(IllegalArgumentException.class, () -> r.findPage(null, 0));
+        }
+    }
+
+    /**
+     * Tests the bulk operations' per-item outcomes and that the aggregates
+     * and indexes follow them.
+     */
+    @Test
+    void testBulkOperations() {
+        List<CoffeeBean> lots = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            lots.add(new CoffeeBean("B" + i, i % 2 == 0 ? "Kenya" : "Brazil", "F", RoastLevel.DARK,
+                    LocalDate.of(2025, 5, 1), 2.0, new BigDecimal("3.00"), "n", 0.1));
+        }
+        repo.add(lots.get(0));
+        boolean[] added = repo.addAll(lots);
+        assertFalse(added[0]);
+        for (int i = 1; i < 10; i++) assertTrue(added[i]);
+        assertEquals(new BigDecimal("60.000"), repo.calculateTotalInventoryValue());
+
+        List<CoffeeBean> repriced = new ArrayList<>();
+        for (CoffeeBean b : repo.findAll()) {
+            repriced.add(new CoffeeBean(b.getBeanID(), b.getOriginCountry(), b.getFarmName(),
+                    b.getRoastLevel(), b.getRoastDate(), b.getQuantityKg(), new BigDecimal("4.00"),
+                    b.getFlavorNotes(), b.getCaffeineContentMgPerGram()));
+        }
+        repriced.add(new CoffeeBean("missing", "Kenya", "F", RoastLevel.DARK,
+                LocalDate.of(2025, 5, 1), 2.0, new BigDecimal("4.00"), "n", 0.1));
+        boolean[] updated = repo.updateAll(repriced);
+        assertTrue(updated[0]);
+        assertFalse(updated[10]);
+        assertEquals(new BigDecimal("80.000"), repo.calculateTotalInventoryValue());
+
+        List<CoffeeBean> removed = repo.removeIf(b -> b.getOriginCountry().equals("Brazil"));
+        assertEquals(List.of("B1", "B3", "B5", "B7", "B9"), ids(removed));
+        assertTrue(repo.query(new BeanQuery().origin("Brazil")).isEmpty());
+
+        boolean[] gone = repo.removeAll(List.of("B0", "B1", "B2"));
+        assertArrayEquals(new boolean[]{true, false, true}, gone);
+        assertEquals(List.of("B4", "B6", "B8"), ids(repo.findAll()));
+        assertEquals(new BigDecimal("24.000"), repo.calculateTotalInventoryValue());
+    }
+
+    /**
+     * Tests that listeners see each change in order, and an import as a
+     * single BULK_LOADED event, on the base repository and a storage engine.
+     */
+    @Test
+    void testChangeEvents() throws Exception {
+        Path temp = Files.createTempFile("beans_events", ".txt");
+        Files.write(temp, List.of(
+                "ID1,Country1,Farm1,LIGHT,2025-01-01,1.0,5.0,notes1,0.1",
+                "ID2,Country2,Farm2,MEDIUM,2025-02-02,2.0,6.0,notes2,0.2"
+        ));
+        for (BeanRepository r : List.of(repo, new ColumnarBeanRepository())) {
+            List<String> seen = new CopyOnWriteArrayList<>();
+            r.addChangeListener(batch -> batch.forEach(e -> seen.add(e.toString())));
+            CoffeeBean b = new CoffeeBean("E1", "Kenya", "F", RoastLevel.LIGHT,
+                    LocalDate.of(2025, 1, 1), 1.0, new BigDecimal("2.00"), "n", 0.1);
+            r.add(b);
+            r.add(b);
+            r.receive("E1", 2.0);
+            r.removeByID("E1");
+            r.removeByID("E1");
+            r.importFile(temp.toString());
+            r.importFile(temp.toString());
+            assertTrue(r.changes().awaitDelivery(5000));
+            assertEquals(List.of("ADDED(E1)", "UPDATED(E1)", "REMOVED(E1)", "BULK_LOADED(2)"), seen);
+        }
+        Files.deleteIfExists(temp);
+    }
+
+    /**
+     * Tests that the terms the totals add have the digits and scale
+     * BigDecimal arithmetic gives, for typical, long and extreme doubles.
+     */
+    @Test
+    void testExactSumTermParity() {
+        Random rnd = new Random(13);
+        BigDecimal cost = new BigDecimal("12.345");
+        ExactSum.Term t = new ExactSum.Term();
+        for (int i = 0; i < 200_000; i++) {
+            double d;
+            switch (i % 4) {
+                case 0: d = rnd.nextInt(1_000_000) / 1000.0; break;
+                case 1: d = Math.round(rnd.nextDouble() * 1e9) / Math.pow(10, rnd.nextInt(10)); break;
+                case 2: d = rnd.nextDouble() * 1e4; break;
+                default: d = Double.longBitsToDouble(rnd.nextLong()); break;
+            }
+            if (!Double.isFinite(d)) continue;
+            BigDecimal expected = BigDecimal.valueOf(d);
+            assertEquals(expected, value(t.ofDouble(d)), () -> Double.toString(d));
+            assertEquals(cost.multiply(expected), value(t.ofProduct(cost, d)), () -> Double.toString(d));
+        }
+    }
+
+    /**
+     * Tests that calculateValue gives exactly what BigDecimal arithmetic
+     * gives, digits and scale, and that comparing terms agrees with
+     * comparing those values.
+     */
+    @Test
+    void testCalculateValueParity() {
+        Random rnd = new Random(113);
+        ExactSum.Term prev = new ExactSum.Term().ofDouble(0);
+        ExactSum.Term t = new ExactSum.Term();
+        BigDecimal prevValue = BigDecimal.ZERO.setScale(1);
+        for (int i = 0; i < 100_000; i++) {
+            BigDecimal cost;
+            switch (i % 4) {
+                case 0: cost = BigDecimal.valueOf(rnd.nextInt(100_000), 2); break;
+                case 1: cost = BigDecimal.valueOf(rnd.nextLong(), rnd.nextInt(40) - 10); break;
+                case 2: cost = new BigDecimal("98765432109876543210.5"); break;
+                default: cost = BigDecimal.valueOf(rnd.nextInt(50), -rnd.nextInt(3)); break;
+            }
+            double d = i % 3 == 0 ? rnd.nextInt(100_000) / 100.0 : rnd.nextDouble() * 1e3;
+            CoffeeBean b = new CoffeeBean("ID", "Kenya", "F", RoastLevel.LIGHT, LocalDate.of(2025, 1, 1),
+                    d, cost, "n", 0.1);
+            BigDecimal expected = cost.multiply(BigDecimal.valueOf(d));
+            assertEquals(expected, b.calculateValue(), () -> cost + " × " + d);
+            assertEquals(expected, value(t.ofValue(b)), () -> cost + " × " + d);
+            t.ofProduct(cost, d);
+            BigDecimal before = prevValue;
+            assertEquals(Integer.signum(expected.compareTo(before)), Integer.signum(ExactSum.compare(t, prev)),
+                    () -> cost + " × " + d + " vs " + before);
+            ExactSum.Term swap = prev;
+            prev = t;
+            t = swap;
+            prevValue = expected;
+        }
+    }
+
+    private static BigDecimal value(ExactSum.Term t) {
+        return t.toBigDecimal();
+    }
+
+    /**
+     * Tests that indexed queries return the same beans as a full scan,
+     * after updates and removes have moved beans between index keys.
+     */
+    @Test
+    void testQueryMatchesFullScan() {
+        String[] origins = {"Colombia", "Kenya", "Ethiopia", "Brazil"};
+        LocalDate base = LocalDate.of(2025, 1, 1);
+        for (int i = 0; i < 200; i++) {
+            repo.add(new CoffeeBean(
+                    "ID" + i, origins[i % 4], "Farm" + (i % 7),
+                    RoastLevel.values()[i % 3], base.plusDays(i % 30),
+                    1.0, new BigDecimal("2.0"),
+                    "n", 0.1
+            ));
+        }
+        for (int i = 0; i < 200; i += 5) {
+            CoffeeBean b = repo.findByID("ID" + i);
+            repo.update(new CoffeeBean(
+                    b.getBeanID(), "Kenya", "Farm0",
+                    RoastLevel.DARK, base.plusDays(40),
+                    1.0, new BigDecimal("2.0"),
+                    "n", 0.1
+            ));
+        }
+        for (int i = 0; i < 200; i += 9) {
+            repo.removeByID("ID" + i);
+        }
+
+        List<BeanQuery> queries = List.of(
+                new BeanQuery().roastLevel(RoastLevel.DARK).origin("Colombia"),
+                new BeanQuery().origin("Kenya").farm("Farm0"),
+                new BeanQuery().roastedBetween(base.plusDays(3), base.plusDays(5)),
+                new BeanQuery().roastLevel(RoastLevel.LIGHT).roastedBetween(null, base.plusDays(10)),
+                new BeanQuery().origin("Brazil").roastedBetween(base.plusDays(35), null),
+                new BeanQuery().roastedBetween(base.plusDays(5), base.plusDays(3)),
+                new BeanQuery().origin("Nowhere").roastLevel(RoastLevel.DARK)
+        );
+        for (BeanQuery q : queries) {
+            List<String> expected = new ArrayList<>();
+            for (CoffeeBean b : repo.findAll()) {
+                if (q.matches(b)) expected.add(b.getBeanID());
+            }
+            List<String> actual = new ArrayList<>();
+            for (CoffeeBean b : repo.query(q)) actual.add(b.getBeanID());
+            expected.sort(null);
+            actual.sort(null);
+            assertEquals(expected, actual);
+        }
+        assertEquals(repo.findAll().size(), repo.query(new BeanQuery()).size());
+    }
+
+    /**
+     * Tests AND, OR and prefix flavor searches, and that updates and
+     * removes keep the flavor index current.
+     */
+    @Test
+    void testFindByFlavor() {
+        String[] notes = {"Blueberry, dark chocolate", "Milk chocolate; caramel",
+                "blueberry jam", "Jasmine & bergamot"};
+        for (int i = 0; i < notes.length; i++) {
+            repo.add(new CoffeeBean(
+                    "ID" + i, "C", "F",
+                    RoastLevel.LIGHT, LocalDate.now(),
+                    1.0, new BigDecimal("1.0"),
+                    notes[i], 0.1
+            ));
+        }
+
+        assertEquals(List.of("ID0"), ids(repo.findByFlavorAll("chocolate", "BLUEBERRY")));
+        assertEquals(List.of("ID0", "ID2", "ID1"), ids(repo.findByFlavorAny("blueberry", "caramel")));
+        assertEquals(List.of("ID0", "ID1"), ids(repo.findByFlavorAll("choc*")));
+        assertEquals(List.of("ID1"), ids(repo.findByFlavorAll("milk choc*")));
+        assertTrue(repo.findByFlavorAll("blue").isEmpty());
+
+        repo.update(new CoffeeBean(
+                "ID2", "C", "F",
+                RoastLevel.LIGHT, LocalDate.now(),
+                1.0, new BigDecimal("1.0"),
+                "cocoa", 0.1
+        ));
+        repo.removeByID("ID0");
+        assertTrue(repo.findByFlavorAll("blueberry").isEmpty());
+        assertEquals(List.of("ID2"), ids(repo.findByFlavorAny("cocoa")));
+    }
+
+    /**
+     * Tests receive/consume: decimal arithmetic, refusal below zero and
+     * aggregates that follow the new quantity.
+     */
+    @Test
+    void testAdjustQuantity() {
+        repo.add(new CoffeeBean("ID1", "Colombia", "Farm1", RoastLevel.DARK,
+                LocalDate.of(2025, 6, 1), 0.1, new BigDecimal("10.00"), "cocoa", 0.2));
+        assertTrue(repo.receive("ID1", 0.2));
+        assertEquals(0.3, repo.findByID("ID1").getQuantityKg());
+        assertEquals("cocoa", repo.findByID("ID1").getFlavorNotes());
+        assertFalse(repo.consume("ID1", 0.31));
+        assertTrue(repo.consume("ID1", 0.25));
+        assertEquals(0.05, repo.findByID("ID1").getQuantityKg());
+        assertEquals(0, new BigDecimal("0.5").compareTo(repo.calculateTotalInventoryValue()));
+        assertEquals(0, new BigDecimal("0.05").compareTo(repo.getTotalQuantityKg()));
+        assertFalse(repo.adjustQuantity("missing", 1));
+        assertThrows(IllegalArgumentException.class, () -> repo.consume("ID1", -1));
+        assertEquals(1, repo.query(new BeanQuery().roastLevel(RoastLevel.DARK)).size());
+    }
+
+    /**
+     * Tests that a binary snapshot reloads every field exactly, including
+     * costs too large for a long and shared dictionary strings.
+     */
+    @Test
+    void testSnapshotRoundTrip() throws IOException {
+        repo.add(new CoffeeBean("ID1", "C\u00f4te d'Ivoire", "Farm1", RoastLevel.LIGHT,
+                LocalDate.of(1969, 12, 31), 1.25, new BigDecimal("5.10"), "", -0.0));
+        repo.add(new CoffeeBean("ID2", "Colombia", "Farm1", RoastLevel.DARK,
+                LocalDate.of(2025, 6, 1), 1e-3, new BigDecimal("12345678901234567890.123"),
+                "cocoa, cherry", 12.5));
+        repo.add(new CoffeeBean("ID3", "Colombia", "Farm3", RoastLevel.MEDIUM,
+                LocalDate.of(2025, 6, 2), 3, new BigDecimal("4E+2"), "nutty", 0.3));
+        Path temp = Files.createTempFile("beans_snapshot", ".dat");
+        repo.saveSnapshot(temp);
+
+        BeanRepository loaded = new BeanRepository();
+        assertEquals(3, loaded.loadSnapshot(temp));
+        assertEquals(0, loaded.loadSnapshot(temp));
+        List<CoffeeBean> expected = repo.findAll();
+        List<CoffeeBean> actual = loaded.findAll();
+        for (int i = 0; i < expected.size(); i++) {
+            CoffeeBean e = expected.get(i);
+            CoffeeBean a = actual.get(i);
+            assertEquals(e.getBeanID(), a.getBeanID());
+            assertEquals(e.getOriginCountry(), a.getOriginCountry());
+            assertEquals(e.getFarmName(), a.getFarmName());
+            assertEquals(e.getRoastLevel(), a.getRoastLevel());
+            assertEquals(e.getRoastDate(), a.getRoastDate());
+            assertEquals(Double.doubleToLongBits(e.getQuantityKg()),
+                    Double.doubleToLongBits(a.getQuantityKg()));
+            assertEquals(e.getCostPerKg(), a.getCostPerKg());
+            assertEquals(e.getFlavorNotes(), a.getFlavorNotes());
+            assertEquals(Double.doubleToLongBits(e.getCaffeineContentMgPerGram()),
+                    Double.doubleToLongBits(a.getCaffeineContentMgPerGram()));
+        }
+        assertSame(actual.get(1).getOriginCountry(), actual.get(2).getOriginCountry());
+        assertEquals(repo.calculateTotalInventoryValue(), loaded.calculateTotalInventoryValue());
+
+        Files.deleteIfExists(temp);
+    }
+
+    /**
+     * Tests that saving over a snapshot leaves no temporary file behind,
+     * and that a dictionary index past the end of the dictionary or an
+     * impossible roast date is reported as a corrupt snapshot.
+     */
+    @Test
+    void testSnapshotReplaceAndCorruptIndex() throws IOException {
+        repo.add(new CoffeeBean("ID1", "Colombia", "Farm1", RoastLevel.LIGHT,
+                LocalDate.of(2025, 6, 1), 1, new BigDecimal("5.10"), "cocoa", 0.3));
+        Path temp = Files.createTempFile("beans_snapshot", ".dat");
+        Path tmp = temp.resolveSibling(temp.getFileName() + ".tmp");
+        repo.saveSnapshot(temp);
+        repo.saveSnapshot(temp);
+        assertFalse(Files.exists(tmp));
+        assertEquals(1, new BeanRepository().loadSnapshot(temp));
+
+        ByteBuffer corrupt = ByteBuffer.allocate(32);
+        corrupt.putInt(BeanSnapshot.MAGIC).putInt(BeanSnapshot.VERSION).putInt(1);
+        corrupt.put((byte) 0);                  // empty dictionary
+        corrupt.put((byte) 1).put((byte) 'X');  // beanID
+        corrupt.put((byte) 5);                  // origin index
+        Files.write(temp, Arrays.copyOf(corrupt.array(), corrupt.position()));
+        IOException ex = assertThrows(IOException.class, () -> new BeanRepository().loadSnapshot(temp));
+        assertTrue(ex.getMessage().startsWith("Corrupt bean snapshot"));
+
+        corrupt.clear();
+        corrupt.putInt(BeanSnapshot.MAGIC).putInt(BeanSnapshot.VERSION).putInt(1);
+        corrupt.put((byte) 1).put((byte) 1).put((byte) 'C');  // dictionary
+        corrupt.put((byte) 1).put((byte) 'X');                // beanID
+        corrupt.put((byte) 0).put((byte) 0).put((byte) 0);    // origin, farm, roast
+        corrupt.put(new byte[]{-128, -128, -128, -128, -128, 64});  // roast date past year 999999999
+        Files.write(temp, Arrays.copyOf(corrupt.array(), corrupt.position()));
+        ex = assertThrows(IOException.class, () -> new BeanRepository().loadSnapshot(temp));
+        assertTrue(ex.getMessage().startsWith("Corrupt bean snapshot: roast date"));
+
+        Files.deleteIfExists(temp);
+    }
+
+    private static List<String> ids(List<CoffeeBean> beans) {
+        List<String> out = new ArrayList<>();
+        for (CoffeeBean b : beans) out.add(b.getBeanID());
+        return out;
+    }
 }
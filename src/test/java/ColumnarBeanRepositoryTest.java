@@ -0,0 +1,72 @@
+package com.example.coffeedms;
+
+import org.junit.jupiter.api.*;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for ColumnarBeanRepository, checked against BeanRepository.
+ */
+class ColumnarBeanRepositoryTest {
+
+    /**
+     * Tests that a random mix of adds, updates, removes and stock
+     * movements (enough to force growth and compaction) leaves both
+     * repositories with the same beans, aggregates and query results.
+     */
+    @Test
+    void testMatchesBeanRepository() {
+        BeanRepository expected = new BeanRepository();
+        ColumnarBeanRepository actual = new ColumnarBeanRepository();
+        String[] costs = {"12.50", "4E+2", "7.125", "123456789012345678901234567890.5"};
+        Random rnd = new Random(14);
+        for (int i = 0; i < 20000; i++) {
+            String id = "ID" + rnd.nextInt(6000);
+            switch (rnd.nextInt(4)) {
+                case 0:
+                case 1:
+                    CoffeeBean b = new CoffeeBean(id, "Origin" + rnd.nextInt(5), "Farm" + rnd.nextInt(30),
+                            RoastLevel.values()[rnd.nextInt(3)], LocalDate.of(2025, 1, 1).plusDays(rnd.nextInt(90)),
+                            rnd.nextInt(400) / 8.0, new BigDecimal(costs[rnd.nextInt(costs.length)]),
+                            rnd.nextBoolean() ? "cocoa, cherry" : "citrus", rnd.nextDouble());
+                    assertEquals(expected.add(b), actual.add(b));
+                    if (rnd.nextBoolean()) assertEquals(expected.update(b), actual.update(b));
+                    break;
+                case 2:
+                    assertEquals(expected.removeByID(id), actual.removeByID(id));
+                    break;
+                default:
+                    assertEquals(expected.consume(id, 1.5), actual.consume(id, 1.5));
+            }
+        }
+
+        assertEquals(expected.size(), actual.size());
+        List<CoffeeBean> e = expected.findAll();
+        List<CoffeeBean> a = actual.findAll();
+        for (int i = 0; i < e.size(); i++) {
+            assertEquals(e.get(i).toString(), a.get(i).toString());
+            assertEquals(e.get(i).getCostPerKg(), a.get(i).getCostPerKg());
+        }
+        assertEquals(expected.calculateTotalInventoryValue(), actual.calculateTotalInventoryValue());
+        assertEquals(expected.getTotalQuantityKg(), actual.getTotalQuantityKg());
+        assertEquals(expected.getValueByOrigin(), actual.getValueByOrigin());
+
+        BeanQuery q = new BeanQuery().roastLevel(RoastLevel.DARK).origin("Origin2")
+                .roastedBetween(LocalDate.of(2025, 2, 1), LocalDate.of(2025, 2, 28));
+        assertEquals(ids(expected.findAll(), q), ids(actual.query(q), null));
+        assertTrue(actual.query(new BeanQuery().origin("Nowhere")).isEmpty());
+        assertEquals(expected.findByFlavorAll("cherry").size(), actual.findByFlavorAll("cherry").size());
+    }
+
+    private static String ids(List<CoffeeBean> beans, BeanQuery filter) {
+        StringBuilder sb = new StringBuilder();
+        for (CoffeeBean b : beans) {
+            if (filter == null || filter.matches(b)) sb.append(b.getBeanID()).append(' ');
+        }
+        return sb.toString();
+    }
+}
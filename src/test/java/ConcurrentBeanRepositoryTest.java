@@ -0,0 +1,238 @@
+package com.example.coffeedms;
+
+import org.junit.jupiter.api.*;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for ConcurrentBeanRepository.
+ */
+class ConcurrentBeanRepositoryTest {
+
+    private ConcurrentBeanRepository repo;
+
+    @BeforeEach
+    void setUp() {
+        repo = new ConcurrentBeanRepository();
+    }
+
+    /**
+     * Tests the single-threaded contract shared with BeanRepository.
+     */
+    @Test
+    void testBehavesLikeBeanRepository() {
+        BeanRepository plain = new BeanRepository();
+        for (int i = 0; i < 200; i++) {
+            CoffeeBean b = bean("ID" + i, i % 3, "2.50");
+            assertEquals(plain.add(b), repo.add(b));
+        }
+        assertFalse(repo.add(bean("ID5", 0, "1.00")));
+        for (int i = 0; i < 200; i += 7) {
+            assertEquals(plain.removeByID("ID" + i), repo.removeByID("ID" + i));
+            CoffeeBean b = bean("ID" + (i + 1), 2, "3.75");
+            assertEquals(plain.update(b), repo.update(b));
+        }
+
+        assertEquals(plain.size(), repo.size());
+        assertEquals(ids(plain.findAll()), ids(repo.findAll()));
+        assertEquals(plain.calculateTotalInventoryValue(), repo.calculateTotalInventoryValue());
+        assertEquals(plain.getTotalQuantityKg(), repo.getTotalQuantityKg());
+        assertEquals(plain.getValueByRoastLevel(), repo.getValueByRoastLevel());
+        assertEquals(plain.getValueByOrigin(), repo.getValueByOrigin());
+        BeanQuery q = new BeanQuery().roastLevel(RoastLevel.DARK).origin("Origin1");
+        // index order may differ after updates; compare membership
+        assertEquals(new HashSet<>(ids(plain.query(q))), new HashSet<>(ids(repo.query(q))));
+        assertEquals(new HashSet<>(ids(plain.findByFlavorAll("cherry"))),
+                new HashSet<>(ids(repo.findByFlavorAll("cherry"))));
+        assertThrows(UnsupportedOperationException.class, () -> repo.findAll().clear());
+    }
+
+    /**
+     * Tests that concurrent writers and readers never see a snapshot whose
+     * aggregates disagree with its bean list, and that no write is lost.
+     */
+    @Test
+    void testConcurrentWritersAndReaders() throws Exception {
+        int writers = 4;
+        int perWriter = 2000;
+        ExecutorService pool = Executors.newFixedThreadPool(writers + 2);
+        try {
+            List<Future<?>> tasks = new ArrayList<>();
+            for (int w = 0; w < writers; w++) {
+                int base = w * perWriter;
+                tasks.add(pool.submit(() -> {
+                    for (int i = base; i < base + perWriter; i++) {
+                        assertTrue(repo.add(bean("ID" + i, i % 3, "1.25")));
+                        if (i % 4 == 0) assertTrue(repo.removeByID("ID" + i));
+                    }
+                }));
+            }
+            for (int r = 0; r < 2; r++) {
+                tasks.add(pool.submit(() -> {
+                    for (int i = 0; i < 200; i++) {
+                        ConcurrentBeanRepository.Snapshot s = repo.snapshot();
+                        BigDecimal sum = BigDecimal.ZERO;
+                        for (CoffeeBean b : s.getBeans()) sum = sum.add(b.calculateValue());
+                        assertEquals(0, sum.compareTo(s.calculateTotalInventoryValue()));
+                    }
+                }));
+            }
+            for (Future<?> f : tasks) f.get(30, TimeUnit.SECONDS);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        int expected = writers * perWriter * 3 / 4;
+        assertEquals(expected, repo.size());
+        assertEquals(expected, repo.findAll().size());
+        assertEquals(0, new BigDecimal("1.5").multiply(new BigDecimal("1.25"))
+                .multiply(BigDecimal.valueOf(expected)).compareTo(repo.calculateTotalInventoryValue()));
+    }
+
+    /**
+     * Tests that concurrent consumption of one lot loses no movement.
+     */
+    @Test
+    void testConcurrentConsume() throws Exception {
+        repo.add(bean("ID1", 0, "1.00").withQuantityKg(1000));
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> tasks = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                tasks.add(pool.submit(() -> {
+                    for (int i = 0; i < 1000; i++) {
+                        assertTrue(repo.consume("ID1", 0.25));
+                    }
+                }));
+            }
+            for (Future<?> f : tasks) f.get(30, TimeUnit.SECONDS);
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(0.0, repo.findByID("ID1").getQuantityKg());
+        assertFalse(repo.consume("ID1", 0.25));
+        assertEquals(0, BigDecimal.ZERO.compareTo(repo.calculateTotalInventoryValue()));
+    }
+
+    /**
+     * Tests that a snapshot keeps answering from its own point in time
+     * after later writes, and that queries on the latest snapshot agree
+     * with a plain repository.
+     */
+    @Test
+    void testSnapshotIsolation() {
+        BeanRepository plain = new BeanRepository();
+        for (int i = 0; i < 50; i++) {
+            CoffeeBean b = bean("ID" + i, i % 3, "2.00");
+            plain.add(b);
+            repo.add(b);
+        }
+        ConcurrentBeanRepository.Snapshot before = repo.snapshot();
+        assertSame(before, repo.snapshot());
+        BigDecimal value = before.calculateTotalInventoryValue();
+
+        for (int i = 0; i < 50; i += 5) {
+            plain.removeByID("ID" + i);
+            repo.removeByID("ID" + i);
+            CoffeeBean b = bean("ID" + (i + 1), 2, "9.00");
+            plain.update(b);
+            repo.update(b);
+            plain.consume("ID" + (i + 2), 1.0);
+            repo.consume("ID" + (i + 2), 1.0);
+        }
+
+        assertEquals(50, before.size());
+        assertEquals(50, before.getBeans().size());
+        assertEquals("ID0", before.getBeans().get(0).getBeanID());
+        assertEquals(value, before.calculateTotalInventoryValue());
+        assertEquals(1.5, before.findByID("ID2").getQuantityKg());
+        assertEquals(16, before.query(new BeanQuery().roastLevel(RoastLevel.DARK)).size());
+        assertEquals(16, before.findByFlavorAll("cherry").size());
+
+        ConcurrentBeanRepository.Snapshot after = repo.snapshot();
+        assertEquals(before.getVersion() + 30, after.getVersion());
+        assertEquals(ids(plain.findAll()), ids(after.getBeans()));
+        assertEquals(plain.calculateTotalInventoryValue(), after.calculateTotalInventoryValue());
+        assertEquals(plain.getTotalQuantityKg(), after.getTotalQuantityKg());
+        assertEquals(plain.getValueByRoastLevel(), after.getValueByRoastLevel());
+        assertEquals(plain.getValueByOrigin(), after.getValueByOrigin());
+        assertEquals(ids(plain.findPage("ID3", 7)), ids(after.findPage("ID3", 7)));
+        BeanQuery q = new BeanQuery().roastLevel(RoastLevel.DARK)
+                .roastedBetween(LocalDate.of(2025, 5, 1), LocalDate.of(2025, 5, 3));
+        assertEquals(new HashSet<>(ids(plain.query(q))), new HashSet<>(ids(after.query(q))));
+        assertEquals(new HashSet<>(ids(plain.findByFlavorAny("dar*", "cocoa"))),
+                new HashSet<>(ids(after.findByFlavorAny("dar*", "cocoa"))));
+        assertEquals(new HashSet<>(ids(plain.findByFlavorAll("dark", "cherry"))),
+                new HashSet<>(ids(after.findByFlavorAll("dark", "cherry"))));
+    }
+
+    /**
+     * Tests the persistent map behind snapshots against a TreeMap, and
+     * that older versions of the map are left unchanged.
+     */
+    @Test
+    void testPersistentTreeMap() {
+        Random rnd = new Random(11);
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        PersistentTreeMap<Integer, Integer> map = PersistentTreeMap.empty();
+        PersistentTreeMap<Integer, Integer> old = null;
+        TreeMap<Integer, Integer> oldExpected = null;
+        for (int i = 0; i < 20_000; i++) {
+            int k = rnd.nextInt(2000);
+            if (rnd.nextInt(3) == 0) {
+                expected.remove(k);
+                map = map.remove(k);
+            } else {
+                expected.put(k, i);
+                map = map.put(k, i);
+            }
+            if (i == 10_000) {
+                old = map;
+                oldExpected = new TreeMap<>(expected);
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        assertEquals(new ArrayList<>(expected.keySet()), list(map.keys()));
+        assertEquals(new ArrayList<>(expected.values()), list(map.values()));
+        assertEquals(new ArrayList<>(expected.subMap(100, true, 900, false).values()),
+                list(map.subValues(100, true, 900, false)));
+        assertEquals(new ArrayList<>(expected.tailMap(1500, false).values()), list(map.tailValues(1500, false)));
+        assertEquals(new ArrayList<>(expected.headMap(300, true).values()), list(map.headValues(300, true)));
+        assertEquals(new ArrayList<>(expected.values()).get(expected.size() / 2), map.valueAt(expected.size() / 2));
+        assertEquals(new ArrayList<>(oldExpected.values()), list(old.values()));
+        assertNull(map.put(null, 1).remove(null).get(null));
+        assertEquals(1, map.put(null, 1).get(null));
+    }
+
+    private static <T> List<T> list(Iterable<T> items) {
+        List<T> out = new ArrayList<>();
+        items.forEach(out::add);
+        return out;
+    }
+
+    private static CoffeeBean bean(String id, int variant, String cost) {
+        return new CoffeeBean(
+                id, "Origin" + variant, "Farm" + variant,
+                RoastLevel.values()[variant], LocalDate.of(2025, 5, 1 + variant),
+                1.5, new BigDecimal(cost),
+                variant == 2 ? "dark cherry" : "cocoa", 0.2
+        );
+    }
+
+    private static List<String> ids(List<CoffeeBean> beans) {
+        List<String> out = new ArrayList<>();
+        for (CoffeeBean b : beans) out.add(b.getBeanID());
+        return out;
+    }
+}
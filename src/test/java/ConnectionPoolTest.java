@@ -0,0 +1,302 @@
+package com.example.coffeedms;
+
+import org.junit.jupiter.api.*;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for ConnectionPool, against stub connections that record
+ * how the pool treats them.
+ */
+public class ConnectionPoolTest {
+    private final List<Stub> opened = new ArrayList<>();
+
+    /** State behind one stub connection. */
+    private static final class Stub {
+        boolean closed;
+        boolean valid = true;
+        boolean autoCommit = true;
+        boolean rolledBack;
+        boolean failStatements;
+        final List<StubStatement> prepared = new ArrayList<>();
+    }
+
+    /** State behind one stub prepared statement. */
+    private static final class StubStatement {
+        final String sql;
+        boolean closed;
+        int cleared;
+        int fetchSize;
+
+        StubStatement(String sql) {
+            this.sql = sql;
+        }
+    }
+
+    private synchronized Connection open() {
+        Stub s = new Stub();
+        opened.add(s);
+        Connection[] self = new Connection[1];
+        return self[0] = (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{Connection.class}, (p, m, a) -> {
+                    switch (m.getName()) {
+                        case "close": s.closed = true; return null;
+                        case "isClosed": return s.closed;
+                        case "isValid": return s.valid && !s.closed;
+                        case "getAutoCommit": return s.autoCommit;
+                        case "setAutoCommit": s.autoCommit = (Boolean) a[0]; return null;
+                        case "rollback": s.rolledBack = true; return null;
+                        case "unwrap": return self[0];
+                        case "isWrapperFor": return true;
+                        case "createStatement":
+                            if (s.failStatements) throw new SQLException("link failure", "08S01");
+                            return null;
+                        case "prepareStatement":
+                            StubStatement st = new StubStatement((String) a[0]);
+                            s.prepared.add(st);
+                            return Proxy.newProxyInstance(getClass().getClassLoader(),
+                                    new Class<?>[]{PreparedStatement.class}, (sp, sm, sa) -> {
+                                        switch (sm.getName()) {
+                                            case "close": st.closed = true; return null;
+                                            case "clearParameters": st.cleared++; return null;
+                                            case "isClosed": return st.closed;
+                                            case "setFetchSize": st.fetchSize = (Integer) sa[0]; return null;
+                                            case "getFetchSize": return st.fetchSize;
+                                            case "getConnection": return self[0];
+                                            case "executeQuery": return result(sp);
+                                            default: return null;
+                                        }
+                                    });
+                        default: return null;
+                    }
+                });
+    }
+
+    /** A result set stub that knows its statement. */
+    private ResultSet result(Object statement) {
+        return (ResultSet) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{ResultSet.class}, (p, m, a) -> {
+                    switch (m.getName()) {
+                        case "getStatement": return statement;
+                        case "isClosed": return false;
+                        default: return null;
+                    }
+                });
+    }
+
+    /**
+     * Tests that a returned connection is reused and its transaction
+     * state reset.
+     */
+    @Test
+    void testReuseAndReset() throws SQLException {
+        ConnectionPool pool = new ConnectionPool(this::open);
+        Connection c = pool.borrow();
+        c.setAutoCommit(false);
+        c.close();
+        c.close();
+        assertTrue(c.isClosed());
+        assertThrows(SQLException.class, c::createStatement);
+        assertTrue(opened.get(0).rolledBack);
+        assertTrue(opened.get(0).autoCommit);
+        assertFalse(opened.get(0).closed);
+
+        pool.borrow().close();
+        assertEquals(1, pool.getCreated());
+        assertEquals(2, pool.getBorrowed());
+        assertEquals(1, pool.getIdle());
+        assertEquals(0, pool.getActive());
+        pool.close();
+        assertTrue(opened.get(0).closed);
+        assertThrows(SQLException.class, pool::borrow);
+    }
+
+    /** Stands in for a driver's own connection interface. */
+    private interface DriverConnection extends Connection {
+    }
+
+    /**
+     * Tests that unwrapping a borrowed connection never reaches the
+     * physical one, even when the driver would hand it out.
+     */
+    @Test
+    void testUnwrapHidesPhysicalConnection() throws SQLException {
+        ConnectionPool pool = new ConnectionPool(this::open);
+        try (Connection c = pool.borrow()) {
+            assertSame(c, c.unwrap(Connection.class));
+            assertTrue(c.isWrapperFor(Connection.class));
+            assertFalse(c.isWrapperFor(DriverConnection.class));
+            assertThrows(SQLException.class, () -> c.unwrap(DriverConnection.class));
+        }
+        assertFalse(opened.get(0).closed);
+        pool.close();
+    }
+
+    /**
+     * Tests that a full pool fails fast once the timeout passes.
+     */
+    @Test
+    void testAcquireTimeout() throws SQLException {
+        ConnectionPool pool = new ConnectionPool(this::open, 2, 50, 60_000);
+        Connection a = pool.borrow();
+        pool.borrow();
+        long start = System.nanoTime();
+        assertThrows(SQLTransientConnectionException.class, pool::borrow);
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+        assertEquals(1, pool.getTimeouts());
+        a.close();
+        pool.borrow();
+        assertEquals(2, pool.getCreated());
+    }
+
+    /**
+     * Tests that broken, stale and expired connections are replaced.
+     */
+    @Test
+    void testBrokenInvalidAndIdleConnectionsAreDropped() throws Exception {
+        ConnectionPool pool = new ConnectionPool(this::open, 4, 1000, 60_000);
+        Connection c = pool.borrow();
+        opened.get(0).failStatements = true;
+        assertThrows(SQLException.class, c::createStatement);
+        c.close();
+        assertTrue(opened.get(0).closed);
+        assertEquals(1, pool.getDiscarded());
+
+        pool.borrow().close();
+        opened.get(1).valid = false;
+        Thread.sleep(600);
+        pool.borrow().close();
+        assertEquals(1, pool.getValidationFailures());
+        assertEquals(3, pool.getCreated());
+        assertEquals(1, pool.getOpen());
+
+        ConnectionPool expiring = new ConnectionPool(this::open, 4, 1000, 0);
+        expiring.borrow().close();
+        assertEquals(0, expiring.getIdle());
+        assertEquals(1, expiring.getEvicted());
+        assertTrue(opened.get(opened.size() - 1).closed);
+    }
+
+    /**
+     * Tests that threads share the pool without exceeding its size.
+     */
+    @Test
+    void testParallelBorrowersStayWithinBound() throws Exception {
+        ConnectionPool pool = new ConnectionPool(this::open, 4, 5000, 60_000);
+        AtomicInteger inUse = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        ExecutorService exec = Executors.newFixedThreadPool(12);
+        CountDownLatch go = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 12; t++) {
+            futures.add(exec.submit(() -> {
+                go.await();
+                for (int i = 0; i < 50; i++) {
+                    try (Connection c = pool.borrow()) {
+                        assertFalse(c.isClosed());
+                        peak.accumulateAndGet(inUse.incrementAndGet(), Math::max);
+                        Thread.yield();
+                        inUse.decrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        go.countDown();
+        for (Future<?> f : futures) f.get(30, TimeUnit.SECONDS);
+        exec.shutdown();
+        assertTrue(peak.get() <= 4);
+        assertTrue(pool.getCreated() <= 4);
+        assertEquals(600, pool.getBorrowed());
+        assertEquals(0, pool.getActive());
+    }
+
+    /**
+     * Tests that prepared statements are reused per connection, cleared
+     * between uses, evicted least recently used first and closed with
+     * the pool.
+     */
+    @Test
+    void testStatementCache() throws SQLException {
+        ConnectionPool pool = new ConnectionPool(this::open, 1, 1000, 60_000, 2);
+        try (Connection c = pool.borrow()) {
+            PreparedStatement ps = c.prepareStatement("A");
+            ps.setString(1, "x");
+            ps.close();
+            assertTrue(ps.isClosed());
+            assertThrows(SQLException.class, ps::executeQuery);
+        }
+        try (Connection c = pool.borrow();
+             PreparedStatement a1 = c.prepareStatement("A");
+             PreparedStatement a2 = c.prepareStatement("A")) {
+            assertNotSame(a1, a2);
+        }
+        Stub conn = opened.get(0);
+        assertEquals(2, conn.prepared.size());
+        assertEquals(1, pool.getStatementHits());
+        assertEquals(2, pool.getStatementMisses());
+        assertTrue(conn.prepared.get(0).cleared >= 2);
+        // the second "A" statement did not fit back in the cache
+        assertTrue(conn.prepared.get(1).closed);
+
+        try (Connection c = pool.borrow()) {
+            c.prepareStatement("B").close();
+            c.prepareStatement("C").close();
+        }
+        assertTrue(conn.prepared.get(0).closed);
+        assertFalse(conn.prepared.get(2).closed);
+        pool.close();
+        assertTrue(conn.prepared.get(2).closed);
+        assertTrue(conn.prepared.get(3).closed);
+
+        ConnectionPool uncached = new ConnectionPool(this::open, 1, 1000, 60_000, 0);
+        try (Connection c = uncached.borrow()) {
+            c.prepareStatement("A").close();
+        }
+        assertTrue(opened.get(1).prepared.get(0).closed);
+    }
+
+    /**
+     * Tests that a cached statement comes back with the JDBC default
+     * fetch size, and that statements and their results hand out the
+     * borrowed connection rather than the physical one.
+     */
+    @Test
+    void testCachedStatementReset() throws SQLException {
+        ConnectionPool pool = new ConnectionPool(this::open, 1, 1000, 60_000, 2);
+        try (Connection c = pool.borrow();
+             PreparedStatement ps = c.prepareStatement("A")) {
+            ps.setFetchSize(Integer.MIN_VALUE);
+            assertSame(c, ps.getConnection());
+            assertSame(ps, ps.executeQuery().getStatement());
+        }
+        try (Connection c = pool.borrow();
+             PreparedStatement ps = c.prepareStatement("A")) {
+            assertEquals(1, pool.getStatementHits());
+            assertEquals(0, ps.getFetchSize());
+        }
+        pool.close();
+
+        ConnectionPool uncached = new ConnectionPool(this::open, 1, 1000, 60_000, 0);
+        try (Connection c = uncached.borrow();
+             PreparedStatement ps = c.prepareStatement("A")) {
+            assertSame(c, ps.getConnection());
+            assertSame(ps, ps.executeQuery().getStatement());
+        }
+        uncached.close();
+    }
+}
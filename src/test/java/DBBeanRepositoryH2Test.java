@@ -0,0 +1,212 @@
+package com.example.coffeedms;
+
+import org.junit.jupiter.api.*;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests DBBeanRepository end to end against an in-memory H2 database in
+ * MySQL mode, so every statement it sends is parsed and executed by a
+ * real engine through a real ConnectionPool.
+ */
+public class DBBeanRepositoryH2Test {
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+
+    private String url;
+    private Connection keepAlive;
+    private DBBeanRepository repo;
+    private Path temp;
+
+    @BeforeEach
+    void setUp() throws SQLException, IOException {
+        url = "jdbc:h2:mem:beans" + DATABASES.incrementAndGet() + ";MODE=MySQL";
+        // the database lives as long as one connection to it is open
+        keepAlive = DriverManager.getConnection(url, "sa", "");
+        try (Statement st = keepAlive.createStatement()) {
+            st.execute("CREATE TABLE bean_lots ("
+                    + " bean_id VARCHAR(16) PRIMARY KEY,"
+                    + " origin VARCHAR(64) NOT NULL,"
+                    + " farm VARCHAR(64) NOT NULL,"
+                    + " roast_level VARCHAR(16) NOT NULL,"
+                    + " roast_date DATE NOT NULL,"
+                    + " quantity_kg DOUBLE NOT NULL,"
+                    + " cost_per_kg DECIMAL(12,4) NOT NULL,"
+                    + " notes VARCHAR(255),"
+                    + " caffeine_mg_per_g DOUBLE NOT NULL)");
+        }
+        repo = new DBBeanRepository(new ConnectionPool(() -> DriverManager.getConnection(url, "sa", "")));
+        temp = Files.createTempFile("beans_h2", ".txt");
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException, IOException {
+        repo.close();
+        keepAlive.close();
+        Files.deleteIfExists(temp);
+    }
+
+    /**
+     * Tests add, findByID, update, removeByID and the inventory total.
+     */
+    @Test
+    void testSingleRowWrites() throws SQLException {
+        assertTrue(repo.add(bean("ID1", 2.0, "5.50", 10)));
+        assertThrows(SQLException.class, () -> repo.add(bean("ID1", 1.0, "1.00", 10)));
+        assertNull(repo.findByID("ID9"));
+
+        CoffeeBean found = repo.findByID("ID1");
+        assertEquals("Country", found.getOriginCountry());
+        assertEquals(RoastLevel.DARK, found.getRoastLevel());
+        assertEquals(LocalDate.of(2025, 1, 10), found.getRoastDate());
+        assertEquals(0, new BigDecimal("5.50").compareTo(found.getCostPerKg()));
+
+        assertTrue(repo.update(bean("ID1", 3.0, "6.00", 10)));
+        assertFalse(repo.update(bean("ID9", 3.0, "6.00", 10)));
+        assertEquals(3.0, repo.findByID("ID1").getQuantityKg());
+        assertEquals(0, new BigDecimal("18.00").compareTo(repo.calculateTotalInventoryValue()));
+
+        assertTrue(repo.removeByID("ID1"));
+        assertFalse(repo.removeByID("ID1"));
+        assertEquals(0, repo.findAll().size());
+    }
+
+    /**
+     * Tests the guarded quantity UPDATE, with and without the locked read
+     * a change listener adds.
+     */
+    @Test
+    void testAdjustQuantity() throws Exception {
+        repo.add(bean("ID1", 1.0, "5.00", 10));
+        assertTrue(repo.receive("ID1", 2.0));
+        assertFalse(repo.consume("ID1", 5.0));
+        assertFalse(repo.receive("ID9", 1.0));
+        assertEquals(3.0, repo.findByID("ID1").getQuantityKg());
+
+        List<BeanChangeEvent> events = new ArrayList<>();
+        repo.addChangeListener(events::addAll);
+        assertTrue(repo.consume("ID1", 1.0));
+        assertFalse(repo.consume("ID1", 5.0));
+        assertFalse(repo.adjustQuantity("ID9", 1.0));
+        assertTrue(repo.changes().awaitDelivery(5000));
+        assertEquals(1, events.size());
+        assertEquals(3.0, events.get(0).getPrevious().getQuantityKg());
+        assertEquals(2.0, events.get(0).getBean().getQuantityKg());
+        assertEquals(2.0, repo.findByID("ID1").getQuantityKg());
+    }
+
+    /**
+     * Tests keyset pages and the ranked queries.
+     */
+    @Test
+    void testPagesAndRanking() throws SQLException {
+        repo.add(bean("ID3", 1.0, "9.00", 3));
+        repo.add(bean("ID1", 4.0, "5.00", 1));
+        repo.add(bean("ID5", 1.0, "1.00", 5));
+        repo.add(bean("ID2", 2.0, "5.00", 2));
+        repo.add(bean("ID4", 1.0, "2.00", 4));
+
+        assertEquals(List.of("ID1", "ID2"), ids(repo.findPage(null, 2)));
+        assertEquals(List.of("ID3", "ID4"), ids(repo.findPage("ID2", 2)));
+        assertEquals(List.of("ID5"), ids(repo.findPage("ID4", 2)));
+        assertEquals(List.of(), ids(repo.findPage("ID5", 2)));
+
+        assertEquals(List.of("ID1", "ID2", "ID3"), ids(repo.mostValuable(3)));
+        assertEquals(List.of("ID1", "ID2"), ids(repo.oldestRoasts(2)));
+        assertEquals(List.of("ID5", "ID4"), ids(repo.highestCaffeine(2)));
+    }
+
+    /**
+     * Tests addAll, with its locking bean_id lookup, updateAll and
+     * removeAll, and that a refused row rolls back the whole addAll.
+     */
+    @Test
+    void testBulkOperations() throws SQLException {
+        repo.add(bean("ID2", 1.0, "5.00", 10));
+        assertArrayEquals(new boolean[]{false, true, false, true},
+                repo.addAll(List.of(bean("ID2", 1.0, "5.00", 10), bean("ID3", 1.0, "5.00", 10),
+                        bean("ID3", 1.0, "5.00", 10), bean("ID4", 1.0, "5.00", 10))));
+        assertEquals(List.of("ID2", "ID3", "ID4"), ids(repo.findAll()));
+
+        assertThrows(SQLException.class, () -> repo.addAll(List.of(
+                bean("ID5", 1.0, "5.00", 10), bean("ID_LONGER_THAN_16", 1.0, "5.00", 10))));
+        assertNull(repo.findByID("ID5"));
+
+        assertArrayEquals(new boolean[]{true, false},
+                repo.updateAll(List.of(bean("ID2", 7.0, "5.00", 10), bean("ID9", 1.0, "5.00", 10))));
+        assertEquals(7.0, repo.findByID("ID2").getQuantityKg());
+        assertArrayEquals(new boolean[]{true, false, true},
+                repo.removeAll(List.of("ID2", "ID9", "ID4")));
+        assertEquals(List.of("ID3"), ids(repo.findAll()));
+    }
+
+    /**
+     * Tests a batched CSV import: duplicates in the table or the file are
+     * skipped, a row the engine refuses is reported, and the rest is
+     * committed.
+     */
+    @Test
+    void testImportFile() throws IOException, SQLException {
+        repo.add(bean("ID0", 1.0, "5.00", 10));
+        Files.write(temp, List.of(
+                "ID0,Country0,Farm0,LIGHT,2025-01-01,1.0,5.0,notes0,0.1",
+                "ID1,Country1,Farm1,LIGHT,2025-01-01,1.0,5.0,notes1,0.1",
+                "ID2,Country2,Farm2,BURNT,2025-01-01,1.0,5.0,notes2,0.1",
+                "ID3,Country3,Farm3,DARK,2025-01-01,1.0,5.0,notes3,0.1",
+                "ID1,Country1,Farm1,LIGHT,2025-01-01,1.0,5.0,notes1,0.1",
+                "ID4,Country4,Farm4,DARK,2025-01-01,1.0,5.0,notes4,0.1",
+                "ID_LONGER_THAN_16,Country5,Farm5,MEDIUM,2025-01-01,1.0,5.0,notes5,0.1",
+                "ID6,Country6,Farm6,MEDIUM,2025-01-01,1.0,5.0,notes6,0.1"
+        ));
+
+        ImportResult result = repo.importFile(temp.toString(), new RejectReport(), 2, 3);
+        assertEquals(8, result.getLinesRead());
+        assertEquals(4, result.getAccepted());
+        assertEquals(2, result.getDuplicates());
+        assertEquals(1, result.getRejects().getCount(RejectReason.REFUSED));
+        assertEquals(List.of("ID0", "ID1", "ID3", "ID4", "ID6"), ids(repo.findAll()));
+        assertEquals("Country3", repo.findByID("ID3").getOriginCountry());
+    }
+
+    /**
+     * Tests that streamAll reads every row in bean_id order and returns
+     * its connection whether closed early or read to the end.
+     */
+    @Test
+    void testStreamAll() throws SQLException {
+        for (int i = 5; i >= 1; i--) repo.add(bean("ID" + i, 1.0, "5.00", 10));
+
+        try (Stream<CoffeeBean> s = repo.streamAll(2)) {
+            assertEquals(List.of("ID1", "ID2", "ID3"),
+                    s.limit(3).map(CoffeeBean::getBeanID).collect(Collectors.toList()));
+        }
+        assertEquals(0, repo.getPool().getActive());
+
+        try (Stream<CoffeeBean> s = repo.streamAll()) {
+            assertEquals(5, s.count());
+        }
+        assertEquals(0, repo.getPool().getActive());
+    }
+
+    private static List<String> ids(List<CoffeeBean> beans) {
+        return beans.stream().map(CoffeeBean::getBeanID).collect(Collectors.toList());
+    }
+
+    private static CoffeeBean bean(String id, double qty, String cost, int day) {
+        return new CoffeeBean(id, "Country", "Farm", RoastLevel.DARK,
+                LocalDate.of(2025, 1, day), qty, new BigDecimal(cost), "notes", day);
+    }
+}
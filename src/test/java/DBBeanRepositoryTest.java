@@ -0,0 +1,521 @@
+package com.example.coffeedms;
+
+import org.junit.jupiter.api.*;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for DBBeanRepository, against a stub connection that keeps
+ * the inserted bean IDs, answers inserts, updates and deletes like MySQL and
+ * returns the committed IDs from queries. The stub counts round trips and
+ * injects the failures and races a real engine cannot be made to produce
+ * on demand; {@link DBBeanRepositoryH2Test} runs the SQL itself.
+ */
+public class DBBeanRepositoryTest {
+    /** Committed bean IDs. */
+    private final Set<String> table = new LinkedHashSet<>();
+    /** Bean IDs inserted since the last commit. */
+    private final Set<String> uncommitted = new LinkedHashSet<>();
+    private final List<Integer> batchSizes = new ArrayList<>();
+    private int commits;
+    private int fetchSize;
+    private int rowsRead;
+    private boolean resultClosed;
+    private int lookups;
+    /** Run once by the next lookup, after it has read the table. */
+    private Runnable duringLookup;
+    /** Quantities that differ from the 1.0 kg every stub lot starts with. */
+    private final Map<String, Double> quantities = new HashMap<>();
+    private boolean autoCommit = true;
+    private int isolation = Connection.TRANSACTION_READ_COMMITTED;
+    /** Isolation level of each locking bean_id lookup. */
+    private final List<Integer> lockedLookups = new ArrayList<>();
+    /** Most bean_ids bound to one IN lookup. */
+    private int largestLookup;
+    private Path temp;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        temp = Files.createTempFile("beans_db", ".txt");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Files.deleteIfExists(temp);
+    }
+
+    private Connection open() {
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{Connection.class}, (p, m, a) -> {
+                    switch (m.getName()) {
+                        case "isValid": return true;
+                        case "getAutoCommit": return autoCommit;
+                        case "setAutoCommit": autoCommit = (Boolean) a[0]; return null;
+                        case "getTransactionIsolation": return isolation;
+                        case "setTransactionIsolation": isolation = (Integer) a[0]; return null;
+                        case "isClosed": return false;
+                        case "commit":
+                            commits++;
+                            commit();
+                            return null;
+                        case "rollback": uncommitted.clear(); return null;
+                        case "prepareStatement": return statement((String) a[0]);
+                        case "createStatement": return query();
+                        default: return null;
+                    }
+                });
+    }
+
+    /**
+     * A prepared statement over the stub table. IDs starting with "BAD"
+     * are refused like an overlong value in strict mode, and so is a
+     * duplicate insert. A batch holding an ID that starts with "DEAD"
+     * fails like an InnoDB deadlock, rolling back the open transaction.
+     */
+    private PreparedStatement statement(String sql) {
+        List<String> batch = new ArrayList<>();
+        Map<Integer, Object> params = new HashMap<>();
+        int idParam = sql.contains("origin=?") ? 9 : sql.startsWith("UPDATE") ? 2 : 1;
+        return (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{PreparedStatement.class}, (p, m, a) -> {
+                    switch (m.getName()) {
+                        case "setString":
+                        case "setDouble":
+                            params.put((Integer) a[0], a[1]);
+                            return null;
+                        case "addBatch": batch.add((String) params.get(idParam)); return null;
+                        case "executeQuery":
+                            if (sql.contains(" IN (")) {
+                                if (sql.endsWith(" FOR UPDATE")) lockedLookups.add(isolation);
+                                largestLookup = Math.max(largestLookup, params.size());
+                                List<String> found = new ArrayList<>();
+                                for (Object id : params.values()) {
+                                    if (exists((String) id)) found.add((String) id);
+                                }
+                                runDuringLookup();
+                                return rows(found);
+                            }
+                            lookups++;
+                            String key = (String) params.get(1);
+                            ResultSet found = rows(exists(key) ? List.of(key) : List.of());
+                            runDuringLookup();
+                            return found;
+                        case "executeUpdate":
+                            if (sql.contains("quantity_kg + ?")) {
+                                return adjust((String) params.get(2), (Double) params.get(1));
+                            }
+                            return apply(sql, (String) params.get(idParam));
+                        case "executeBatch":
+                            if (batch.stream().anyMatch(id -> id.startsWith("DEAD"))) {
+                                batch.clear();
+                                uncommitted.clear();
+                                throw new BatchUpdateException("Deadlock found", "40001", 1213, new int[0]);
+                            }
+                            int[] counts = new int[batch.size()];
+                            boolean failed = false;
+                            for (int i = 0; i < counts.length; i++) {
+                                counts[i] = apply(sql, batch.get(i));
+                                failed |= counts[i] == Statement.EXECUTE_FAILED;
+                            }
+                            batchSizes.add(batch.size());
+                            batch.clear();
+                            if (failed) throw new BatchUpdateException("Data too long", "22001", 1406, counts);
+                            return counts;
+                        default: return null;
+                    }
+                });
+    }
+
+    private void runDuringLookup() {
+        Runnable r = duringLookup;
+        duringLookup = null;
+        if (r != null) r.run();
+    }
+
+    private void commit() {
+        table.addAll(uncommitted);
+        uncommitted.clear();
+    }
+
+    /** Runs the guarded quantity UPDATE; returns its update count. */
+    private int adjust(String id, double delta) {
+        double now = quantities.getOrDefault(id, 1.0) + delta;
+        if (!exists(id) || now < 0) return 0;
+        quantities.put(id, now);
+        return 1;
+    }
+
+    private boolean exists(String id) {
+        return table.contains(id) || uncommitted.contains(id);
+    }
+
+    /** Runs one row of sql for bean id; returns its update count. */
+    private int apply(String sql, String id) {
+        if (sql.startsWith("DELETE")) return table.remove(id) || uncommitted.remove(id) ? 1 : 0;
+        if (sql.startsWith("UPDATE")) return exists(id) ? 1 : 0;
+        if (id.startsWith("BAD") || exists(id)) return Statement.EXECUTE_FAILED;
+        (autoCommit ? table : uncommitted).add(id);
+        return 1;
+    }
+
+    /** A statement whose queries return the committed rows. */
+    private Statement query() {
+        return (Statement) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{Statement.class}, (p, m, a) -> {
+                    switch (m.getName()) {
+                        case "setFetchSize": fetchSize = (Integer) a[0]; return null;
+                        case "executeQuery": return rows(new ArrayList<>(table));
+                        default: return null;
+                    }
+                });
+    }
+
+    private ResultSet rows(List<String> ids) {
+        int[] at = {-1};
+        return (ResultSet) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{ResultSet.class}, (p, m, a) -> {
+                    switch (m.getName()) {
+                        case "next":
+                            if (++at[0] >= ids.size()) return false;
+                            rowsRead++;
+                            return true;
+                        case "close": resultClosed = true; return null;
+                        case "getString":
+                            if (a[0] instanceof Integer) return ids.get(at[0]);
+                            switch ((String) a[0]) {
+                                case "bean_id": return ids.get(at[0]);
+                                case "roast_level": return "LIGHT";
+                                default: return "x";
+                            }
+                        case "getDate": return Date.valueOf("2025-01-01");
+                        case "getDouble":
+                            return a[0].equals("quantity_kg") ? quantities.getOrDefault(ids.get(at[0]), 1.0) : 1.0;
+                        case "getBigDecimal": return BigDecimal.ONE;
+                        default: return null;
+                    }
+                });
+    }
+
+    /**
+     * Tests that streamAll reads rows only as they are consumed, passes
+     * the fetch size on, and returns its connection when closed or when
+     * the rows run out.
+     */
+    @Test
+    void testStreamAll() throws SQLException {
+        table.addAll(List.of("ID1", "ID2", "ID3", "ID4"));
+        ConnectionPool pool = new ConnectionPool(this::open);
+        try (DBBeanRepository repo = new DBBeanRepository(pool)) {
+            try (Stream<CoffeeBean> s = repo.streamAll(2)) {
+                assertEquals(1, pool.getActive());
+                assertEquals(2, fetchSize);
+                assertEquals(List.of("ID1", "ID2"), s.limit(2)
+                        .map(CoffeeBean::getBeanID).collect(Collectors.toList()));
+                assertEquals(2, rowsRead);
+            }
+            assertTrue(resultClosed);
+            assertEquals(0, pool.getActive());
+
+            resultClosed = false;
+            Iterator<CoffeeBean> it = repo.streamAll(DBBeanRepository.FETCH_ROW_BY_ROW).iterator();
+            assertEquals(DBBeanRepository.FETCH_ROW_BY_ROW, fetchSize);
+            int n = 0;
+            while (it.hasNext()) {
+                it.next();
+                n++;
+            }
+            assertEquals(4, n);
+            assertTrue(resultClosed);
+            assertEquals(0, pool.getActive());
+
+            assertThrows(IllegalArgumentException.class, () -> repo.streamAll(-1));
+        }
+    }
+
+    /**
+     * Tests that CachingBeanRepository answers repeated lookups, found or
+     * not, from memory, and reloads after writes, eviction and the TTL.
+     */
+    @Test
+    void testCachingFindByID() throws SQLException {
+        table.addAll(List.of("ID1", "ID2", "ID3"));
+        long[] now = {0};
+        long ms = 1_000_000;
+        try (CachingBeanRepository repo = new CachingBeanRepository(
+                new ConnectionPool(this::open), 2, 1000, () -> now[0])) {
+            assertEquals("ID1", repo.findByID("ID1").getBeanID());
+            assertEquals("ID1", repo.findByID("ID1").getBeanID());
+            assertNull(repo.findByID("ID9"));
+            assertNull(repo.findByID("ID9"));
+            assertEquals(2, lookups);
+            assertEquals(1, repo.getHits());
+            assertEquals(1, repo.getNegativeHits());
+            assertEquals(2, repo.getMisses());
+
+            CoffeeBean nine = new CoffeeBean("ID9", "Country9", "Farm9", RoastLevel.DARK,
+                    LocalDate.of(2025, 1, 1), 1.0, BigDecimal.ONE, "notes9", 0.1);
+            assertTrue(repo.add(nine));
+            assertEquals("ID9", repo.findByID("ID9").getBeanID());
+            assertEquals(3, lookups);
+
+            repo.findByID("ID1");
+            repo.findByID("ID2");
+            assertEquals(1, repo.getEvictions());
+            assertEquals(2, repo.getCacheSize());
+            repo.findByID("ID1");
+            assertEquals(4, lookups);
+
+            assertTrue(repo.removeByID("ID1"));
+            assertNull(repo.findByID("ID1"));
+            assertEquals(5, lookups);
+
+            now[0] += 999 * ms;
+            repo.findByID("ID1");
+            assertEquals(5, lookups);
+            now[0] += 1 * ms;
+            repo.findByID("ID1");
+            assertEquals(6, lookups);
+            assertEquals(1, repo.getExpirations());
+        }
+    }
+
+    /**
+     * Tests that a write landing while a lookup is in flight keeps that
+     * lookup out of the cache only when the write is to the same lot.
+     */
+    @Test
+    void testCachingIgnoresUnrelatedWrites() throws SQLException {
+        table.addAll(List.of("ID1", "ID2"));
+        try (CachingBeanRepository repo = new CachingBeanRepository(
+                new ConnectionPool(this::open), 10, 60_000)) {
+            duringLookup = () -> consume(repo, "ID2");
+            repo.findByID("ID1");
+            repo.findByID("ID1");
+            assertEquals(1, lookups);
+            assertEquals(1, repo.getHits());
+
+            duringLookup = () -> consume(repo, "ID2");
+            repo.findByID("ID2");
+            repo.findByID("ID2");
+            assertEquals(3, lookups);
+            repo.findByID("ID2");
+            assertEquals(3, lookups);
+            assertEquals(0.5, quantities.get("ID2"));
+        }
+    }
+
+    private static void consume(DBBeanRepository repo, String id) {
+        try {
+            assertTrue(repo.consume(id, 0.25));
+        } catch (SQLException ex) {
+            throw new UncheckedSQLException(ex);
+        }
+    }
+
+    /**
+     * Tests the DB adjustQuantity, receive and consume paths: one UPDATE
+     * when nobody listens, and with a listener a locked read in the same
+     * transaction that gives the event the quantity this call produced.
+     */
+    @Test
+    void testAdjustQuantity() throws Exception {
+        table.add("ID1");
+        try (DBBeanRepository repo = new DBBeanRepository(new ConnectionPool(this::open))) {
+            assertTrue(repo.receive("ID1", 2.0));
+            assertFalse(repo.consume("ID1", 5.0));
+            assertFalse(repo.receive("ID9", 1.0));
+            assertEquals(3.0, quantities.get("ID1"));
+            assertEquals(0, lookups);
+            assertThrows(IllegalArgumentException.class, () -> repo.consume("ID1", -1.0));
+
+            List<BeanChangeEvent> events = new ArrayList<>();
+            repo.addChangeListener(events::addAll);
+            assertTrue(repo.consume("ID1", 1.0));
+            assertFalse(repo.consume("ID1", 5.0));
+            assertFalse(repo.adjustQuantity("ID9", 1.0));
+            assertTrue(repo.changes().awaitDelivery(5000));
+            assertEquals(3, lookups);
+            assertEquals(1, events.size());
+            assertEquals(BeanChangeEvent.Type.UPDATED, events.get(0).getType());
+            assertEquals(3.0, events.get(0).getPrevious().getQuantityKg());
+            assertEquals(2.0, events.get(0).getBean().getQuantityKg());
+            assertEquals(2.0, quantities.get("ID1"));
+
+            // the event adds in decimal, like the in-memory repositories
+            quantities.put("ID1", 0.3);
+            events.clear();
+            assertTrue(repo.consume("ID1", 0.1));
+            assertTrue(repo.changes().awaitDelivery(5000));
+            assertEquals(0.2, events.get(0).getBean().getQuantityKg());
+        }
+    }
+
+    private static CoffeeBean bean(String id) {
+        return new CoffeeBean(id, "Country", "Farm", RoastLevel.DARK,
+                LocalDate.of(2025, 1, 1), 1.0, BigDecimal.ONE, "notes", 0.1);
+    }
+
+    /**
+     * Tests that closing the repository stops the change delivery thread
+     * and drops the listeners.
+     */
+    @Test
+    void testCloseStopsChangeDelivery() throws Exception {
+        DBBeanRepository repo = new DBBeanRepository(new ConnectionPool(this::open));
+        Thread[] worker = new Thread[1];
+        repo.addChangeListener(batch -> worker[0] = Thread.currentThread());
+        assertTrue(repo.add(bean("ID1")));
+        assertTrue(repo.changes().awaitDelivery(5000));
+
+        repo.close();
+        worker[0].join(5000);
+        assertFalse(worker[0].isAlive());
+        assertFalse(repo.changes().isActive());
+    }
+
+    /**
+     * Tests addAll, updateAll and removeAll: duplicates in the table or
+     * in the call are skipped, and a row the database refuses for another
+     * reason fails the call and rolls it back. A row another client
+     * inserts after the lookup, which the lookup's locks prevent in
+     * MySQL, fails the call instead of counting as added.
+     */
+    @Test
+    void testBulkOperations() throws SQLException {
+        table.addAll(List.of("ID1", "ID2"));
+        try (DBBeanRepository repo = new DBBeanRepository(new ConnectionPool(this::open))) {
+            assertArrayEquals(new boolean[]{false, true, false, true},
+                    repo.addAll(List.of(bean("ID2"), bean("ID3"), bean("ID3"), bean("ID4"))));
+            assertEquals(List.of("ID1", "ID2", "ID3", "ID4"), new ArrayList<>(table));
+            // the lookup locks the missing IDs, which InnoDB does from REPEATABLE READ up
+            assertEquals(List.of(Connection.TRANSACTION_REPEATABLE_READ), lockedLookups);
+            assertEquals(Connection.TRANSACTION_READ_COMMITTED, isolation);
+
+            assertThrows(SQLException.class, () -> repo.addAll(List.of(bean("ID5"), bean("BAD6"))));
+            assertFalse(exists("ID5"));
+            duringLookup = () -> table.add("ID7");
+            assertThrows(SQLException.class, () -> repo.addAll(List.of(bean("ID7"))));
+
+            assertArrayEquals(new boolean[]{true, false},
+                    repo.updateAll(List.of(bean("ID1"), bean("ID9"))));
+            assertArrayEquals(new boolean[]{true, false, true},
+                    repo.removeAll(List.of("ID1", "ID9", "ID3")));
+            assertEquals(List.of("ID2", "ID4", "ID7"), new ArrayList<>(table));
+        }
+    }
+
+    /**
+     * Tests that a CSV import is sent in batches and committed every
+     * commitRows rows, that duplicates are reported without being sent,
+     * and that a row the database refuses is reported as such rather
+     * than as a duplicate.
+     */
+    @Test
+    void testBatchedImport() throws IOException {
+        table.add("ID0");
+        Files.write(temp, List.of(
+                "ID0,Country0,Farm0,LIGHT,2025-01-01,1.0,5.0,notes0,0.1",
+                "ID1,Country1,Farm1,LIGHT,2025-01-01,1.0,5.0,notes1,0.1",
+                "ID2,Country2,Farm2,BURNT,2025-01-01,1.0,5.0,notes2,0.1",
+                "ID3,Country3,Farm3,DARK,2025-01-01,1.0,5.0,notes3,0.1",
+                "ID1,Country1,Farm1,LIGHT,2025-01-01,1.0,5.0,notes1,0.1",
+                "ID4,Country4,Farm4,DARK,2025-01-01,1.0,5.0,notes4,0.1",
+                "ID5,Country5,Farm5,MEDIUM,2025-01-01,1.0,5.0,notes5,0.1",
+                "BAD6,Country6,Farm6,MEDIUM,2025-01-01,1.0,5.0,notes6,0.1"
+        ));
+
+        try (DBBeanRepository repo = new DBBeanRepository(new ConnectionPool(this::open))) {
+            ImportResult result = repo.importFile(temp.toString(), new RejectReport(), 2, 3);
+            assertEquals(8, result.getLinesRead());
+            assertEquals(4, result.getAccepted());
+            assertEquals(2, result.getDuplicates());
+            assertEquals(1, result.getRejects().getCount(RejectReason.REFUSED));
+            assertEquals(2, result.getMalformed());
+            assertEquals(List.of(1, 1, 2, 1), batchSizes);
+            assertEquals(1, commits);
+            assertEquals(List.of("ID0", "ID1", "ID3", "ID4", "ID5"), new ArrayList<>(table));
+
+            List<Long> lines = new ArrayList<>();
+            result.getRejects().getSamples().forEach(r -> lines.add(r.getLineNo()));
+            assertEquals(List.of(1L, 3L, 5L, 8L), lines);
+            assertTrue(result.getRejects().getSamples().get(3).getText().startsWith("BAD6: Data too long"));
+
+            assertThrows(IllegalArgumentException.class,
+                    () -> repo.importFile(temp.toString(), new RejectReport(), 0, 1));
+        }
+    }
+
+    /**
+     * Tests that a deadlock part way through an import fails it instead
+     * of counting the rolled-back rows as accepted, and keeps only the
+     * rows committed before it.
+     */
+    @Test
+    void testImportStopsOnDeadlock() throws Exception {
+        Files.write(temp, List.of(
+                "ID1,Country1,Farm1,LIGHT,2025-01-01,1.0,5.0,notes1,0.1",
+                "ID2,Country2,Farm2,LIGHT,2025-01-01,1.0,5.0,notes2,0.1",
+                "ID3,Country3,Farm3,LIGHT,2025-01-01,1.0,5.0,notes3,0.1",
+                "DEAD4,Country4,Farm4,LIGHT,2025-01-01,1.0,5.0,notes4,0.1",
+                "ID5,Country5,Farm5,LIGHT,2025-01-01,1.0,5.0,notes5,0.1"
+        ));
+
+        try (DBBeanRepository repo = new DBBeanRepository(new ConnectionPool(this::open))) {
+            List<BeanChangeEvent> events = new ArrayList<>();
+            repo.addChangeListener(events::addAll);
+            IOException ex = assertThrows(IOException.class,
+                    () -> repo.importFile(temp.toString(), new RejectReport(), 1, 2));
+            assertTrue(ex.getMessage().contains("Deadlock found"));
+            assertEquals(1, commits);
+            assertEquals(List.of("ID1", "ID2"), new ArrayList<>(table));
+            assertTrue(uncommitted.isEmpty());
+            assertTrue(repo.changes().awaitDelivery(5000));
+            assertTrue(events.isEmpty());
+        }
+    }
+
+    /**
+     * Tests that the bean_id lookup of a batch larger than MAX_LOOKUP_IDS
+     * is split into bounded queries and still finds every duplicate.
+     */
+    @Test
+    void testLargeBatchLookupIsSplit() throws IOException {
+        int rows = DBBeanRepository.MAX_LOOKUP_IDS * 2 + 500;
+        table.add("ID" + (rows - 1));
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < rows; i++) {
+            lines.add("ID" + i + ",Country,Farm,LIGHT,2025-01-01,1.0,5.0,notes,0.1");
+        }
+        Files.write(temp, lines);
+
+        try (DBBeanRepository repo = new DBBeanRepository(new ConnectionPool(this::open))) {
+            ImportResult result = repo.importFile(temp.toString(), new RejectReport(), rows, rows);
+            assertEquals(rows - 1, result.getAccepted());
+            assertEquals(1, result.getDuplicates());
+            assertEquals(3, lockedLookups.size());
+            assertEquals(DBBeanRepository.MAX_LOOKUP_IDS, largestLookup);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.coffeedms;
+
+import org.junit.jupiter.api.*;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for JournaledBeanRepository recovery and compaction.
+ */
+class JournaledBeanRepositoryTest {
+
+    private Path dir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        dir = Files.createTempDirectory("beans_journal");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    /**
+     * Tests that adds, updates and removes survive a restart.
+     */
+    @Test
+    void testRecoverFromJournal() throws IOException {
+        try (JournaledBeanRepository repo = new JournaledBeanRepository(dir)) {
+            repo.add(bean("ID1", "Farm1", "5.00"));
+            repo.add(bean("ID2", "Farm2", "6.00"));
+            repo.update(bean("ID1", "FarmUpd", "5.25"));
+            repo.removeByID("ID2");
+            repo.add(bean("ID3", "Farm3", "7.125"));
+            repo.consume("ID3", 0.5);
+        }
+
+        try (JournaledBeanRepository repo = new JournaledBeanRepository(dir)) {
+            assertEquals(2, repo.size());
+            assertEquals("FarmUpd", repo.findByID("ID1").getFarmName());
+            assertEquals(new BigDecimal("5.25"), repo.findByID("ID1").getCostPerKg());
+            assertNull(repo.findByID("ID2"));
+            assertEquals("ID3", repo.findAll().get(1).getBeanID());
+            assertEquals(1.0, repo.findByID("ID3").getQuantityKg());
+        }
+    }
+
+    /**
+     * Tests that the journal is folded into a snapshot every compactEvery
+     * changes and that snapshot plus tail recover the same state.
+     */
+    @Test
+    void testCompaction() throws IOException {
+        try (JournaledBeanRepository repo = new JournaledBeanRepository(dir, 8, 0, 10)) {
+            for (int i = 0; i < 25; i++) {
+                repo.add(bean("ID" + i, "Farm" + i, "1.50"));
+            }
+            repo.removeByID("ID0");
+            assertTrue(repo.getJournalLength() < 10);
+            assertTrue(Files.exists(dir.resolve(JournaledBeanRepository.SNAPSHOT_FILE)));
+        }
+
+        try (JournaledBeanRepository repo = new JournaledBeanRepository(dir)) {
+            assertEquals(24, repo.size());
+            assertEquals("ID1", repo.findAll().get(0).getBeanID());
+            assertEquals(0, new BigDecimal("54.0000").compareTo(repo.calculateTotalInventoryValue()));
+        }
+    }
+
+    /**
+     * Tests that a torn record at the end of the journal is dropped.
+     */
+    @Test
+    void testTornTail() throws IOException {
+        try (JournaledBeanRepository repo = new JournaledBeanRepository(dir)) {
+            repo.add(bean("ID1", "Farm1", "5.00"));
+            repo.add(bean("ID2", "Farm2", "6.00"));
+        }
+        Path journal = dir.resolve(JournaledBeanRepository.JOURNAL_FILE);
+        byte[] bytes = Files.readAllBytes(journal);
+        Files.write(journal, Arrays.copyOf(bytes, bytes.length - 3));
+
+        try (JournaledBeanRepository repo = new JournaledBeanRepository(dir)) {
+            assertEquals(1, repo.size());
+            repo.add(bean("ID3", "Farm3", "7.00"));
+        }
+        try (JournaledBeanRepository repo = new JournaledBeanRepository(dir)) {
+            assertNotNull(repo.findByID("ID3"));
+        }
+    }
+
+    /**
+     * Tests that a change the journal cannot write is refused and leaves
+     * the inventory as it was.
+     */
+    @Test
+    void testFailedAppendLeavesInventoryUnchanged() throws IOException {
+        JournaledBeanRepository repo = new JournaledBeanRepository(dir, 1, 0, 100);
+        repo.add(bean("ID1", "Farm1", "5.00"));
+        repo.close();
+
+        assertThrows(UncheckedIOException.class, () -> repo.add(bean("ID2", "Farm2", "6.00")));
+        assertThrows(UncheckedIOException.class, () -> repo.consume("ID1", 0.5));
+        assertThrows(UncheckedIOException.class, () -> repo.removeByID("ID1"));
+        assertNull(repo.findByID("ID2"));
+        assertEquals(1.5, repo.findByID("ID1").getQuantityKg());
+        assertEquals(1, repo.getJournalLength());
+    }
+
+    /**
+     * Tests that a failed automatic checkpoint does not fail the change
+     * that triggered it and is retried compactEvery changes later.
+     */
+    @Test
+    void testFailedCheckpointKeepsChange() throws IOException {
+        // a non-empty directory where the snapshot's temp file would go
+        Path blocker = dir.resolve(JournaledBeanRepository.SNAPSHOT_FILE + ".tmp");
+        Files.createDirectories(blocker.resolve("x"));
+
+        try (JournaledBeanRepository repo = new JournaledBeanRepository(dir, 1, 0, 2)) {
+            repo.add(bean("ID1", "Farm1", "5.00"));
+            assertTrue(repo.add(bean("ID2", "Farm2", "6.00")));
+            assertNotNull(repo.getCheckpointFailure());
+            assertEquals(2, repo.getJournalLength());
+            assertTrue(repo.add(bean("ID3", "Farm3", "7.00")));
+            assertEquals(3, repo.getJournalLength());
+
+            Files.delete(blocker.resolve("x"));
+            Files.delete(blocker);
+            assertTrue(repo.add(bean("ID4", "Farm4", "8.00")));
+            assertNull(repo.getCheckpointFailure());
+            assertEquals(0, repo.getJournalLength());
+        }
+        try (JournaledBeanRepository repo = new JournaledBeanRepository(dir)) {
+            assertEquals(4, repo.size());
+        }
+    }
+
+    private static CoffeeBean bean(String id, String farm, String cost) {
+        return new CoffeeBean(
+                id, "Colombia", farm,
+                RoastLevel.MEDIUM, LocalDate.of(2025, 5, 1),
+                1.5, new BigDecimal(cost),
+                "notes", 0.2
+        );
+    }
+}
@@ -0,0 +1,270 @@
+package com.example.coffeedms;
+
+import org.junit.jupiter.api.*;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for OffHeapBeanRepository, checked against BeanRepository.
+ */
+class OffHeapBeanRepositoryTest {
+
+    private static final int SEGMENT_BYTES = 1 << 14;
+
+    private Path dir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        dir = Files.createTempDirectory("beans_offheap");
+    }
+
+    /**
+     * Deletes the store files, failing if one stays. Windows keeps a file
+     * while its mapping is alive, which ends only when the dropped buffers
+     * are collected.
+     */
+    @AfterEach
+    void tearDown() throws IOException, InterruptedException {
+        List<Path> paths;
+        try (Stream<Path> files = Files.walk(dir)) {
+            paths = files.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+        }
+        for (Path p : paths) {
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    Files.deleteIfExists(p);
+                    break;
+                } catch (FileSystemException ex) {
+                    if (attempt == 10) throw ex;
+                    System.gc();
+                    Thread.sleep(100);
+                }
+            }
+        }
+    }
+
+    /**
+     * Tests a random mix of changes across many small segments, enough to
+     * trigger compaction, in direct memory.
+     */
+    @Test
+    void testDirectMatchesBeanRepository() throws IOException {
+        BeanRepository expected = new BeanRepository();
+        try (OffHeapBeanRepository actual = new OffHeapBeanRepository(null, SEGMENT_BYTES)) {
+            churn(expected, actual);
+            assertSameContents(expected, actual);
+        }
+    }
+
+    /**
+     * Tests that a file-backed repository reopens with the same contents,
+     * including after compaction rewrote its files.
+     */
+    @Test
+    void testFileBackedReopen() throws IOException {
+        BeanRepository expected = new BeanRepository();
+        try (OffHeapBeanRepository actual = new OffHeapBeanRepository(dir, SEGMENT_BYTES)) {
+            churn(expected, actual);
+        }
+        try (OffHeapBeanRepository reopened = new OffHeapBeanRepository(dir, SEGMENT_BYTES)) {
+            assertSameContents(expected, reopened);
+            CoffeeBean b = bean("NEW", "Origin1", "cocoa");
+            assertTrue(reopened.add(b));
+            assertTrue(expected.add(b));
+            assertSameContents(expected, reopened);
+        }
+    }
+
+    /**
+     * Tests reopening files left by a process killed after changes made
+     * since the last sync: the changes are there, and lots written after
+     * reopening do not overwrite their strings. A second repository on
+     * the same files stands in for the restarted process, since both see
+     * the same mapped pages.
+     */
+    @Test
+    void testReopenAfterKill() throws IOException {
+        BeanRepository expected = new BeanRepository();
+        OffHeapBeanRepository killed = new OffHeapBeanRepository(dir, SEGMENT_BYTES);
+        try {
+            for (int i = 0; i < 20; i++) {
+                CoffeeBean b = bean("ID" + i, "Origin" + i % 4, "cocoa");
+                killed.add(b);
+                expected.add(b);
+            }
+            killed.sync();
+            for (int i = 0; i < 20; i += 2) {
+                CoffeeBean b = bean("ID" + i, "Origin" + i % 4, "citrus and dark chocolate " + i);
+                killed.update(b);
+                expected.update(b);
+            }
+            for (int i = 20; i < 25; i++) {
+                CoffeeBean b = bean("ID" + i, "Origin9", "cherry " + i);
+                killed.add(b);
+                expected.add(b);
+            }
+
+            try (OffHeapBeanRepository reopened = new OffHeapBeanRepository(dir, SEGMENT_BYTES)) {
+                assertSameContents(expected, reopened);
+                for (int i = 25; i < 40; i++) {
+                    CoffeeBean b = bean("ID" + i, "Origin" + i % 4, "caramel, and some more text " + i);
+                    reopened.add(b);
+                    expected.add(b);
+                }
+                assertSameContents(expected, reopened);
+            }
+        } finally {
+            // releases the files; what it writes back no longer matters
+            killed.close();
+        }
+    }
+
+    /**
+     * Tests that reopening ignores and deletes a generation of files whose
+     * compaction stopped before switching to it, and uses one whose
+     * compaction switched but stopped before deleting the old files.
+     */
+    @Test
+    void testInterruptedCompaction() throws IOException {
+        Path before = Files.createDirectory(dir.resolve("before"));
+        Path after = Files.createDirectory(dir.resolve("after"));
+        BeanRepository older = new BeanRepository();
+        BeanRepository newer = new BeanRepository();
+        try (OffHeapBeanRepository a = new OffHeapBeanRepository(before, SEGMENT_BYTES);
+             OffHeapBeanRepository b = new OffHeapBeanRepository(after, SEGMENT_BYTES)) {
+            for (int i = 0; i < 50; i++) {
+                CoffeeBean bean = bean("ID" + i, "Origin" + i % 4, "cocoa");
+                a.add(bean);
+                older.add(bean);
+                if (i % 2 == 0) {
+                    b.add(bean);
+                    newer.add(bean);
+                }
+            }
+        }
+        Path nextRecords = OffHeapBeanStore.recordFile(before, 1);
+        Path nextStrings = OffHeapBeanStore.stringFile(before, 1);
+
+        // stopped before the generation file was replaced
+        Files.copy(OffHeapBeanStore.recordFile(after, 0), nextRecords);
+        Files.copy(OffHeapBeanStore.stringFile(after, 0), nextStrings);
+        try (OffHeapBeanRepository reopened = new OffHeapBeanRepository(before, SEGMENT_BYTES)) {
+            assertSameContents(older, reopened);
+        }
+        assertFalse(Files.exists(nextRecords));
+        assertFalse(Files.exists(nextStrings));
+
+        // stopped after it was replaced
+        Files.copy(OffHeapBeanStore.recordFile(after, 0), nextRecords);
+        Files.copy(OffHeapBeanStore.stringFile(after, 0), nextStrings);
+        Files.write(before.resolve(OffHeapBeanStore.GENERATION_FILE), List.of("1"));
+        try (OffHeapBeanRepository reopened = new OffHeapBeanRepository(before, SEGMENT_BYTES)) {
+            assertSameContents(newer, reopened);
+        }
+        assertFalse(Files.exists(OffHeapBeanStore.recordFile(before, 0)));
+        assertFalse(Files.exists(OffHeapBeanStore.stringFile(before, 0)));
+    }
+
+    /**
+     * Tests that compaction moves a file-backed store to a new generation
+     * and that the old files are gone after reopening.
+     */
+    @Test
+    void testCompactionSwitchesGeneration() throws IOException {
+        BeanRepository expected = new BeanRepository();
+        try (OffHeapBeanRepository actual = new OffHeapBeanRepository(dir, SEGMENT_BYTES)) {
+            churn(expected, actual);
+        }
+        long generation = Long.parseLong(Files.readAllLines(dir.resolve(OffHeapBeanStore.GENERATION_FILE)).get(0));
+        assertTrue(generation > 0);
+        try (OffHeapBeanRepository reopened = new OffHeapBeanRepository(dir, SEGMENT_BYTES)) {
+            assertSameContents(expected, reopened);
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(Set.of(OffHeapBeanStore.GENERATION_FILE,
+                            OffHeapBeanStore.recordFile(dir, generation).getFileName().toString(),
+                            OffHeapBeanStore.stringFile(dir, generation).getFileName().toString()),
+                    files.map(p -> p.getFileName().toString()).collect(Collectors.toSet()));
+        }
+    }
+
+    /**
+     * Tests that reopening refuses a directory whose current generation
+     * files are gone instead of starting an empty store in their place.
+     */
+    @Test
+    void testMissingGenerationIsNotRecreated() throws IOException {
+        try (OffHeapBeanRepository actual = new OffHeapBeanRepository(dir, SEGMENT_BYTES)) {
+            churn(new BeanRepository(), actual);
+        }
+        long generation = Long.parseLong(Files.readAllLines(dir.resolve(OffHeapBeanStore.GENERATION_FILE)).get(0));
+        Path records = OffHeapBeanStore.recordFile(dir, generation);
+        Path older = OffHeapBeanStore.recordFile(dir, generation - 1);
+        Files.move(records, older);
+
+        assertThrows(IOException.class, () -> new OffHeapBeanRepository(dir, SEGMENT_BYTES));
+        assertTrue(Files.exists(older));
+        assertFalse(Files.exists(records));
+    }
+
+    private static void churn(BeanRepository expected, BeanRepository actual) {
+        Random rnd = new Random(16);
+        String[] notes = {"cocoa, cherry", "citrus", "dark chocolate and caramel"};
+        for (int i = 0; i < 8000; i++) {
+            String id = "ID" + rnd.nextInt(3000);
+            int op = rnd.nextInt(5);
+            if (op < 2) {
+                CoffeeBean b = bean(id, "Origin" + rnd.nextInt(4), notes[rnd.nextInt(notes.length)]);
+                assertEquals(expected.add(b), actual.add(b));
+            } else if (op == 2) {
+                CoffeeBean b = bean(id, "Origin" + rnd.nextInt(4), notes[rnd.nextInt(notes.length)]);
+                assertEquals(expected.update(b), actual.update(b));
+            } else if (op == 3) {
+                assertEquals(expected.removeByID(id), actual.removeByID(id));
+            } else {
+                assertEquals(expected.receive(id, 0.5), actual.receive(id, 0.5));
+            }
+        }
+        // leave most slots dead so the store gets compacted
+        for (int i = 0; i < 3000; i++) {
+            if (i % 4 != 0) assertEquals(expected.removeByID("ID" + i), actual.removeByID("ID" + i));
+        }
+    }
+
+    private static void assertSameContents(BeanRepository expected, BeanRepository actual) {
+        assertEquals(expected.size(), actual.size());
+        List<CoffeeBean> e = expected.findAll();
+        List<CoffeeBean> a = actual.findAll();
+        for (int i = 0; i < e.size(); i++) {
+            assertEquals(e.get(i).toString(), a.get(i).toString());
+            assertEquals(e.get(i).getCostPerKg(), a.get(i).getCostPerKg());
+        }
+        assertEquals(expected.calculateTotalInventoryValue(), actual.calculateTotalInventoryValue());
+        assertEquals(expected.getValueByOrigin(), actual.getValueByOrigin());
+        BeanQuery q = new BeanQuery().origin("Origin2").roastLevel(RoastLevel.MEDIUM);
+        assertEquals(expected.query(q).size(), actual.query(q).size());
+        assertEquals(expected.findByFlavorAll("choc*", "caramel").size(),
+                actual.findByFlavorAll("choc*", "caramel").size());
+        assertEquals(expected.findByFlavorAny("citrus", "cherry").size(),
+                actual.findByFlavorAny("citrus", "cherry").size());
+    }
+
+    private static CoffeeBean bean(String id, String origin, String notes) {
+        return new CoffeeBean(
+                id, origin, "Farm" + id.length(),
+                RoastLevel.MEDIUM, LocalDate.of(2025, 5, 1),
+                1.5, new BigDecimal(id.hashCode() % 3 == 0 ? "98765432109876543210.5" : "7.25"),
+                notes, 0.2
+        );
+    }
+}
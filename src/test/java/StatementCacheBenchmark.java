@@ -0,0 +1,60 @@
+package com.example.coffeedms;
+
+import java.math.BigDecimal;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.time.LocalDate;
+
+/**
+ * Measures DBBeanRepository per-operation latency with and without the
+ * pool's prepared statement cache, against a real database. Not a unit
+ * test; run it by hand:
+ * <pre>
+ * java -cp target/classes:target/test-classes:&lt;mysql driver jar&gt; \
+ *     com.example.coffeedms.StatementCacheBenchmark \
+ *     "jdbc:mysql://localhost:3306/coffee_dms?useServerPrepStmts=true" user pass [ops]
+ * </pre>
+ * Each round adds, looks up, updates and removes a probe lot, so the
+ * bean_lots table is left as it was. The cache saves a server-side
+ * prepare per call with useServerPrepStmts=true, and the driver's SQL
+ * parse per call without it.
+ */
+public class StatementCacheBenchmark {
+    private static final int WARMUP_OPS = 2_000;
+
+    public static void main(String[] args) throws SQLException {
+        if (args.length < 3) {
+            System.err.println("usage: StatementCacheBenchmark <jdbc url> <user> <pass> [ops]");
+            System.exit(2);
+        }
+        String url = args[0];
+        int ops = args.length > 3 ? Integer.parseInt(args[3]) : 20_000;
+        ConnectionPool.ConnectionFactory factory = () -> DriverManager.getConnection(url, args[1], args[2]);
+
+        for (int cacheSize : new int[]{0, ConnectionPool.DEFAULT_STATEMENT_CACHE_SIZE}) {
+            ConnectionPool pool = new ConnectionPool(factory, 1,
+                    ConnectionPool.DEFAULT_ACQUIRE_TIMEOUT_MILLIS,
+                    ConnectionPool.DEFAULT_IDLE_TIMEOUT_MILLIS, cacheSize);
+            try (DBBeanRepository repo = new DBBeanRepository(pool)) {
+                run(repo, WARMUP_OPS);
+                long start = System.nanoTime();
+                run(repo, ops);
+                double micros = (System.nanoTime() - start) / 1e3 / (ops * 4L);
+                System.out.printf("statement cache %-3s %8.1f us/op  (%s)%n",
+                        cacheSize == 0 ? "off" : "on", micros, pool.describe());
+            }
+        }
+    }
+
+    /** Runs rounds of add, findByID, update and removeByID on one probe lot. */
+    private static void run(DBBeanRepository repo, int rounds) throws SQLException {
+        CoffeeBean probe = new CoffeeBean("bench-probe", "Benchmark", "Benchmark", RoastLevel.MEDIUM,
+                LocalDate.of(2025, 1, 1), 1.0, new BigDecimal("1.00"), "probe", 0.1);
+        for (int i = 0; i < rounds; i++) {
+            repo.add(probe);
+            repo.findByID(probe.getBeanID());
+            repo.update(probe);
+            repo.removeByID(probe.getBeanID());
+        }
+    }
+}